@@ -0,0 +1,71 @@
+import java.util.Arrays;
+
+/**
+ * This class keeps the slots of an AbstractSlotRedBlackTree on the heap in parallel arrays
+ * instead of objects. The parent and child links of a node are int indices into the arrays
+ * and colors are kept in a boolean array. Subclasses store the keys in their own array (which
+ * can be a primitive array), do the comparisons needed to find where a key belongs, and then
+ * use the linking, deleting and navigation methods of AbstractSlotRedBlackTree.
+ */
+public abstract class AbstractArrayRedBlackTree extends AbstractSlotRedBlackTree {
+
+  // number of slots allocated for a new tree
+  protected static final int INITIAL_CAPACITY = 16;
+
+  // parent, left child and right child of every slot
+  protected int[] up = new int[INITIAL_CAPACITY];
+  protected int[] left = new int[INITIAL_CAPACITY];
+  protected int[] right = new int[INITIAL_CAPACITY];
+  // whether each slot is a red node
+  protected boolean[] red = new boolean[INITIAL_CAPACITY];
+
+  /**
+   * Makes the key storage of the subclass at least as large as the structure arrays.
+   * @param newCapacity the new number of slots
+   */
+  protected abstract void growKeys(int newCapacity);
+
+  @Override
+  protected final int left(int slot) { return left[slot]; }
+  @Override
+  protected final int right(int slot) { return right[slot]; }
+  @Override
+  protected final int up(int slot) { return up[slot]; }
+  @Override
+  protected final boolean red(int slot) { return red[slot]; }
+  @Override
+  protected final void setLeft(int slot, int child) { left[slot] = child; }
+  @Override
+  protected final void setRight(int slot, int child) { right[slot] = child; }
+  @Override
+  protected final void setUp(int slot, int parent) { up[slot] = parent; }
+  @Override
+  protected final void setRed(int slot, boolean red) { this.red[slot] = red; }
+
+  @Override
+  protected int capacity() {
+    return up.length;
+  }
+
+  /**
+   * Grows all arrays by half of their current length.
+   */
+  @Override
+  protected void grow() {
+    int capacity = up.length;
+    int newCapacity = capacity + (capacity >> 1) + 1;
+    if(newCapacity < 0 || newCapacity > Integer.MAX_VALUE - 8) {
+      if(capacity == Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("tree is full");
+      }
+      newCapacity = Integer.MAX_VALUE - 8;
+      //arrays can't grow past this length
+    }
+    up = Arrays.copyOf(up, newCapacity);
+    left = Arrays.copyOf(left, newCapacity);
+    right = Arrays.copyOf(right, newCapacity);
+    red = Arrays.copyOf(red, newCapacity);
+    growKeys(newCapacity);
+  }
+
+}
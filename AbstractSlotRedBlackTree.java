@@ -0,0 +1,430 @@
+/**
+ * This class holds the structure of a red black tree whose nodes are numbered slots instead
+ * of objects. The parent and child links of a node are slot numbers, slots freed by deletes
+ * are kept in a free list so they can be reused by later inserts, and the linking, deleting,
+ * rebalancing and navigation of the tree are done here once. Subclasses decide where the
+ * slots live, on the heap in parallel arrays or off the heap in buffers, by implementing the
+ * accessors for the links and colors and the way the tree grows.
+ */
+public abstract class AbstractSlotRedBlackTree {
+
+  // index used in place of a null reference
+  protected static final int NIL = -1;
+
+  // slot of the root node, or NIL when the tree is empty
+  protected int root = NIL;
+  // number of nodes in the tree
+  protected int count = 0;
+  // first slot of the free list, slots on it are linked through their right link
+  protected int freeHead = NIL;
+  // slots from this index on have never been used
+  protected int highWater = 0;
+
+  //----- slot storage, implemented by subclasses -----
+
+  protected abstract int left(int slot);
+  protected abstract int right(int slot);
+  protected abstract int up(int slot);
+  protected abstract boolean red(int slot);
+  protected abstract void setLeft(int slot, int child);
+  protected abstract void setRight(int slot, int child);
+  protected abstract void setUp(int slot, int parent);
+  protected abstract void setRed(int slot, boolean red);
+
+  /**
+   * @return number of slots that can be used before the tree has to grow
+   */
+  protected abstract int capacity();
+
+  /**
+   * Makes room for more slots than capacity() currently allows.
+   * @throws IllegalStateException if the tree can't grow any further
+   */
+  protected abstract void grow();
+
+  /**
+   * Called when a slot is freed so subclasses can drop references held in their key
+   * storage. Does nothing by default.
+   * @param slot the slot being freed
+   */
+  protected void releaseKey(int slot) { }
+
+  /**
+   * Counts the number of values in the tree.
+   * @return the number of values, including duplicates
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Checks if the tree is empty.
+   * @return true if the tree holds no values, false otherwise
+   */
+  public boolean isEmpty() {
+    return root == NIL;
+  }
+
+  /**
+   * Removes all values from the tree. The slots stay allocated and are reused.
+   */
+  public void clear() {
+    for(int slot = 0; slot < highWater; slot++) {
+      releaseKey(slot);
+    }
+    root = NIL;
+    count = 0;
+    freeHead = NIL;
+    highWater = 0;
+  }
+
+  /**
+   * Gets an unused slot, taking it from the free list when possible and growing the tree
+   * when all slots are in use. The returned slot is an unlinked red node.
+   * @return index of the slot
+   */
+  protected int allocateSlot() {
+    int slot;
+    if(freeHead != NIL) {
+      slot = freeHead;
+      freeHead = right(slot);
+      //reuse a slot freed by a delete
+    }else {
+      if(highWater == capacity()) {
+        grow();
+      }
+      slot = highWater++;
+    }
+    setUp(slot, NIL);
+    setLeft(slot, NIL);
+    setRight(slot, NIL);
+    setRed(slot, true);
+    return slot;
+  }
+
+  /**
+   * Links a newly allocated slot into the tree below parent and repairs any red
+   * property violation this causes.
+   * @param slot the new slot, its key must already be stored
+   * @param parent the slot the new slot becomes a child of, or NIL if the tree is empty
+   * @param asLeft true to make slot the left child of parent, false for the right child
+   */
+  protected void linkSlot(int slot, int parent, boolean asLeft) {
+    setUp(slot, parent);
+    if(parent == NIL) {
+      root = slot;
+    }else if(asLeft) {
+      setLeft(parent, slot);
+    }else {
+      setRight(parent, slot);
+    }
+    count++;
+    ensureRedProperty(slot);
+  }
+
+  /**
+   * Repairs red property violations starting at a red node whose parent may be red.
+   * Black aunts are fixed with one or two rotations, red aunts are fixed by recoloring
+   * and moving the violation up to the grandparent.
+   * @param slot a newly inserted red node
+   */
+  protected void ensureRedProperty(int slot) {
+    while(slot != root && red(up(slot))) {
+      int parent = up(slot);
+      int grandparent = up(parent);
+      if(parent == left(grandparent)) {
+        int aunt = right(grandparent);
+        if(isRed(aunt)) {
+          setRed(parent, false);
+          setRed(aunt, false);
+          setRed(grandparent, true);
+          slot = grandparent;
+          //red aunt, recolor and continue at the grandparent
+        }else {
+          if(slot == right(parent)) {
+            slot = parent;
+            rotateLeft(slot);
+            parent = up(slot);
+            //align slot and parent on the outside
+          }
+          setRed(parent, false);
+          setRed(grandparent, true);
+          rotateRight(grandparent);
+        }
+      }else {
+        int aunt = left(grandparent);
+        if(isRed(aunt)) {
+          setRed(parent, false);
+          setRed(aunt, false);
+          setRed(grandparent, true);
+          slot = grandparent;
+          //red aunt, recolor and continue at the grandparent
+        }else {
+          if(slot == left(parent)) {
+            slot = parent;
+            rotateRight(slot);
+            parent = up(slot);
+            //align slot and parent on the outside
+          }
+          setRed(parent, false);
+          setRed(grandparent, true);
+          rotateLeft(grandparent);
+        }
+      }
+    }
+    setRed(root, false);
+  }
+
+  /**
+   * Rotates the right child of slot up into slot's position.
+   * @param slot the node moving down to the left
+   */
+  protected void rotateLeft(int slot) {
+    int child = right(slot);
+    int grandchild = left(child);
+    setRight(slot, grandchild);
+    if(grandchild != NIL) {
+      setUp(grandchild, slot);
+    }
+    replaceChild(slot, child);
+    setLeft(child, slot);
+    setUp(slot, child);
+  }
+
+  /**
+   * Rotates the left child of slot up into slot's position.
+   * @param slot the node moving down to the right
+   */
+  protected void rotateRight(int slot) {
+    int child = left(slot);
+    int grandchild = right(child);
+    setLeft(slot, grandchild);
+    if(grandchild != NIL) {
+      setUp(grandchild, slot);
+    }
+    replaceChild(slot, child);
+    setRight(child, slot);
+    setUp(slot, child);
+  }
+
+  /**
+   * Puts newSlot in the position of oldSlot within oldSlot's parent.
+   * @param oldSlot the node being replaced
+   * @param newSlot the node taking its place, or NIL
+   */
+  private void replaceChild(int oldSlot, int newSlot) {
+    int parent = up(oldSlot);
+    if(parent == NIL) {
+      root = newSlot;
+    }else if(left(parent) == oldSlot) {
+      setLeft(parent, newSlot);
+    }else {
+      setRight(parent, newSlot);
+    }
+    if(newSlot != NIL) {
+      setUp(newSlot, parent);
+    }
+  }
+
+  /**
+   * Removes a node from the tree and puts its slot on the free list. A node with two
+   * children is replaced by its in-order successor, and a double black fix-up repairs
+   * the black height when a black node leaves its position.
+   * @param slot the node to remove
+   */
+  protected void deleteSlot(int slot) {
+    int replacement;
+    int replacementParent;
+    boolean removedBlack = !red(slot);
+    if(left(slot) == NIL) {
+      replacement = right(slot);
+      replacementParent = up(slot);
+      replaceChild(slot, replacement);
+    }else if(right(slot) == NIL) {
+      replacement = left(slot);
+      replacementParent = up(slot);
+      replaceChild(slot, replacement);
+    }else {
+      int successor = minSlot(right(slot));
+      removedBlack = !red(successor);
+      replacement = right(successor);
+      if(up(successor) == slot) {
+        replacementParent = successor;
+      }else {
+        replacementParent = up(successor);
+        replaceChild(successor, replacement);
+        setRight(successor, right(slot));
+        setUp(right(successor), successor);
+      }
+      replaceChild(slot, successor);
+      setLeft(successor, left(slot));
+      setUp(left(successor), successor);
+      setRed(successor, red(slot));
+      //successor takes the removed node's place and color
+    }
+    if(removedBlack) {
+      ensureBlackHeight(replacement, replacementParent);
+    }
+    count--;
+    releaseKey(slot);
+    setUp(slot, NIL);
+    setLeft(slot, NIL);
+    setRight(slot, freeHead);
+    freeHead = slot;
+    //put the slot on the free list
+  }
+
+  /**
+   * Repairs a position that has one black node fewer on its paths than its sibling.
+   * @param slot node in the double black position, may be NIL
+   * @param parent parent of that position, NIL when it is the root
+   */
+  private void ensureBlackHeight(int slot, int parent) {
+    while(slot != root && !isRed(slot)) {
+      if(slot == left(parent)) {
+        int sibling = right(parent);
+        if(red(sibling)) {
+          setRed(sibling, false);
+          setRed(parent, true);
+          rotateLeft(parent);
+          sibling = right(parent);
+        }
+        if(!isRed(left(sibling)) && !isRed(right(sibling))) {
+          setRed(sibling, true);
+          slot = parent;
+          parent = up(slot);
+        }else {
+          if(!isRed(right(sibling))) {
+            setRed(left(sibling), false);
+            setRed(sibling, true);
+            rotateRight(sibling);
+            sibling = right(parent);
+          }
+          setRed(sibling, red(parent));
+          setRed(parent, false);
+          setRed(right(sibling), false);
+          rotateLeft(parent);
+          slot = root;
+        }
+      }else {
+        int sibling = left(parent);
+        if(red(sibling)) {
+          setRed(sibling, false);
+          setRed(parent, true);
+          rotateRight(parent);
+          sibling = left(parent);
+        }
+        if(!isRed(left(sibling)) && !isRed(right(sibling))) {
+          setRed(sibling, true);
+          slot = parent;
+          parent = up(slot);
+        }else {
+          if(!isRed(left(sibling))) {
+            setRed(right(sibling), false);
+            setRed(sibling, true);
+            rotateLeft(sibling);
+            sibling = left(parent);
+          }
+          setRed(sibling, red(parent));
+          setRed(parent, false);
+          setRed(left(sibling), false);
+          rotateRight(parent);
+          slot = root;
+        }
+      }
+    }
+    if(slot != NIL) {
+      setRed(slot, false);
+    }
+  }
+
+  /**
+   * @param slot a node, or NIL
+   * @return true if slot is a red node, false if it is black or NIL
+   */
+  protected boolean isRed(int slot) {
+    return slot != NIL && red(slot);
+  }
+
+  /**
+   * @param slot root of a subtree, must not be NIL
+   * @return the left most node of the subtree
+   */
+  protected int minSlot(int slot) {
+    int next;
+    while((next = left(slot)) != NIL) {
+      slot = next;
+    }
+    return slot;
+  }
+
+  /**
+   * @param slot root of a subtree, must not be NIL
+   * @return the right most node of the subtree
+   */
+  protected int maxSlot(int slot) {
+    int next;
+    while((next = right(slot)) != NIL) {
+      slot = next;
+    }
+    return slot;
+  }
+
+  /**
+   * Finds the next node of an in-order traversal using the parent links.
+   * @param slot a node in the tree
+   * @return the in-order successor of slot, or NIL if slot is the last node
+   */
+  protected int successor(int slot) {
+    if(right(slot) != NIL) {
+      return minSlot(right(slot));
+    }
+    int parent = up(slot);
+    while(parent != NIL && slot == right(parent)) {
+      slot = parent;
+      parent = up(slot);
+    }
+    return parent;
+  }
+
+  /**
+   * Finds the previous node of an in-order traversal using the parent links.
+   * @param slot a node in the tree
+   * @return the in-order predecessor of slot, or NIL if slot is the first node
+   */
+  protected int predecessor(int slot) {
+    if(left(slot) != NIL) {
+      return maxSlot(left(slot));
+    }
+    int parent = up(slot);
+    while(parent != NIL && slot == left(parent)) {
+      slot = parent;
+      parent = up(slot);
+    }
+    return parent;
+  }
+
+  /**
+   * Checks the red black properties and the parent links of a subtree, used by the tests.
+   * @param slot root of the subtree
+   * @return black height of the subtree, or -1 if the subtree is not valid
+   */
+  protected int blackHeight(int slot) {
+    if(slot == NIL) {
+      return 0;
+    }
+    if(red(slot) && (isRed(left(slot)) || isRed(right(slot)))) {
+      return -1;
+    }
+    if((left(slot) != NIL && up(left(slot)) != slot) || (right(slot) != NIL && up(right(slot)) != slot)) {
+      return -1;
+    }
+    int leftHeight = blackHeight(left(slot));
+    int rightHeight = blackHeight(right(slot));
+    if(leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (red(slot) ? 0 : 1);
+  }
+
+}
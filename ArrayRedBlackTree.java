@@ -0,0 +1,438 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is an iterable red black tree that keeps its nodes as slots in parallel arrays
+ * (see AbstractArrayRedBlackTree) instead of as RBTNode objects. The whole tree is five
+ * arrays no matter how many values it holds, which takes far less memory than one object per
+ * value and keeps the links of neighboring nodes close together in memory.
+ */
+public class ArrayRedBlackTree<T extends Comparable<T>>
+                extends AbstractArrayRedBlackTree implements IterableSortedCollection<T> {
+
+  // value stored in each slot
+  protected Object[] keys = new Object[INITIAL_CAPACITY];
+  // store current stopping and starting point
+  private Comparable<T> max = null;
+  private Comparable<T> min = null;
+
+  @Override
+  protected void growKeys(int newCapacity) {
+    keys = Arrays.copyOf(keys, newCapacity);
+  }
+
+  @Override
+  protected void releaseKey(int slot) {
+    keys[slot] = null;
+    //let the removed value be garbage collected
+  }
+
+  /**
+   * @param slot a slot in use
+   * @return value stored in the slot
+   */
+  @SuppressWarnings("unchecked")
+  protected T keyAt(int slot) {
+    return (T)keys[slot];
+  }
+
+  /**
+   * inserts a new value into the tree, duplicates are stored to the left of equal values
+   * @param data - value to insert
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if(data == null) {
+      throw new NullPointerException("data is null");
+    }
+    int parent = NIL;
+    int curr = root;
+    boolean asLeft = false;
+    while(curr != NIL) {
+      parent = curr;
+      asLeft = keyAt(curr).compareTo(data) >= 0;
+      curr = asLeft ? left[curr] : right[curr];
+      //smaller or equal values go left, bigger values go right
+    }
+    int slot = allocateSlot();
+    keys[slot] = data;
+    linkSlot(slot, parent, asLeft);
+  }
+
+  /**
+   * finds a slot holding a value equal to data
+   * @param data - value to look for
+   * @return slot whose value compares equal to data, or NIL if there is none
+   */
+  protected int findSlot(Comparable<T> data) {
+    int curr = root;
+    while(curr != NIL) {
+      int cmp = data.compareTo(keyAt(curr));
+      if(cmp == 0) {
+        return curr;
+      }
+      curr = cmp < 0 ? left[curr] : right[curr];
+    }
+    return NIL;
+  }
+
+  /**
+   * checks if a value appears in the tree at least once
+   * @param data - value to look for
+   * @return true if the tree holds a value equal to data, false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    return data != null && findSlot(data) != NIL;
+  }
+
+  /**
+   * removes one occurrence of a value from the tree
+   * @param data - value to remove
+   * @return true if a value equal to data was removed, false if there was none
+   */
+  @Override
+  public boolean remove(Comparable<T> data) {
+    if(data == null) {
+      return false;
+    }
+    int slot = findSlot(data);
+    if(slot == NIL) {
+      return false;
+    }
+    deleteSlot(slot);
+    return true;
+  }
+
+  /**
+   * finds the first slot in sorted order whose value is not smaller than data
+   * @param data - lower bound
+   * @return that slot, or NIL if every value is smaller than data
+   */
+  protected int ceilingSlot(Comparable<T> data) {
+    int found = NIL;
+    int curr = root;
+    while(curr != NIL) {
+      if(data.compareTo(keyAt(curr)) <= 0) {
+        found = curr;
+        curr = left[curr];
+      }else {
+        curr = right[curr];
+      }
+    }
+    return found;
+  }
+
+  /**
+   * finds the first slot in sorted order whose value is bigger than data
+   * @param data - lower bound
+   * @return that slot, or NIL if no value is bigger than data
+   */
+  protected int higherSlot(Comparable<T> data) {
+    int found = NIL;
+    int curr = root;
+    while(curr != NIL) {
+      if(data.compareTo(keyAt(curr)) < 0) {
+        found = curr;
+        curr = left[curr];
+      }else {
+        curr = right[curr];
+      }
+    }
+    return found;
+  }
+
+  /**
+   * finds the last slot in sorted order whose value is not bigger than data
+   * @param data - upper bound
+   * @return that slot, or NIL if every value is bigger than data
+   */
+  protected int floorSlot(Comparable<T> data) {
+    int found = NIL;
+    int curr = root;
+    while(curr != NIL) {
+      if(data.compareTo(keyAt(curr)) >= 0) {
+        found = curr;
+        curr = right[curr];
+      }else {
+        curr = left[curr];
+      }
+    }
+    return found;
+  }
+
+  /**
+   * finds the last slot in sorted order whose value is smaller than data
+   * @param data - upper bound
+   * @return that slot, or NIL if no value is smaller than data
+   */
+  protected int lowerSlot(Comparable<T> data) {
+    int found = NIL;
+    int curr = root;
+    while(curr != NIL) {
+      if(data.compareTo(keyAt(curr)) > 0) {
+        found = curr;
+        curr = right[curr];
+      }else {
+        curr = left[curr];
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator, used by every iterator
+   * created after this call.
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) { this.min = min; }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator, used by every iterator
+   * created after this call.
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) { this.max = max; }
+
+  /**
+   * Returns an iterator over the values between the iterator min and max, including the
+   * min and max themselves, in sorted ascending order.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(min, true, max, true);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max in ascending order. The bounds
+   * are kept by the iterator, so concurrent read only scans don't interfere with each other.
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    int start;
+    if(min == null) {
+      start = root == NIL ? NIL : minSlot(root);
+    }else {
+      start = minInclusive ? ceilingSlot(min) : higherSlot(min);
+    }
+    return new ArrayIterator(start, max, maxInclusive, false);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max in descending order, with bounds
+   * kept by the iterator.
+   */
+  @Override
+  public Iterator<T> descendingIterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    int start;
+    if(max == null) {
+      start = root == NIL ? NIL : maxSlot(root);
+    }else {
+      start = maxInclusive ? floorSlot(max) : lowerSlot(max);
+    }
+    return new ArrayIterator(start, min, minInclusive, true);
+  }
+
+  /**
+   * Iterator that walks the tree in order by following parent links, so it needs no stack.
+   */
+  private class ArrayIterator implements Iterator<T> {
+
+    // next slot to return, or NIL when done
+    private int next;
+    // stop point for the iterator, or null if there is none
+    private final Comparable<T> end;
+    private final boolean endInclusive;
+    // whether the iterator walks from largest to smallest
+    private final boolean descending;
+
+    private ArrayIterator(int start, Comparable<T> end, boolean endInclusive, boolean descending) {
+      this.next = start;
+      this.end = end;
+      this.endInclusive = endInclusive;
+      this.descending = descending;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if(next == NIL) {
+        return false;
+      }
+      if(end == null) {
+        return true;
+      }
+      int cmp = end.compareTo(keyAt(next));
+      if(descending) {
+        cmp = -cmp;
+      }
+      return cmp > 0 || (endInclusive && cmp == 0);
+      //the next value has not passed the stop point
+    }
+
+    @Override
+    public T next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException("No More Nodes To Visit");
+      }
+      T value = keyAt(next);
+      next = descending ? predecessor(next) : successor(next);
+      return value;
+    }
+  }
+
+  /**
+   * tests basic iterator functionality and iterator with duplicate values
+   */
+  @Test
+  public void testIterator() {
+    ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<Integer>();
+    tree.insert(10);
+    tree.insert(7);
+    tree.insert(17);
+    tree.insert(11);
+    tree.insert(14);
+    tree.insert(18);
+    String result = "";
+    for(Integer i: tree) {
+      result += i + " ";
+    }
+    if(!result.equals("7 10 11 14 17 18 ")) {
+      Assertions.fail("iterator does not return correct order");
+    }
+    //clear the tree and insert new values including duplicate
+    tree.clear();
+    tree.insert(65);
+    tree.insert(68);
+    tree.insert(77);
+    tree.insert(100);
+    tree.insert(7000);
+    tree.insert(66);
+    tree.insert(68);
+    result = "";
+    for(Integer i: tree) {
+      result += i + " ";
+    }
+    if(!result.equals("65 66 68 68 77 100 7000 ")) {
+      Assertions.fail("iterator does not contain duplicate values");
+    }
+  }
+
+  /**
+   * tests an iterator with a starting point, including starting points that are not in
+   * the tree or are past its largest value
+   */
+  @Test
+  public void testIteratorMin() {
+    ArrayRedBlackTree<String> tree = new ArrayRedBlackTree<String>();
+    tree.insert("Apple");
+    tree.insert("Bicycle");
+    tree.insert("Dolphin");
+    tree.insert("Forest");
+    tree.insert("Kite");
+    tree.insert("Lantern");
+    tree.setIteratorMin("Bicycle");
+    String result = "";
+    for(String i: tree) {
+      result += i + " ";
+    }
+    if(!result.equals("Bicycle Dolphin Forest Kite Lantern ")) {
+      Assertions.fail("iterator does not utillize minimum");
+    }
+    tree.setIteratorMin("Elephant");
+    result = "";
+    for(String i: tree) {
+      result += i + " ";
+    }
+    if(!result.equals("Forest Kite Lantern ")) {
+      Assertions.fail("iterator does not handle non existant min");
+    }
+    tree.setIteratorMin("Nest");
+    result = "";
+    for(String i: tree) {
+      result += i + " ";
+    }
+    if(!result.equals("")) {
+      Assertions.fail("iterator does not handle minimum outside range");
+    }
+  }
+
+  /**
+   * tests an iterator with a stopping point and with both a starting and stopping point,
+   * then removes values and checks the tree is still valid
+   */
+  @Test
+  public void testIteratorMaxAndRemove() {
+    ArrayRedBlackTree<Character> tree = new ArrayRedBlackTree<Character>();
+    tree.insert('B');
+    tree.insert('C');
+    tree.insert('H');
+    tree.insert('A');
+    tree.insert('G');
+    tree.insert('D');
+    tree.insert('D');
+    tree.setIteratorMax('C');
+    String result = "";
+    for(Character i: tree) {
+      result += i + " ";
+    }
+    if(!result.equals("A B C ")) {
+      Assertions.fail("iterator does not utillize maximum");
+    }
+    tree.setIteratorMax('F');
+    tree.setIteratorMin('B');
+    result = "";
+    for(Character i: tree) {
+      result += i + " ";
+    }
+    if(!result.equals("B C D D ")) {
+      Assertions.fail("iterator does not handle starting and stopping point");
+    }
+    tree.setIteratorMax('A');
+    if(tree.iterator().hasNext()) {
+      Assertions.fail("iterator does not handle min in range and max not in range");
+    }
+    if(!tree.remove('D') || !tree.remove('B') || tree.remove('Z') || tree.size() != 5) {
+      Assertions.fail("remove does not remove the right values");
+    }
+    if(tree.blackHeight(tree.root) < 0 || !tree.contains('D') || tree.contains('B')) {
+      Assertions.fail("tree is not valid after removing values");
+    }
+  }
+
+  /**
+   * tests iterators with their own bounds, exclusive bounds and descending order
+   */
+  @Test
+  public void testRangeIterators() {
+    ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<Integer>();
+    for(int i = 1; i <= 10; i++) {
+      tree.insert(i);
+      tree.insert(i);
+    }
+    tree.setIteratorMin(9);
+    String result = "";
+    for(Iterator<Integer> it = tree.iterator(3, false, 5, true); it.hasNext();) {
+      result += it.next() + " ";
+    }
+    if(!result.equals("4 4 5 5 ")) {
+      Assertions.fail("iterator does not use its own bounds");
+    }
+    result = "";
+    for(Iterator<Integer> it = tree.descendingIterator(8, true, 10, false); it.hasNext();) {
+      result += it.next() + " ";
+    }
+    if(!result.equals("9 9 8 8 ")) {
+      Assertions.fail("descending iterator does not handle bounds");
+    }
+    if(tree.descendingIterator(null, null).next() != 10 || tree.iterator(11, null).hasNext()) {
+      Assertions.fail("iterators don't handle missing or outside bounds");
+    }
+  }
+
+}
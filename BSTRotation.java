@@ -30,6 +30,9 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T>{
         throw new IllegalArgumentException("nodes are not in parent-child relationship");
         //if there is no parent child relation throw exception
       }
+      if(TreeMetrics.ENABLED) {
+        TreeMetrics.rotation();
+      }
   }
   /**
    * perform left rotation on a BST
@@ -55,6 +58,9 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T>{
       child.left.up = parent;
     }
     child.left = parent;
+    child.size = parent.size;
+    parent.size = parent.count + sizeOf(parent.left) + sizeOf(parent.right);
+    //child now roots the same subtree parent did, parent loses child's right side
     if(parent.equals(root)) {
       root = child;
     }
@@ -84,6 +90,9 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T>{
       child.right.up = parent;
     }
     child.right = parent;
+    child.size = parent.size;
+    parent.size = parent.count + sizeOf(parent.left) + sizeOf(parent.right);
+    //child now roots the same subtree parent did, parent loses child's left side
     if(parent.equals(root)) {
       root = child;
     }
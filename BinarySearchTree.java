@@ -1,3 +1,5 @@
+import java.util.Comparator;
+
 /**
  * represents a binary search tree 
  * @param <T> type that the nodes in the tree hold must implement comparable interface
@@ -5,6 +7,29 @@
  */
 public class BinarySearchTree<T extends Comparable<T>> implements SortedCollection<T>{
   protected BinaryTreeNode<T> root;
+  // orders the values in the tree, or null to use their natural order
+  protected Comparator<? super T> comparator = null;
+  /**
+   * compares a value to a value in the tree using the tree's comparator, or the natural
+   * order if it has none
+   * @param data - value to compare, must be a T when the tree has a comparator
+   * @param value - value in the tree
+   * @return a negative number, zero or a positive number if data is smaller than, equal to
+   * or bigger than value
+   */
+  @SuppressWarnings("unchecked")
+  protected int compare(Comparable<T> data, T value) {
+    if(TreeMetrics.ENABLED) {
+      TreeMetrics.comparison();
+    }
+    return comparator == null ? data.compareTo(value) : comparator.compare((T)data, value);
+  }
+  /**
+   * @return the comparator ordering this tree, or null if it uses the natural order
+   */
+  public Comparator<? super T> comparator() {
+    return comparator;
+  }
   /**
    * inserts a new value into the BST
    * @param data - data to be used for the new node to be inserted
@@ -30,47 +55,70 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     
   }
   /**
-   * Performs the naive binary search tree insert algorithm to recursively
-   * insert the provided newNode (which has already been initialized with a
-   * data value) into the provided tree/subtree.  When the provided subtree
-   * is null, this method does nothing. 
+   * Performs the naive binary search tree insert algorithm to insert the
+   * provided newNode (which has already been initialized with a data value)
+   * into the provided tree/subtree. Walks down from subtree with a single
+   * comparison per level, values equal to a node go to its left. When the
+   * provided subtree is null, this method does nothing. 
    * @param newNode - node to be inserted into the tree
    * @param subtree - node subtree is rooted at 
    */
   protected void insertHelper(BinaryTreeNode<T> newNode, BinaryTreeNode<T> subtree) {
+    insertHelper(newNode, subtree, false);
+  }
+  /**
+   * Performs the same insert as insertHelper(newNode, subtree), except that when countCopies
+   * is set and the walk meets a node equal to newNode, that node counts one more copy of its
+   * value instead and newNode is not linked, so a multiset finds an existing value and adds
+   * a new one in the same single descent.
+   * @param newNode - node to be inserted into the tree
+   * @param subtree - node subtree is rooted at
+   * @param countCopies - whether an equal node counts the copy instead of getting a new node
+   * @return true if newNode was linked into the tree, false if an equal node counted it
+   */
+  protected boolean insertHelper(BinaryTreeNode<T> newNode, BinaryTreeNode<T> subtree, boolean countCopies) {
     if(subtree == null) {
-      return;
+      return false;
       //if given subtree is null do nothing
     }
-    if(subtree.equals(newNode)) {
-      if(subtree.left == null) {
-        subtree.setChildLeft(newNode);
-        newNode.setParent(subtree);
-        //handle case where subtree is equal to node and left child is open
-        
+    T data = newNode.getData();
+    for(int steps = 1; ; steps++) {
+      subtree.size++;
+      //new value ends up in or below subtree so count it in subtree's size
+      int cmp = compare(data, subtree.getData());
+      if(countCopies && cmp == 0) {
+        subtree.count++;
+        if(TreeMetrics.ENABLED) {
+          TreeMetrics.searchPath(steps);
+        }
+        return false;
+        //subtree and every node above it already counted the copy on the way down
+      }
+      if(cmp <= 0) {
+        if(subtree.left == null) {
+          subtree.left = newNode;
+          newNode.up = subtree;
+          if(TreeMetrics.ENABLED) {
+            TreeMetrics.searchPath(steps);
+          }
+          return true;
+          //left child is open so insert it
+        }
+        subtree = subtree.left;
+        //value is smaller or equal so continue in left subtree
+      }else {
+        if(subtree.right == null) {
+          subtree.right = newNode;
+          newNode.up = subtree;
+          if(TreeMetrics.ENABLED) {
+            TreeMetrics.searchPath(steps);
+          }
+          return true;
+          //right child is open so insert it
+        }
+        subtree = subtree.right;
+        //value is bigger so continue in right subtree
       }
-    }
-    else if(subtree.left == null && subtree.getData().compareTo(newNode.getData()) >= 0) {
-      //check if left child is open and value is smaller or equal to root
-      subtree.setChildLeft(newNode);
-      newNode.setParent(subtree);
-      //if it is insert it
-      
-    }
-    else if(subtree.right == null && subtree.getData().compareTo(newNode.getData()) < 0) {
-      //check if right child is open and value is bigger than root
-      subtree.setChildRight(newNode);
-      newNode.setParent(subtree);
-      //if it is insert it
-      
-    }
-    else if(subtree.getData().compareTo(newNode.getData()) >= 0) {
-      insertHelper(newNode, subtree.left);
-      //if value is smaller or equal to but left child isn't open repeat with left subtree 
-    }
-    else if(subtree.getData().compareTo(newNode.getData()) < 0) {
-      insertHelper(newNode, subtree.right);
-      //if value is bigger but right child isn't open repeat with right subtree
     }
   }
   /**
@@ -86,12 +134,18 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     }
     BinaryTreeNode<T> curr = root;
     //current node to check
+    int steps = 0;
     while(curr != null) {
-      if(curr.getData().equals(data)) {
+      steps++;
+      int cmp = compare(data, curr.getData());
+      if(comparator == null ? curr.getData().equals(data) : cmp == 0) {
       //if data I look for is in the node return true
+        if(TreeMetrics.ENABLED) {
+          TreeMetrics.searchPath(steps);
+        }
         return true;
       }
-      else if(data.compareTo(curr.getData()) > 0) {
+      else if(cmp > 0) {
         curr = curr.right;
         //if data is bigger than current node go right
       }else {
@@ -100,33 +154,370 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
       }
     }
     //if node is not found in search return false
+    if(TreeMetrics.ENABLED) {
+      TreeMetrics.searchPath(steps);
+    }
     return false;
   }
   /**
-   * counts number of nodes in the tree object
+   * finds a node that holds a value equal to data
+   * @param data - value to look for
+   * @return a node whose value compares equal to data, or null if there is none
+   */
+  protected BinaryTreeNode<T> findNode(Comparable<T> data) {
+    BinaryTreeNode<T> curr = root;
+    int steps = 0;
+    while(curr != null) {
+      steps++;
+      int cmp = compare(data, curr.getData());
+      if(cmp == 0) {
+        break;
+        //found a matching node
+      }
+      curr = cmp > 0 ? curr.right : curr.left;
+      //if data is bigger go right, otherwise go left
+    }
+    if(TreeMetrics.ENABLED) {
+      TreeMetrics.searchPath(steps);
+    }
+    return curr;
+  }
+  /**
+   * removes one occurrence of a value from the tree
+   * @param data - value to remove
+   * @return true if a value equal to data was removed, false if there was none
+   */
+  @Override
+  public boolean remove(Comparable<T> data) {
+    if(data == null) {
+      return false;
+      //null is never stored in the tree
+    }
+    BinaryTreeNode<T> node = findNode(data);
+    if(node == null) {
+      return false;
+    }
+    removeOne(node);
+    return true;
+  }
+  /**
+   * removes and returns the smallest value in the tree
+   * @return the smallest value, or null if the tree is empty
+   */
+  public T pollFirst() {
+    if(root == null) {
+      return null;
+    }
+    BinaryTreeNode<T> node = minNode(root);
+    removeOne(node);
+    return node.getData();
+  }
+  /**
+   * removes and returns the largest value in the tree
+   * @return the largest value, or null if the tree is empty
+   */
+  public T pollLast() {
+    if(root == null) {
+      return null;
+    }
+    BinaryTreeNode<T> node = root;
+    while(node.right != null) {
+      node = node.right;
+      //largest value is the right most node
+    }
+    removeOne(node);
+    return node.getData();
+  }
+  /**
+   * finds the smallest value in the tree
+   * @return the smallest value, or null if the tree is empty
+   */
+  public T first() {
+    return root == null ? null : minNode(root).getData();
+  }
+  /**
+   * finds the largest value in the tree
+   * @return the largest value, or null if the tree is empty
+   */
+  public T last() {
+    if(root == null) {
+      return null;
+    }
+    BinaryTreeNode<T> node = root;
+    while(node.right != null) {
+      node = node.right;
+      //largest value is the right most node
+    }
+    return node.getData();
+  }
+  /**
+   * finds the largest value in the tree that is smaller than or equal to data
+   * @param data - value to compare against
+   * @return that value, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T floor(Comparable<T> data) {
+    return bound(data, true, false);
+  }
+  /**
+   * finds the smallest value in the tree that is bigger than or equal to data
+   * @param data - value to compare against
+   * @return that value, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T ceiling(Comparable<T> data) {
+    return bound(data, true, true);
+  }
+  /**
+   * finds the smallest value in the tree that is strictly bigger than data
+   * @param data - value to compare against
+   * @return that value, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T higher(Comparable<T> data) {
+    return bound(data, false, true);
+  }
+  /**
+   * finds the largest value in the tree that is strictly smaller than data
+   * @param data - value to compare against
+   * @return that value, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T lower(Comparable<T> data) {
+    return bound(data, false, false);
+  }
+  /**
+   * finds the closest value to data on one side of it with a single descent of the tree
+   * @param data - value to compare against
+   * @param inclusive - whether a value equal to data is a match
+   * @param above - true to look for values bigger than data, false for smaller values
+   * @return the closest matching value, or null if there is none
+   */
+  private T bound(Comparable<T> data, boolean inclusive, boolean above) {
+    BinaryTreeNode<T> node = boundNode(data, inclusive, above);
+    return node == null ? null : node.getData();
+  }
+  /**
+   * finds the node closest to data on one side of it with a single descent of the tree
+   * @param data - value to compare against
+   * @param inclusive - whether a node equal to data is a match
+   * @param above - true to look for nodes bigger than data, false for smaller nodes
+   * @return the closest matching node, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  protected BinaryTreeNode<T> boundNode(Comparable<T> data, boolean inclusive, boolean above) {
+    if(data == null) {
+      throw new NullPointerException("data is null");
+    }
+    BinaryTreeNode<T> found = null;
+    BinaryTreeNode<T> curr = root;
+    int steps = 0;
+    while(curr != null) {
+      steps++;
+      int cmp = compare(data, curr.getData());
+      boolean matches = above ? (cmp < 0 || (inclusive && cmp == 0)) : (cmp > 0 || (inclusive && cmp == 0));
+      if(matches) {
+        found = curr;
+        curr = above ? curr.left : curr.right;
+        //remember the match and look for a closer one
+      }else {
+        curr = above ? curr.right : curr.left;
+      }
+    }
+    if(TreeMetrics.ENABLED) {
+      TreeMetrics.searchPath(steps);
+    }
+    return found;
+  }
+  /**
+   * removes every value between min and max, including min and max themselves
+   * @param min - smallest value to remove, or null for no minimum
+   * @param max - largest value to remove, or null for no maximum
+   * @return number of values removed
+   */
+  public int removeRange(Comparable<T> min, Comparable<T> max) {
+    int removed = 0;
+    while(true) {
+      //find the first node that is not smaller than min
+      BinaryTreeNode<T> first = null;
+      BinaryTreeNode<T> curr = root;
+      while(curr != null) {
+        if(min == null || compare(min, curr.getData()) <= 0) {
+          first = curr;
+          curr = curr.left;
+        }else {
+          curr = curr.right;
+        }
+      }
+      if(first == null || (max != null && compare(max, first.getData()) < 0)) {
+        return removed;
+        //no values left in the range
+      }
+      removed += first.count;
+      deleteNode(first);
+      //every copy the node holds is in the range
+    }
+  }
+  /**
+   * finds the node with the smallest value in a subtree
+   * @param node - root of the subtree, must not be null
+   * @return the left most node of the subtree
+   */
+  protected BinaryTreeNode<T> minNode(BinaryTreeNode<T> node) {
+    while(node.left != null) {
+      node = node.left;
+    }
+    return node;
+  }
+  /**
+   * finds the node with the largest value in a subtree
+   * @param node - root of the subtree, must not be null
+   * @return the right most node of the subtree
+   */
+  protected BinaryTreeNode<T> maxNode(BinaryTreeNode<T> node) {
+    while(node.right != null) {
+      node = node.right;
+    }
+    return node;
+  }
+  /**
+   * finds the node that comes after node in sorted order by following parent references
+   * @param node - node in this tree, must not be null
+   * @return the next node in sorted order, or null if node holds the largest value
+   */
+  protected BinaryTreeNode<T> successor(BinaryTreeNode<T> node) {
+    if(node.right != null) {
+      return minNode(node.right);
+      //next node is the smallest node of the right subtree
+    }
+    while(node.up != null && node.up.right == node) {
+      node = node.up;
+      //climb until coming up from a left subtree
+    }
+    return node.up;
+  }
+  /**
+   * finds the node that comes before node in sorted order by following parent references
+   * @param node - node in this tree, must not be null
+   * @return the previous node in sorted order, or null if node holds the smallest value
+   */
+  protected BinaryTreeNode<T> predecessor(BinaryTreeNode<T> node) {
+    if(node.left != null) {
+      return maxNode(node.left);
+      //previous node is the largest node of the left subtree
+    }
+    while(node.up != null && node.up.left == node) {
+      node = node.up;
+      //climb until coming up from a right subtree
+    }
+    return node.up;
+  }
+  /**
+   * replaces the subtree rooted at oldNode with the subtree rooted at newNode in oldNode's parent
+   * @param oldNode - node being replaced, must not be null
+   * @param newNode - node taking its place, may be null
+   */
+  protected void transplant(BinaryTreeNode<T> oldNode, BinaryTreeNode<T> newNode) {
+    if(oldNode.up == null) {
+      root = newNode;
+      //old node was the root
+    }else if(oldNode.up.left == oldNode) {
+      oldNode.up.left = newNode;
+    }else {
+      oldNode.up.right = newNode;
+    }
+    if(newNode != null) {
+      newNode.up = oldNode.up;
+    }
+  }
+  /**
+   * removes one copy of the value a node holds, taking the node out of the tree when it
+   * holds its last copy
+   * @param node - node in this tree
+   */
+  protected void removeOne(BinaryTreeNode<T> node) {
+    if(node.count > 1) {
+      node.count--;
+      decrementSizes(node);
+      //the node stays, its subtree and all subtrees above lose one value
+    }else {
+      deleteNode(node);
+    }
+  }
+  /**
+   * recomputes the subtree size of node and all of its ancestors from their children
+   * @param node - lowest node whose subtree changed, may be null
+   */
+  protected void resizeUpward(BinaryTreeNode<T> node) {
+    while(node != null) {
+      node.size = node.count + sizeOf(node.left) + sizeOf(node.right);
+      node = node.up;
+    }
+  }
+  /**
+   * subtracts one from the subtree size of node and all of its ancestors
+   * @param node - lowest node whose subtree lost a node, may be null
+   */
+  protected void decrementSizes(BinaryTreeNode<T> node) {
+    while(node != null) {
+      node.size--;
+      node = node.up;
+    }
+  }
+  /**
+   * unlinks a node from the tree using the naive binary search tree delete algorithm.
+   * A node with two children is replaced by its in-order successor node.
+   * @param node - node to remove, must be in this tree
+   */
+  protected void deleteNode(BinaryTreeNode<T> node) {
+    BinaryTreeNode<T> sizeStart;
+    //lowest node whose subtree changes
+    if(node.left == null) {
+      sizeStart = node.up;
+      transplant(node, node.right);
+    }else if(node.right == null) {
+      sizeStart = node.up;
+      transplant(node, node.left);
+    }else {
+      BinaryTreeNode<T> successor = minNode(node.right);
+      if(successor.up != node) {
+        sizeStart = successor.up;
+        transplant(successor, successor.right);
+        successor.right = node.right;
+        successor.right.up = successor;
+        //successor takes over node's right subtree
+      }else {
+        sizeStart = successor;
+      }
+      transplant(node, successor);
+      successor.left = node.left;
+      successor.left.up = successor;
+      //successor takes node's place and left subtree
+    }
+    resizeUpward(sizeStart);
+    //the sizes from there up lose the node's values and may have gained or lost the successor's
+    node.up = null;
+    node.left = null;
+    node.right = null;
+    node.size = node.count;
+    //detach removed node from the tree
+  }
+  /**
+   * counts number of nodes in the tree object, every node keeps the size of its
+   * subtree so this is read straight from the root
    * @return number of nodes in the tree
    */
   @Override
   public int size() {
-    //call helper method
-    return sizeHelper(root);
-    
+    return sizeOf(root);
   }
   /**
-   * counts the number of nodes in a subtree
-   * @param root the root of the subtree
-   * @return number of nodes in subtree
+   * gets the number of nodes in a subtree
+   * @param node the root of the subtree, may be null
+   * @return number of nodes in subtree, 0 if node is null
    */
-  private int sizeHelper(BinaryTreeNode<T> root) {
-    if(root == null) return 0;
-    //if root of subtree is null return zero
-    int leftTree = sizeHelper(root.left);
-    //count all nodes on left subtree
-    int rightTree = sizeHelper(root.right);
-    //count all nodes on right subtree
-    
-    return 1 + rightTree + leftTree;
-    //return 1 for the root + all nodes on left + all nodes on right
+  protected int sizeOf(BinaryTreeNode<T> node) {
+    return node == null ? 0 : node.size;
   }
   /**
    * Checks if the tree is empty
@@ -134,18 +525,106 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
    */
   @Override
   public boolean isEmpty() {
-    
-    if(root == null && this.size() == 0) {
-    //the tree is only empty if root reference is null and size is 0
-      return true;
+    return root == null;
+    //the tree is only empty if root reference is null
+  }
+  /**
+   * counts the number of values in the tree that are strictly smaller than data
+   * @param data - value to compare against
+   * @return number of values smaller than data, which is also the index data would have in sorted order
+   * @throws NullPointerException if data is null
+   */
+  public int rank(Comparable<T> data) {
+    if(data == null) {
+      throw new NullPointerException("data is null");
     }
-    return false;
+    int count = 0;
+    BinaryTreeNode<T> curr = root;
+    while(curr != null) {
+      if(compare(data, curr.getData()) > 0) {
+        count += sizeOf(curr.left) + curr.count;
+        curr = curr.right;
+        //current node and its left subtree are all smaller so count them and go right
+      }else {
+        curr = curr.left;
+        //otherwise everything smaller is on the left
+      }
+    }
+    return count;
+  }
+  /**
+   * counts the number of values in the tree that are smaller than or equal to data
+   * @param data - value to compare against
+   * @return number of values smaller than or equal to data
+   */
+  protected int rankInclusive(Comparable<T> data) {
+    int count = 0;
+    BinaryTreeNode<T> curr = root;
+    while(curr != null) {
+      if(compare(data, curr.getData()) >= 0) {
+        count += sizeOf(curr.left) + curr.count;
+        curr = curr.right;
+        //current node and its left subtree are all smaller or equal so count them and go right
+      }else {
+        curr = curr.left;
+      }
+    }
+    return count;
+  }
+  /**
+   * finds the value at the provided position of the tree's sorted order
+   * @param index - position of the value, 0 is the smallest value
+   * @return the value at that position, duplicates each take their own position
+   * @throws IndexOutOfBoundsException if index is negative or not smaller than size()
+   */
+  public T select(int index) {
+    if(index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size());
+    }
+    return selectNode(index).getData();
+  }
+  /**
+   * finds the node holding the value at the provided position of the tree's sorted order
+   * @param index - position of the value, must be between 0 and size() - 1
+   * @return the node holding the value at that position
+   */
+  protected BinaryTreeNode<T> selectNode(int index) {
+    BinaryTreeNode<T> curr = root;
+    while(true) {
+      int leftSize = sizeOf(curr.left);
+      if(index < leftSize) {
+        curr = curr.left;
+        //value is in left subtree
+      }else if(index < leftSize + curr.count) {
+        return curr;
+        //value is one of the copies in the current node
+      }else {
+        index -= leftSize + curr.count;
+        curr = curr.right;
+        //skip the left subtree and current node and look in right subtree
+      }
+    }
+  }
+  /**
+   * counts the number of values between min and max, including min and max themselves
+   * @param min - smallest value to count, or null for no minimum
+   * @param max - largest value to count, or null for no maximum
+   * @return number of values in the range, 0 if min is larger than max
+   */
+  public int countInRange(Comparable<T> min, Comparable<T> max) {
+    int upper = max == null ? size() : rankInclusive(max);
+    int lower = min == null ? 0 : rank(min);
+    return Math.max(0, upper - lower);
   }
   /**
    * clears the BST of any data that is currently stored in it
    */
   @Override
   public void clear() {
+    if(root == null) {
+      return;
+      //nothing to clear
+    }
     root.right = null;
     root.left = null;
     root = null;
@@ -265,6 +744,108 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     
     return true;
   }
+  /**
+   * checks that size(), rank(), select() and countInRange() agree with the sorted order of the tree
+   * including duplicate values
+   * uses an Integer tree
+   * @return true if all tests pass, false otherwise
+   */
+  public boolean test4() {
+    BinarySearchTree<Integer> tree = new BinarySearchTree<Integer>();
+    if(tree.size() != 0 || tree.countInRange(null, null) != 0) return false;
+    //check empty tree
+    tree.insert(50);
+    tree.insert(30);
+    tree.insert(70);
+    tree.insert(30);
+    tree.insert(60);
+    tree.insert(80);
+    tree.insert(10);
+    //sorted order is 10 30 30 50 60 70 80
+    if(tree.size() != 7) return false;
+    if(tree.root.subtreeSize() != 7 || tree.root.left.subtreeSize() != 3) return false;
+    //check that subtree sizes are kept
+    if(tree.rank(10) != 0 || tree.rank(30) != 1 || tree.rank(50) != 3 || tree.rank(90) != 7) return false;
+    //check rank of values in the tree and outside of it
+    if(tree.select(0) != 10 || tree.select(2) != 30 || tree.select(3) != 50 || tree.select(6) != 80) return false;
+    //check select returns the right value for each position
+    try {
+      tree.select(7);
+      return false;
+    }catch(IndexOutOfBoundsException e) {
+      
+    }
+    if(tree.countInRange(30, 60) != 4) return false;
+    if(tree.countInRange(31, 59) != 1) return false;
+    if(tree.countInRange(null, 30) != 3) return false;
+    if(tree.countInRange(70, null) != 2) return false;
+    if(tree.countInRange(60, 30) != 0) return false;
+    //check ranges with and without bounds
+    return true;
+  }
+  /**
+   * checks that remove() works for leaves, nodes with one child, nodes with two children
+   * and the root, and that pollFirst(), pollLast() and removeRange() remove the right values
+   * uses an Integer tree
+   * @return true if all tests pass, false otherwise
+   */
+  public boolean test5() {
+    BinarySearchTree<Integer> tree = new BinarySearchTree<Integer>();
+    tree.insert(50);
+    tree.insert(30);
+    tree.insert(70);
+    tree.insert(20);
+    tree.insert(40);
+    tree.insert(60);
+    tree.insert(80);
+    tree.insert(65);
+    if(tree.remove(55)) return false;
+    //value not in the tree
+    if(!tree.remove(20) || tree.contains(20) || tree.root.left.left != null) return false;
+    //remove a leaf
+    if(!tree.remove(60) || tree.root.right.left.getData() != 65) return false;
+    //remove a node with one child
+    if(!tree.remove(50) || tree.root.getData() != 65 || tree.root.up != null) return false;
+    //remove the root which has two children
+    if(tree.size() != 5 || tree.root.right.subtreeSize() != 2) return false;
+    //check sizes were kept
+    if(tree.pollFirst() != 30 || tree.pollLast() != 80) return false;
+    if(tree.size() != 3 || tree.select(0) != 40) return false;
+    //check polling removes the smallest and largest values
+    tree.insert(66);
+    tree.insert(67);
+    if(tree.removeRange(65, 67) != 3) return false;
+    if(tree.size() != 2 || !tree.contains(40) || !tree.contains(70)) return false;
+    //check a range is removed without touching values outside of it
+    tree.pollFirst();
+    tree.pollFirst();
+    if(!tree.isEmpty() || tree.pollFirst() != null) return false;
+    //check tree is empty after removing everything
+    return true;
+  }
+  /**
+   * tests first, last, floor, ceiling, higher and lower with values inside, between and
+   * outside the values in the tree, including duplicates
+   * @return true if all tests pass, false otherwise
+   */
+  public boolean test6() {
+    BinarySearchTree<Integer> tree = new BinarySearchTree<Integer>();
+    if(tree.first() != null || tree.last() != null || tree.floor(5) != null) return false;
+    //empty tree has no values to find
+    tree.insert(50);
+    tree.insert(30);
+    tree.insert(70);
+    tree.insert(30);
+    tree.insert(60);
+    if(tree.first() != 30 || tree.last() != 70) return false;
+    if(tree.floor(30) != 30 || tree.floor(55) != 50 || tree.floor(29) != null) return false;
+    if(tree.ceiling(30) != 30 || tree.ceiling(55) != 60 || tree.ceiling(71) != null) return false;
+    //inclusive lookups find equal values and the closest value otherwise
+    if(tree.higher(30) != 50 || tree.higher(70) != null || tree.higher(0) != 30) return false;
+    if(tree.lower(30) != null || tree.lower(60) != 50 || tree.lower(100) != 70) return false;
+    //strict lookups skip every duplicate of an equal value
+    return true;
+  }
   /**
    * runs the test methods and outputs what value they return
    * @param args command line arguments Java uses to run the code
@@ -275,6 +856,9 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     System.out.println(tree.test1() ? "Test 1 Passed": "Test 1 Fail");
     System.out.println(tree.test2() ? "Test 2 Passed": "Test 2 Fail");
     System.out.println(tree.test3() ? "Test 3 Passed": "Test 3 Fail");
+    System.out.println(tree.test4() ? "Test 4 Passed": "Test 4 Fail");
+    System.out.println(tree.test5() ? "Test 5 Passed": "Test 5 Fail");
+    System.out.println(tree.test6() ? "Test 6 Passed": "Test 6 Fail");
     //call tester methods and print out their output
   }
 }
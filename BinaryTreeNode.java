@@ -18,6 +18,10 @@ public class BinaryTreeNode<T> {
     protected BinaryTreeNode<T> left = null;
     // reference to the node's right child
     protected BinaryTreeNode<T> right = null;
+    // number of copies of data this node holds, more than 1 only in multiset trees
+    protected int count = 1;
+    // number of values in the subtree rooted at this node, adding up the count of every node
+    protected int size = 1;
 
     /**
      * Constructor that creates a new node with the value data. Both parent 
@@ -49,6 +53,18 @@ public class BinaryTreeNode<T> {
      */
     public BinaryTreeNode<T> parent() { return this.up; }
 
+    /**
+     * @return the number of values in the subtree rooted at this node,
+     * including this node itself, which is the number of nodes unless
+     * nodes hold more than one copy of their value
+     */
+    public int subtreeSize() { return this.size; }
+
+    /**
+     * @return the number of copies of its value this node holds
+     */
+    public int count() { return this.count; }
+
     /**
      * Gives this node a new value and deletes the old value.
      * @param newData the new value to store in this node
@@ -0,0 +1,611 @@
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is an iterable red black tree that many threads can use at once. Writers take
+ * the write lock of a StampedLock and change an IterableRedBlackTree one at a time. Readers
+ * don't lock at all in the common case: they walk the nodes under an optimistic stamp and
+ * validate the stamp afterwards, and only when a writer got in the way do they walk again
+ * under the read lock. An optimistic walk can see nodes in the middle of a rotation, so every
+ * walk is bounded by the largest height a valid red black tree can have and any exception it
+ * runs into is treated as a conflict.
+ *
+ * Iterators copy a batch of values at a time under one stamp and find their place again by
+ * value for the next batch, so they never hold a lock between calls. They are weakly
+ * consistent: every value returned was in the tree when its batch was read, and changes made
+ * while iterating may or may not be seen.
+ */
+public class ConcurrentRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  // no valid red black tree with an int size is taller than this
+  private static final int MAX_HEIGHT = 64;
+  // number of values an iterator copies under one stamp
+  private static final int BATCH = 64;
+
+  // tree holding the values, only changed while holding the write lock
+  private final IterableRedBlackTree<T> tree = new IterableRedBlackTree<T>();
+  private final StampedLock lock = new StampedLock();
+  // start and stop point for iterators created by iterator()
+  private volatile Comparable<T> min = null;
+  private volatile Comparable<T> max = null;
+
+  /**
+   * inserts a new value into the tree
+   * @param data - value to insert
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    long stamp = lock.writeLock();
+    try {
+      tree.insert(data);
+    }finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * inserts every value of a collection while holding the write lock once
+   * @param values - values to insert, in any order
+   * @throws NullPointerException if values or any value in it is null
+   */
+  public void insertAll(Collection<? extends T> values) {
+    long stamp = lock.writeLock();
+    try {
+      tree.insertAll(values);
+    }finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * removes one occurrence of a value from the tree
+   * @param data - value to remove
+   * @return true if a value equal to data was removed, false if there was none
+   */
+  @Override
+  public boolean remove(Comparable<T> data) {
+    long stamp = lock.writeLock();
+    try {
+      return tree.remove(data);
+    }finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * removes and returns the smallest value in the tree
+   * @return the smallest value, or null if the tree is empty
+   */
+  public T pollFirst() {
+    long stamp = lock.writeLock();
+    try {
+      return tree.pollFirst();
+    }finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * removes and returns the largest value in the tree
+   * @return the largest value, or null if the tree is empty
+   */
+  public T pollLast() {
+    long stamp = lock.writeLock();
+    try {
+      return tree.pollLast();
+    }finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public void clear() {
+    long stamp = lock.writeLock();
+    try {
+      tree.clear();
+    }finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * checks if a value appears in the tree at least once, without locking unless a writer
+   * changes the tree during the lookup
+   * @param data - value to look for
+   * @return true if the tree holds a value equal to data, false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    if(data == null) {
+      return false;
+    }
+    T found = ceiling(data);
+    return found != null && tree.compare(data, found) == 0;
+  }
+
+  /**
+   * @return the largest value smaller than or equal to data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T floor(Comparable<T> data) {
+    return read(checked(data), true, false);
+  }
+
+  /**
+   * @return the smallest value bigger than or equal to data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T ceiling(Comparable<T> data) {
+    return read(checked(data), true, true);
+  }
+
+  /**
+   * @return the smallest value strictly bigger than data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T higher(Comparable<T> data) {
+    return read(checked(data), false, true);
+  }
+
+  /**
+   * @return the largest value strictly smaller than data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  public T lower(Comparable<T> data) {
+    return read(checked(data), false, false);
+  }
+
+  /**
+   * @return the smallest value in the tree, or null if the tree is empty
+   */
+  public T first() {
+    return read(null, true, true);
+  }
+
+  /**
+   * @return the largest value in the tree, or null if the tree is empty
+   */
+  public T last() {
+    return read(null, true, false);
+  }
+
+  private static <R> R checked(R data) {
+    if(data == null) {
+      throw new NullPointerException("data is null");
+    }
+    return data;
+  }
+
+  /**
+   * Finds the closest value to data on one side of it, first under an optimistic stamp and
+   * then, if a writer changed the tree meanwhile, under the read lock.
+   * @param data - value to compare against, or null to find the first or last value
+   * @param inclusive - whether a value equal to data is a match
+   * @param above - true to look for values bigger than data, false for smaller values
+   * @return the closest matching value, or null if there is none
+   */
+  private T read(Comparable<T> data, boolean inclusive, boolean above) {
+    long stamp = lock.tryOptimisticRead();
+    if(stamp != 0L) {
+      try {
+        T found = descend(data, inclusive, above);
+        if(lock.validate(stamp)) {
+          return found;
+        }
+      }catch(RuntimeException e) {
+        //the walk saw a half changed tree, which validate would reject too
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return descend(data, inclusive, above);
+    }finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Walks down the tree once looking for the closest value to data on one side of it.
+   * @return the closest matching value, or null if there is none
+   * @throws IllegalStateException if the walk takes more steps than a valid tree allows,
+   * which can only happen in an optimistic walk
+   */
+  private T descend(Comparable<T> data, boolean inclusive, boolean above) {
+    T found = null;
+    BinaryTreeNode<T> curr = tree.root;
+    for(int steps = 0; curr != null; steps++) {
+      if(steps == MAX_HEIGHT) {
+        throw new IllegalStateException("walk is longer than a valid tree allows");
+      }
+      T value = curr.data;
+      int cmp = data == null ? (above ? -1 : 1) : tree.compare(data, value);
+      //without data every node matches, which leads to the first or last node
+      boolean matches = above ? (cmp < 0 || (inclusive && cmp == 0)) : (cmp > 0 || (inclusive && cmp == 0));
+      if(matches) {
+        found = value;
+        curr = above ? curr.left : curr.right;
+      }else {
+        curr = above ? curr.right : curr.left;
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public int size() {
+    long stamp = lock.tryOptimisticRead();
+    BinaryTreeNode<T> root = tree.root;
+    int size = root == null ? 0 : root.size;
+    if(stamp != 0L && lock.validate(stamp)) {
+      return size;
+    }
+    stamp = lock.readLock();
+    try {
+      return tree.size();
+    }finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Sets the start (minimum) value of iterators created by iterator() after this call.
+   * @param min the minimum for iterators, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) { this.min = min; }
+
+  /**
+   * Sets the stop (maximum) value of iterators created by iterator() after this call.
+   * @param max the maximum for iterators, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) { this.max = max; }
+
+  /**
+   * Returns a weakly consistent iterator over the values between the iterator min and max,
+   * including the min and max themselves, in ascending order.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(min, true, max, true);
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the values between min and max in ascending
+   * order.
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    return new BatchIterator(min, minInclusive, max, maxInclusive, false);
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the values between min and max in descending
+   * order.
+   */
+  @Override
+  public Iterator<T> descendingIterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    return new BatchIterator(min, minInclusive, max, maxInclusive, true);
+  }
+
+  /**
+   * Iterator that copies up to BATCH values at a time out of the tree. Each batch starts with
+   * a lookup of the last value returned, skipping the copies of it that were already returned.
+   */
+  private class BatchIterator implements Iterator<T> {
+
+    private final Comparable<T> min;
+    private final boolean minInclusive;
+    private final Comparable<T> max;
+    private final boolean maxInclusive;
+    private final boolean descending;
+    // values of the current batch
+    private final Object[] batch = new Object[BATCH];
+    private int length = 0;
+    private int position = 0;
+    // whether the last batch reached the end of the range
+    private boolean exhausted = false;
+    // last value returned and how many values equal to it were returned in a row
+    private T last = null;
+    private int copiesOfLast = 0;
+    // whether remove can be called
+    private boolean canRemove = false;
+
+    private BatchIterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive, boolean descending) {
+      this.min = min;
+      this.minInclusive = minInclusive;
+      this.max = max;
+      this.maxInclusive = maxInclusive;
+      this.descending = descending;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if(position == length && !exhausted) {
+        fill();
+      }
+      return position < length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException("No More Nodes To Visit");
+      }
+      T value = (T)batch[position];
+      batch[position++] = null;
+      if(last != null && tree.compare(value, last) == 0) {
+        copiesOfLast++;
+      }else {
+        last = value;
+        copiesOfLast = 1;
+      }
+      canRemove = true;
+      return value;
+    }
+
+    /**
+     * Removes one copy of the value last returned by next from the tree.
+     */
+    @Override
+    public void remove() {
+      if(!canRemove) {
+        throw new IllegalStateException("next has not been called");
+      }
+      canRemove = false;
+      if(ConcurrentRedBlackTree.this.remove(last)) {
+        copiesOfLast--;
+        //the next batch has one fewer copy to skip
+      }
+    }
+
+    /**
+     * Reads the next batch of values, first under an optimistic stamp and then under the
+     * read lock if a writer got in the way.
+     */
+    private void fill() {
+      long stamp = lock.tryOptimisticRead();
+      if(stamp != 0L) {
+        try {
+          collect();
+          if(lock.validate(stamp)) {
+            return;
+          }
+        }catch(RuntimeException e) {
+          //the walk saw a half changed tree, read the batch again under the lock
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        collect();
+      }finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    /**
+     * Copies the next values of the range into the batch.
+     * @throws IllegalStateException if the walk takes more steps than a valid tree allows,
+     * which can only happen in an optimistic walk
+     */
+    private void collect() {
+      int budget = (BATCH + 2) * 2 * MAX_HEIGHT;
+      //a seek plus one successor step per value, each at most twice the height
+      BinaryTreeNode<T> node;
+      int skip = 0;
+      if(last != null) {
+        node = seek(last, true, !descending);
+        skip = copiesOfLast;
+        //start at the first copy of the last value and skip the copies already returned
+      }else if(descending) {
+        node = max == null ? seek(null, true, false) : seek(max, maxInclusive, false);
+      }else {
+        node = min == null ? seek(null, true, true) : seek(min, minInclusive, true);
+      }
+      length = 0;
+      position = 0;
+      exhausted = false;
+      while(length < BATCH) {
+        if(node == null || pastEnd(node.data)) {
+          exhausted = true;
+          return;
+        }
+        T value = node.data;
+        int copies = node.count;
+        if(skip > 0 && tree.compare(last, value) == 0) {
+          int skipped = Math.min(skip, copies);
+          skip -= skipped;
+          copies -= skipped;
+        }else {
+          skip = 0;
+        }
+        for(; copies > 0 && length < BATCH; copies--) {
+          batch[length++] = value;
+        }
+        if(copies > 0) {
+          return;
+          //batch is full in the middle of a node, the next batch skips what was taken
+        }
+        BinaryTreeNode<T> next;
+        if(descending ? node.left != null : node.right != null) {
+          next = descending ? node.left : node.right;
+          while((descending ? next.right : next.left) != null && --budget > 0) {
+            next = descending ? next.right : next.left;
+          }
+        }else {
+          next = node;
+          while(next.up != null && (descending ? next.up.left : next.up.right) == next && --budget > 0) {
+            next = next.up;
+          }
+          next = next.up;
+        }
+        if(--budget <= 0) {
+          throw new IllegalStateException("walk is longer than a valid tree allows");
+        }
+        node = next;
+      }
+    }
+
+    /**
+     * Finds the first node at or after a bound in the direction of the iterator.
+     * @param bound - bound to seek, or null for the first node of the iterator
+     * @param inclusive - whether a node equal to bound is a match
+     * @param above - true to find the smallest matching node, false for the largest
+     * @return the node, or null if there is none
+     */
+    private BinaryTreeNode<T> seek(Comparable<T> bound, boolean inclusive, boolean above) {
+      BinaryTreeNode<T> found = null;
+      BinaryTreeNode<T> curr = tree.root;
+      for(int steps = 0; curr != null; steps++) {
+        if(steps == MAX_HEIGHT) {
+          throw new IllegalStateException("walk is longer than a valid tree allows");
+          //only happens in an optimistic walk, which then reads again under the lock
+        }
+        int cmp = bound == null ? (above ? -1 : 1) : tree.compare(bound, curr.data);
+        boolean matches = above ? (cmp < 0 || (inclusive && cmp == 0)) : (cmp > 0 || (inclusive && cmp == 0));
+        if(matches) {
+          found = curr;
+          curr = above ? curr.left : curr.right;
+        }else {
+          curr = above ? curr.right : curr.left;
+        }
+      }
+      return found;
+    }
+
+    /**
+     * @return true if value is past the stop point of the iterator
+     */
+    private boolean pastEnd(T value) {
+      if(descending) {
+        if(min == null) {
+          return false;
+        }
+        int cmp = tree.compare(min, value);
+        return cmp > 0 || (cmp == 0 && !minInclusive);
+      }
+      if(max == null) {
+        return false;
+      }
+      int cmp = tree.compare(max, value);
+      return cmp < 0 || (cmp == 0 && !maxInclusive);
+    }
+  }
+
+  /**
+   * tests that the tree behaves like an iterable red black tree from a single thread,
+   * including iterators that read more than one batch and skip duplicates between batches
+   */
+  @Test
+  public void testSingleThread() {
+    ConcurrentRedBlackTree<Integer> tree = new ConcurrentRedBlackTree<Integer>();
+    for(int i = 0; i < 300; i++) {
+      tree.insert(i / 3);
+      //every value from 0 to 99 three times, so batches end between copies
+    }
+    if(tree.size() != 300 || !tree.contains(99) || tree.contains(100) || tree.floor(-1) != null
+       || tree.ceiling(50) != 50 || tree.higher(50) != 51 || tree.first() != 0 || tree.last() != 99) {
+      Assertions.fail("lookups return wrong values");
+    }
+    int count = 0;
+    int previous = -1;
+    for(Integer value: tree) {
+      if(value < previous) {
+        Assertions.fail("iterator is not in ascending order");
+      }
+      previous = value;
+      count++;
+    }
+    if(count != 300) {
+      Assertions.fail("iterator does not return every copy across batches");
+    }
+    String result = "";
+    for(Iterator<Integer> it = tree.descendingIterator(10, false, 12, true); it.hasNext();) {
+      result += it.next() + " ";
+    }
+    if(!result.equals("12 12 12 11 11 11 ")) {
+      Assertions.fail("descending iterator does not handle bounds");
+    }
+    for(Iterator<Integer> it = tree.iterator(); it.hasNext();) {
+      if(it.next() % 2 == 0) {
+        it.remove();
+      }
+    }
+    if(tree.size() != 150 || tree.contains(4) || !tree.contains(5)) {
+      Assertions.fail("iterator remove does not remove the returned values");
+    }
+  }
+
+  /**
+   * tests readers running alongside a writer that only ever inserts and removes even values:
+   * readers must never see an odd value or an out of order iteration
+   */
+  @Test
+  public void testConcurrentReaders() throws InterruptedException {
+    ConcurrentRedBlackTree<Integer> tree = new ConcurrentRedBlackTree<Integer>();
+    for(int i = 0; i < 2000; i += 2) {
+      tree.insert(i);
+    }
+    AtomicReference<String> failure = new AtomicReference<String>();
+    CountDownLatch done = new CountDownLatch(4);
+    Thread writer = new Thread(() -> {
+      for(int round = 0; round < 20000 && done.getCount() > 0; round++) {
+        int value = (round * 7919) % 2000 * 2 % 2000;
+        tree.insert(value);
+        tree.remove(value);
+        tree.insert((value + 1000) % 2000 * 2 % 4000);
+        tree.remove((value + 1000) % 2000 * 2 % 4000);
+      }
+    });
+    writer.start();
+    for(int t = 0; t < 4; t++) {
+      int seed = t;
+      new Thread(() -> {
+        try {
+          for(int i = 0; i < 2000; i++) {
+            int probe = (i * 31 + seed) % 2000;
+            Integer ceiling = tree.ceiling(probe);
+            Integer floor = tree.floor(probe);
+            if((ceiling != null && (ceiling % 2 != 0 || ceiling < probe)) || (floor != null && (floor % 2 != 0 || floor > probe))) {
+              failure.set("lookup returned a value that was never in the tree");
+            }
+            int previous = -1;
+            for(Iterator<Integer> it = tree.iterator(probe, probe + 300); it.hasNext();) {
+              int value = it.next();
+              if(value % 2 != 0 || value < previous) {
+                failure.set("iterator returned a wrong value");
+              }
+              previous = value;
+            }
+          }
+        }catch(RuntimeException e) {
+          failure.set("reader failed with " + e);
+        }finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+    writer.join();
+    if(failure.get() != null) {
+      Assertions.fail(failure.get());
+    }
+    if(tree.size() != 1000 || tree.tree.blackHeight((RBTNode<Integer>)tree.tree.root) < 0) {
+      Assertions.fail("tree is not valid after concurrent use");
+    }
+  }
+
+}
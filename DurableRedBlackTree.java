@@ -0,0 +1,916 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class makes the changes to a RedBlackTree survive a crash. Every insert, remove and
+ * clear is appended to a write-ahead log in a directory and forced to disk before the call
+ * returns. Writers that arrive while another writer is forcing the log wait for it and are
+ * then written and forced together in one batch (group commit), so many threads pay for far
+ * fewer force() calls than they make changes.
+ *
+ * To keep the log from growing forever a snapshot of the tree is written in the format of
+ * TreeFormat, periodically in the background and whenever snapshot() is called. Taking a
+ * snapshot starts a new log file, copies the tree while writers are held off, then writes the
+ * copy without holding anything up, renames it over the previous snapshot and deletes the
+ * log files it covers. Opening the directory loads the snapshot and replays the log files
+ * after it. A record torn by a crash can only be at the end of the newest log, where it is
+ * cut off, since it belongs to a call that never returned.
+ *
+ * The directory holds
+ *
+ *   snapshot: generation of the first log not in it (8 bytes), then the tree in TreeFormat
+ *   log.N: records of length (4 bytes), CRC32 of the payload (4 bytes) and the payload, an
+ *   operation byte followed by the key written with no previous key
+ */
+public class DurableRedBlackTree<T extends Comparable<T>> implements SortedCollection<T>, AutoCloseable {
+
+  private static final String SNAPSHOT = "snapshot";
+  private static final String SNAPSHOT_TEMP = "snapshot.tmp";
+  private static final String LOG_PREFIX = "log.";
+  // operation bytes of log records
+  private static final byte INSERT = 1;
+  private static final byte REMOVE = 2;
+  private static final byte CLEAR = 3;
+  private static final int RECORD_HEADER = 8;
+  // a longer record can only be garbage
+  private static final int MAX_RECORD = 1 << 24;
+  // points in snapshot() where tests can make it fail as if the program stopped there
+  static final int CRASH_BEFORE_RENAME = 1;
+  static final int CRASH_BEFORE_DELETE = 2;
+
+  private Path directory;
+  // tree holding the values, only used while holding the lock of this object
+  private RedBlackTree<T> tree;
+  private KeyCodec<T> codec;
+  // log being appended to and its generation
+  private FileChannel log;
+  private long generation;
+  // records appended to the tree but not yet written to the log
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  // number of records appended, and of those forced to the log
+  private long appended = 0;
+  private volatile long durable = 0;
+  // number of records appended when the last snapshot was taken
+  private long snapshotted = 0;
+  // error that stopped the log, after which the tree takes no more changes
+  private IOException failure = null;
+  // set once close() or halt() starts, after which the tree takes no more changes
+  private boolean closed = false;
+  private ScheduledExecutorService snapshots = null;
+  // held while writing the log, taken before the lock of this object
+  private final Object flushLock = new Object();
+  // held while taking a snapshot, taken before flushLock
+  private final Object snapshotLock = new Object();
+  // crash point tests make snapshot() fail at, and number of times the log was forced
+  int crashPoint = 0;
+  long forces = 0;
+
+  DurableRedBlackTree() {}
+
+  /**
+   * Opens the tree stored in a directory, creating the directory if it doesn't exist. The
+   * contents of tree are replaced with the snapshot in the directory and every logged change
+   * after it. From then on tree must only be changed through the returned object.
+   * @param directory - directory holding the snapshot and the log
+   * @param tree - empty tree to recover into, its comparator and multiset mode are kept
+   * @param codec - writes and reads the keys, must be the same every time the directory is opened
+   * @param snapshotMillis - milliseconds between background snapshots, or 0 for none
+   * @return the recovered tree
+   * @throws IOException if the directory can't be read or holds a damaged snapshot or log
+   */
+  public static <T extends Comparable<T>> DurableRedBlackTree<T> open(Path directory, RedBlackTree<T> tree, KeyCodec<T> codec,
+                                                                    long snapshotMillis) throws IOException {
+    DurableRedBlackTree<T> durable = new DurableRedBlackTree<T>();
+    durable.directory = directory;
+    durable.tree = tree;
+    durable.codec = codec;
+    durable.recover();
+    if(snapshotMillis > 0) {
+      durable.snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "RedBlackTree snapshots " + directory);
+        thread.setDaemon(true);
+        return thread;
+      });
+      durable.snapshots.scheduleWithFixedDelay(durable::backgroundSnapshot, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+    }
+    return durable;
+  }
+
+  /**
+   * Opens the tree stored in a directory into a new RedBlackTree, taking a snapshot every minute.
+   */
+  public static <T extends Comparable<T>> DurableRedBlackTree<T> open(Path directory, KeyCodec<T> codec) throws IOException {
+    return open(directory, new RedBlackTree<T>(), codec, 60000);
+  }
+
+  //----- recovery -----
+
+  /**
+   * Loads the snapshot, replays the logs after it and opens the newest log for appending.
+   */
+  private void recover() throws IOException {
+    Files.createDirectories(directory);
+    Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP));
+    //a snapshot that was never renamed is incomplete
+    long covered = 0;
+    Path snapshot = directory.resolve(SNAPSHOT);
+    if(Files.exists(snapshot)) {
+      try(InputStream in = Files.newInputStream(snapshot)) {
+        covered = new DataInputStream(in).readLong();
+        tree.readFrom(in, codec);
+      }
+    }else {
+      tree.clear();
+    }
+    TreeMap<Long, Path> logs = new TreeMap<Long, Path>();
+    try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*")) {
+      for(Path file: files) {
+        try {
+          logs.put(Long.parseLong(file.getFileName().toString().substring(LOG_PREFIX.length())), file);
+        }catch(NumberFormatException e) {
+          //not one of ours
+        }
+      }
+    }
+    long size = 0;
+    boolean replayed = false;
+    generation = covered;
+    for(Long logGeneration: logs.keySet()) {
+      Path file = logs.get(logGeneration);
+      if(logGeneration < covered) {
+        Files.delete(file);
+        continue;
+        //a snapshot was renamed before its logs were deleted
+      }
+      size = replay(file);
+      replayed |= size > 0;
+      if(size < Files.size(file) && !logGeneration.equals(logs.lastKey())) {
+        throw new IOException(file + " is damaged before the newest log");
+      }
+      generation = logGeneration;
+    }
+    snapshotted = replayed ? -1 : 0;
+    //the logs replayed are not in the snapshot yet
+    log = openLog(generation);
+    log.truncate(size);
+    log.position(size);
+    //cut off a record torn by a crash so new records follow the last whole one
+    log.force(true);
+  }
+
+  /**
+   * Applies the records of one log to the tree.
+   * @return length of the log up to the end of its last whole record
+   */
+  private long replay(Path file) throws IOException {
+    byte[] bytes = Files.readAllBytes(file);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while(buffer.remaining() >= RECORD_HEADER) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if(length < 1 || length > MAX_RECORD || length > buffer.remaining()
+         || checksum != checksum(bytes, buffer.position(), length)) {
+        return start;
+      }
+      DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes, buffer.position(), length));
+      byte operation = payload.readByte();
+      if(operation == CLEAR) {
+        tree.clear();
+      }else if(operation == INSERT || operation == REMOVE) {
+        T key = codec.read(payload, null);
+        if(operation == INSERT) {
+          tree.insert(key);
+        }else {
+          tree.remove(key);
+        }
+      }else {
+        throw new IOException(file + " has a record with unknown operation " + operation);
+      }
+      buffer.position(buffer.position() + length);
+    }
+    return buffer.position();
+  }
+
+  private static int checksum(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int)crc.getValue();
+  }
+
+  /**
+   * Opens a log for appending, creating it and making its directory entry durable if needed.
+   */
+  private FileChannel openLog(long logGeneration) throws IOException {
+    Path file = directory.resolve(LOG_PREFIX + logGeneration);
+    boolean created = !Files.exists(file);
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    channel.position(channel.size());
+    if(created) {
+      syncDirectory();
+    }
+    return channel;
+  }
+
+  /**
+   * Forces the entries of the directory, so created and renamed files survive a crash.
+   */
+  private void syncDirectory() {
+    try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    }catch(IOException e) {
+      //not every platform can open a directory, there the rename is as durable as it gets
+    }
+  }
+
+  //----- changes -----
+
+  /**
+   * inserts a new value, which is durable once this returns
+   * @param data - value to insert
+   * @throws NullPointerException if data is null
+   * @throws UncheckedIOException if the log can't be written
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if(data == null) {
+      throw new NullPointerException("data is null");
+    }
+    long sequence;
+    synchronized(this) {
+      checkOpen();
+      byte[] record = record(INSERT, data);
+      tree.insert(data);
+      sequence = append(record);
+    }
+    awaitDurable(sequence);
+  }
+
+  /**
+   * inserts every value of a collection, all of which are durable once this returns. The
+   * records are written and forced to the log together.
+   * @param values - values to insert, in any order
+   * @throws NullPointerException if values or any value in it is null
+   * @throws UncheckedIOException if the log can't be written
+   */
+  public void insertAll(Collection<? extends T> values) {
+    List<byte[]> records = new ArrayList<byte[]>(values.size());
+    long sequence;
+    synchronized(this) {
+      checkOpen();
+      for(T data: values) {
+        if(data == null) {
+          throw new NullPointerException("data is null");
+        }
+        records.add(record(INSERT, data));
+      }
+      tree.insertAll(values);
+      sequence = appended;
+      for(byte[] record: records) {
+        sequence = append(record);
+      }
+    }
+    awaitDurable(sequence);
+  }
+
+  /**
+   * removes one occurrence of a value, which is durable once this returns
+   * @param data - value to remove
+   * @return true if a value equal to data was removed, false if there was none
+   * @throws UncheckedIOException if the log can't be written
+   */
+  @Override
+  public boolean remove(Comparable<T> data) {
+    if(data == null) {
+      return false;
+    }
+    long sequence;
+    synchronized(this) {
+      checkOpen();
+      T found = tree.ceiling(data);
+      if(found == null || tree.compare(data, found) != 0) {
+        return false;
+      }
+      //log the value from the tree, since data may not be a T the codec can write
+      byte[] record = record(REMOVE, found);
+      tree.remove(found);
+      sequence = append(record);
+    }
+    awaitDurable(sequence);
+    return true;
+  }
+
+  /**
+   * removes every value, which is durable once this returns
+   * @throws UncheckedIOException if the log can't be written
+   */
+  @Override
+  public void clear() {
+    long sequence;
+    synchronized(this) {
+      checkOpen();
+      tree.clear();
+      sequence = append(new byte[] {CLEAR});
+    }
+    awaitDurable(sequence);
+  }
+
+  /**
+   * Encodes the payload of a log record.
+   */
+  private byte[] record(byte operation, T data) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeByte(operation);
+      codec.write(out, null, data);
+    }catch(IOException e) {
+      throw new UncheckedIOException(e);
+      //a byte array doesn't fail, only the codec can
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Adds a record to the records waiting to be written, must hold the lock of this object.
+   * @return sequence number of the record
+   */
+  private long append(byte[] payload) {
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+    header.putInt(payload.length);
+    header.putInt(checksum(payload, 0, payload.length));
+    pending.write(header.array(), 0, RECORD_HEADER);
+    pending.write(payload, 0, payload.length);
+    return ++appended;
+  }
+
+  /**
+   * Waits until the record with a sequence number is forced to the log. The first waiter to
+   * get flushLock writes every pending record, including those appended by writers still
+   * waiting behind it, so they find their records durable and return without forcing.
+   */
+  private void awaitDurable(long sequence) {
+    if(durable >= sequence) {
+      return;
+    }
+    synchronized(flushLock) {
+      if(durable >= sequence) {
+        return;
+        //another writer forced this record while we waited
+      }
+      try {
+        flush();
+      }catch(IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Writes and forces every pending record, must hold flushLock.
+   */
+  private void flush() throws IOException {
+    byte[] batch;
+    long last;
+    FileChannel channel;
+    synchronized(this) {
+      if(failure != null) {
+        throw failure;
+      }
+      if(durable == appended) {
+        return;
+      }
+      batch = pending.toByteArray();
+      pending.reset();
+      last = appended;
+      channel = log;
+    }
+    write(channel, batch, last);
+  }
+
+  /**
+   * Writes and forces a batch of records, must hold flushLock.
+   * @param last - sequence number of the last record in the batch
+   */
+  private void write(FileChannel channel, byte[] batch, long last) throws IOException {
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(batch);
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+      forces++;
+    }catch(IOException e) {
+      synchronized(this) {
+        failure = e;
+        //the tree holds changes the log may not, reopening recovers what was forced
+      }
+      throw e;
+    }
+    durable = last;
+  }
+
+  /**
+   * @throws IllegalStateException if the tree is closed or its log failed
+   */
+  private void checkOpen() {
+    if(closed || log == null) {
+      throw new IllegalStateException("tree is closed");
+    }
+    if(failure != null) {
+      throw new IllegalStateException("log failed, reopen the directory to recover", failure);
+    }
+  }
+
+  //----- reads -----
+
+  @Override
+  public synchronized boolean contains(Comparable<T> data) {
+    return tree.contains(data);
+  }
+
+  @Override
+  public synchronized int size() {
+    return tree.size();
+  }
+
+  @Override
+  public synchronized boolean isEmpty() {
+    return tree.isEmpty();
+  }
+
+  //----- snapshots -----
+
+  /**
+   * Writes a snapshot of the tree and deletes the logs it covers. Writers are only held off
+   * while the tree is copied, not while the copy is written. Does nothing if nothing changed
+   * since the last snapshot.
+   * @throws IOException if the snapshot can't be written, in which case the logs are kept
+   */
+  public void snapshot() throws IOException {
+    synchronized(snapshotLock) {
+      RedBlackTree<T> copy;
+      long covered;
+      long records;
+      synchronized(flushLock) {
+        flush();
+        //every record of the old log is durable before it stops being written
+        synchronized(this) {
+          checkOpen();
+          if(appended == snapshotted && Files.exists(directory.resolve(SNAPSHOT))) {
+            return;
+          }
+          if(durable != appended) {
+            byte[] batch = pending.toByteArray();
+            pending.reset();
+            write(log, batch, appended);
+            //writers that got in after flush() have their changes in the copy, so their
+            //records must go to the old log and not the one the snapshot says comes after it
+          }
+          covered = generation + 1;
+          FileChannel next = openLog(covered);
+          log.close();
+          log = next;
+          generation = covered;
+          records = appended;
+          copy = copyTree();
+        }
+      }
+      Path temp = directory.resolve(SNAPSHOT_TEMP);
+      try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+        OutputStream out = Channels.newOutputStream(channel);
+        new DataOutputStream(out).writeLong(covered);
+        TreeFormat.write(copy, codec, out, false);
+        channel.force(true);
+      }
+      crash(CRASH_BEFORE_RENAME);
+      Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      syncDirectory();
+      crash(CRASH_BEFORE_DELETE);
+      try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*")) {
+        for(Path file: files) {
+          String name = file.getFileName().toString();
+          try {
+            if(Long.parseLong(name.substring(LOG_PREFIX.length())) < covered) {
+              Files.delete(file);
+            }
+          }catch(NumberFormatException e) {
+            //not one of ours
+          }
+        }
+      }
+      synchronized(this) {
+        snapshotted = records;
+      }
+    }
+  }
+
+  /**
+   * Copies the values and counts of the tree into a new balanced tree in O(n) time, must hold
+   * the lock of this object.
+   */
+  private RedBlackTree<T> copyTree() {
+    RedBlackTree<T> copy = new RedBlackTree<T>();
+    copy.multiset = tree.multiset;
+    copy.comparator = tree.comparator;
+    RedBlackTree.NodeList<T> list = new RedBlackTree.NodeList<T>();
+    RBTNode<T> tail = null;
+    int nodes = 0;
+    for(BinaryTreeNode<T> node = tree.root == null ? null : tree.minNode(tree.root); node != null; node = tree.successor(node)) {
+      RBTNode<T> copied = new RBTNode<T>(node.data);
+      copied.count = node.count;
+      if(tail == null) {
+        list.head = copied;
+      }else {
+        tail.right = copied;
+      }
+      tail = copied;
+      nodes++;
+    }
+    copy.linkSorted(list, nodes);
+    return copy;
+  }
+
+  private void backgroundSnapshot() {
+    try {
+      snapshot();
+    }catch(IOException | RuntimeException e) {
+      //keep the logs and try again next time, recovery only needs the logs
+    }
+  }
+
+  /**
+   * Makes snapshot() fail at a crash point chosen by a test.
+   */
+  private void crash(int point) throws IOException {
+    if(crashPoint == point) {
+      throw new IOException("injected crash");
+    }
+  }
+
+  //----- closing -----
+
+  /**
+   * Stops the background snapshots, forces any pending records and closes the log.
+   * @throws IOException if the pending records can't be written
+   */
+  @Override
+  public void close() throws IOException {
+    if(snapshots != null) {
+      snapshots.shutdown();
+      snapshots = null;
+      //a snapshot already running finishes, interrupting it would close the log
+    }
+    synchronized(snapshotLock) {
+      synchronized(flushLock) {
+        synchronized(this) {
+          closed = true;
+          //writers that come after this are rejected, so flush() writes every last record
+        }
+        try {
+          if(log != null) {
+            flush();
+          }
+        }finally {
+          halt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the log without writing pending records, as if the program stopped.
+   */
+  synchronized void halt() throws IOException {
+    closed = true;
+    if(snapshots != null) {
+      snapshots.shutdown();
+      snapshots = null;
+    }
+    if(log != null) {
+      log.close();
+      log = null;
+    }
+  }
+
+  //----- tests -----
+
+  private static Path tempDirectory() throws IOException {
+    return Files.createTempDirectory("rbt-durable");
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for(Path file: files) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private static int countLogs(Path directory) throws IOException {
+    int logs = 0;
+    try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*")) {
+      for(Path file: files) {
+        logs++;
+      }
+    }
+    return logs;
+  }
+
+  private String values() {
+    String values = "";
+    synchronized(this) {
+      for(BinaryTreeNode<T> node = tree.root == null ? null : tree.minNode(tree.root); node != null; node = tree.successor(node)) {
+        values += node.data + "x" + node.count + " ";
+      }
+    }
+    return values;
+  }
+
+  /**
+   * tests that changes from many threads survive a crash, and that background snapshots
+   * delete the logs they cover
+   */
+  @Test
+  public void testRecovery() throws IOException, InterruptedException {
+    Path directory = tempDirectory();
+    DurableRedBlackTree<Integer> tree = open(directory, RedBlackTree.multiset(), KeyCodec.INTEGER, 0);
+    AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    CountDownLatch done = new CountDownLatch(8);
+    for(int t = 0; t < 8; t++) {
+      int offset = t;
+      new Thread(() -> {
+        try {
+          for(int i = 0; i < 200; i++) {
+            tree.insert((i * 8 + offset) % 500);
+            if(i % 4 == 0) {
+              tree.remove((i * 8 + offset) % 500);
+            }
+          }
+        }catch(Throwable e) {
+          error.set(e);
+        }finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+    if(error.get() != null) {
+      Assertions.fail("writer failed with " + error.get());
+    }
+    if(tree.size() != 1200) {
+      Assertions.fail("writes were lost");
+    }
+    tree.snapshot();
+    long forces = tree.forces;
+    tree.insertAll(java.util.Arrays.asList(7, 7, 1000, -5));
+    if(tree.forces != forces + 1) {
+      Assertions.fail("a batch was not forced to the log once");
+    }
+    tree.remove(3);
+    String expected = tree.values();
+    tree.halt();
+    //crash without closing
+    DurableRedBlackTree<Integer> recovered = open(directory, RedBlackTree.multiset(), KeyCodec.INTEGER, 10);
+    if(!recovered.values().equals(expected) || recovered.size() != 1203) {
+      Assertions.fail("recovered tree is not the tree before the crash");
+    }
+    recovered.insert(2000);
+    for(int wait = 0; wait < 500 && countLogs(directory) > 1; wait++) {
+      Thread.sleep(10);
+    }
+    recovered.close();
+    if(countLogs(directory) != 1) {
+      Assertions.fail("background snapshot did not delete the logs it covers");
+    }
+    DurableRedBlackTree<Integer> reopened = open(directory, RedBlackTree.multiset(), KeyCodec.INTEGER, 0);
+    if(reopened.size() != 1204 || !reopened.contains(2000)) {
+      Assertions.fail("reopened tree does not hold every change");
+    }
+    reopened.close();
+    delete(directory);
+  }
+
+  /**
+   * tests that writers waiting behind a force share the next one: every writer appends its
+   * record while flushLock is held, so the first to get the lock forces all of them
+   */
+  @Test
+  public void testGroupCommit() throws IOException, InterruptedException {
+    Path directory = tempDirectory();
+    DurableRedBlackTree<Integer> tree = open(directory, new RedBlackTree<Integer>(), KeyCodec.INTEGER, 0);
+    tree.insert(-1);
+    long forces = tree.forces;
+    long appended;
+    synchronized(tree) {
+      appended = tree.appended;
+    }
+    List<Thread> writers = new ArrayList<Thread>();
+    synchronized(tree.flushLock) {
+      for(int t = 0; t < 8; t++) {
+        int value = t;
+        Thread writer = new Thread(() -> tree.insert(value));
+        writer.start();
+        writers.add(writer);
+      }
+      while(true) {
+        synchronized(tree) {
+          if(tree.appended == appended + 8) {
+            break;
+          }
+        }
+        Thread.sleep(1);
+        //wait until every writer is parked behind flushLock with its record appended
+      }
+    }
+    for(Thread writer: writers) {
+      writer.join();
+    }
+    if(tree.size() != 9 || tree.forces != forces + 1) {
+      Assertions.fail("8 waiting writers were forced " + (tree.forces - forces) + " times instead of once");
+    }
+    tree.close();
+    delete(directory);
+  }
+
+  /**
+   * tests that a log cut off or followed by garbage at any point recovers exactly the whole
+   * records before the damage, and that new records can follow them
+   */
+  @Test
+  public void testTornLog() throws IOException {
+    Path directory = tempDirectory();
+    DurableRedBlackTree<String> tree = open(directory, new RedBlackTree<String>(), KeyCodec.STRING, 0);
+    List<String> states = new ArrayList<String>();
+    List<Long> ends = new ArrayList<Long>();
+    List<Integer> sizes = new ArrayList<Integer>();
+    states.add(tree.values());
+    ends.add(0L);
+    sizes.add(0);
+    Random random = new Random(25);
+    for(int i = 0; i < 60; i++) {
+      String key = "key" + random.nextInt(20);
+      if(i % 3 == 2) {
+        if(!tree.remove(key)) {
+          continue;
+        }
+      }else if(i == 40) {
+        tree.clear();
+      }else {
+        tree.insert(key);
+      }
+      states.add(tree.values());
+      ends.add(tree.log.size());
+      sizes.add(tree.size());
+    }
+    tree.halt();
+    Path log = directory.resolve(LOG_PREFIX + 0);
+    byte[] bytes = Files.readAllBytes(log);
+    for(int cut = 0; cut <= bytes.length; cut++) {
+      for(boolean garbage: new boolean[] {false, true}) {
+        byte[] damaged = java.util.Arrays.copyOf(java.util.Arrays.copyOf(bytes, cut), cut + (garbage ? 12 : 0));
+        if(garbage) {
+          damaged[cut] = 1;
+          //a plausible but too long length
+        }
+        Files.write(log, damaged);
+        int whole = 0;
+        while(whole + 1 < ends.size() && ends.get(whole + 1) <= cut) {
+          whole++;
+        }
+        DurableRedBlackTree<String> recovered = open(directory, new RedBlackTree<String>(), KeyCodec.STRING, 0);
+        if(!recovered.values().equals(states.get(whole))) {
+          Assertions.fail("log cut at " + cut + " did not recover the records before it");
+        }
+        recovered.insert("after");
+        recovered.close();
+        recovered = open(directory, new RedBlackTree<String>(), KeyCodec.STRING, 0);
+        if(!recovered.contains("after") || recovered.size() != sizes.get(whole) + 1) {
+          Assertions.fail("records after a cut off record are lost");
+        }
+        recovered.halt();
+      }
+    }
+    delete(directory);
+  }
+
+  /**
+   * tests that a crash at any point of a snapshot loses nothing
+   */
+  @Test
+  public void testCrashDuringSnapshot() throws IOException {
+    for(int point: new int[] {CRASH_BEFORE_RENAME, CRASH_BEFORE_DELETE}) {
+      Path directory = tempDirectory();
+      DurableRedBlackTree<Long> tree = open(directory, new RedBlackTree<Long>(), KeyCodec.LONG, 0);
+      for(long i = 0; i < 100; i++) {
+        tree.insert(i * 1000000007L);
+      }
+      tree.snapshot();
+      tree.remove(0L);
+      tree.insert(Long.MIN_VALUE);
+      tree.crashPoint = point;
+      try {
+        tree.snapshot();
+        Assertions.fail("injected crash did not happen");
+      }catch(IOException e) {
+        //expected
+      }
+      tree.insert(Long.MAX_VALUE);
+      String expected = tree.values();
+      tree.halt();
+      DurableRedBlackTree<Long> recovered = open(directory, new RedBlackTree<Long>(), KeyCodec.LONG, 0);
+      if(!recovered.values().equals(expected) || recovered.size() != 101) {
+        Assertions.fail("crash at point " + point + " of a snapshot lost changes");
+      }
+      recovered.snapshot();
+      if(countLogs(directory) != 1) {
+        Assertions.fail("snapshot after recovery did not delete the old logs");
+      }
+      recovered.close();
+      delete(directory);
+    }
+  }
+
+  /**
+   * tests writers running alongside snapshots: a change must end up either in a snapshot or in
+   * a log after it, never in both
+   */
+  @Test
+  public void testConcurrentSnapshots() throws IOException, InterruptedException {
+    for(int round = 0; round < 5; round++) {
+      Path directory = tempDirectory();
+      DurableRedBlackTree<Integer> tree = open(directory, RedBlackTree.multiset(), KeyCodec.INTEGER, 0);
+      AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      AtomicInteger inserted = new AtomicInteger();
+      CountDownLatch done = new CountDownLatch(8);
+      for(int t = 0; t < 8; t++) {
+        int offset = t;
+        new Thread(() -> {
+          try {
+            for(int i = 0; i < 300; i++) {
+              tree.insert((i * 8 + offset) % 100);
+              inserted.incrementAndGet();
+            }
+          }catch(Throwable e) {
+            error.set(e);
+          }finally {
+            done.countDown();
+          }
+        }).start();
+      }
+      while(inserted.get() < 1800) {
+        tree.snapshot();
+        //stop early so the last snapshot was taken while writers were running
+      }
+      done.await();
+      if(error.get() != null) {
+        Assertions.fail("writer failed with " + error.get());
+      }
+      String expected = tree.values();
+      tree.halt();
+      DurableRedBlackTree<Integer> recovered = open(directory, RedBlackTree.multiset(), KeyCodec.INTEGER, 0);
+      if(recovered.size() != 2400 || !recovered.values().equals(expected)) {
+        Assertions.fail("recovered " + recovered.size() + " values instead of 2400");
+      }
+      recovered.close();
+      try {
+        recovered.insert(1);
+        Assertions.fail("closed tree took a change");
+      }catch(IllegalStateException e) {
+        //expected
+      }
+      delete(directory);
+    }
+  }
+
+}
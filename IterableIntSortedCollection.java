@@ -0,0 +1,61 @@
+import java.util.PrimitiveIterator;
+
+/**
+ * This interface defines an ADT for data structures that store a collection of int
+ * values in ascending order and that are iterable, like IterableSortedCollection but
+ * without boxing the values.
+ */
+public interface IterableIntSortedCollection extends Iterable<Integer> {
+
+    /**
+     * Inserts a new value into the sorted collection.
+     * @param data the new value being inserted
+     */
+    public void insert(int data);
+
+    /**
+     * Check whether data is stored in the collection.
+     * @param data the value to check for in the collection
+     * @return true if the collection contains data one or more times,
+     * and false otherwise
+     */
+    public boolean contains(int data);
+
+    /**
+     * Removes one occurrence of data from the collection.
+     * @param data the value to remove from the collection
+     * @return true if data was found and removed, and false otherwise
+     */
+    public boolean remove(int data);
+
+    /**
+     * Counts the number of values in the collection, with each duplicate value
+     * being counted separately within the value returned.
+     * @return the number of values in the collection, including duplicates
+     */
+    public int size();
+
+    /**
+     * Checks if the collection is empty.
+     * @return true if the collection contains 0 values, false otherwise
+     */
+    public boolean isEmpty();
+
+    /**
+     * Removes all values and duplicates from the collection.
+     */
+    public void clear();
+
+    public void setIteratorMin(int min);
+    public void setIteratorMax(int max);
+    public void clearIteratorMin();
+    public void clearIteratorMax();
+
+    /**
+     * Returns an iterator over the values between the iterator min and max, in
+     * ascending order. Its nextInt method returns values without boxing them.
+     */
+    @Override
+    public PrimitiveIterator.OfInt iterator();
+
+}
@@ -1,6 +1,13 @@
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.NavigableSet;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
 
@@ -41,23 +48,266 @@ public class IterableRedBlackTree<T extends Comparable<T>>
      * value and finishes with the highest value that exists in the tree.
      */
     public Iterator<T> iterator() { 
-      return new RBTIterator<T>(super.root, min, max);
-      //create a new iterator pass it current tree root and min max fields
+      return iterator(min, true, max, true);
+      //create a new iterator with the current min and max fields
+    }
+
+    /**
+     * Returns a spliterator over the same values as iterator(), using the iterator min and max
+     * set when this method is called. It knows the exact number of values in its range from the
+     * subtree sizes, and splits its range in half at the node of the middle position, so parallel
+     * streams get balanced parts without copying values into arrays. The tree must not be changed
+     * while the spliterator is in use.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+      int from = min == null ? 0 : rank(min);
+      int to = max == null ? size() : rankInclusive(max);
+      RBTSpliterator spliterator = new RBTSpliterator(null, 0, Math.min(from, to), to);
+      spliterator.seek(spliterator.from);
+      //an empty range when min is above max
+      return spliterator;
+    }
+
+    /**
+     * Spliterator over the values at the positions from (inclusive) to to (exclusive) of the
+     * tree's sorted order.
+     */
+    private class RBTSpliterator implements Spliterator<T> {
+
+      // node holding the value at position from, or null when done
+      private BinaryTreeNode<T> next;
+      // number of copies of next's value before position from
+      private int offset;
+      // position of the next value and the position after the last value to return
+      private int from;
+      private final int to;
+
+      private RBTSpliterator(BinaryTreeNode<T> next, int offset, int from, int to) {
+        this.next = next;
+        this.offset = offset;
+        this.from = from;
+        this.to = to;
+      }
+
+      /**
+       * Moves next and offset to the value at position index, if it is in range.
+       */
+      private void seek(int index) {
+        next = null;
+        offset = 0;
+        if(index >= to) {
+          return;
+        }
+        BinaryTreeNode<T> curr = root;
+        while(true) {
+          int leftSize = sizeOf(curr.left);
+          if(index < leftSize) {
+            curr = curr.left;
+          }else if(index < leftSize + curr.count) {
+            next = curr;
+            offset = index - leftSize;
+            return;
+          }else {
+            index -= leftSize + curr.count;
+            curr = curr.right;
+          }
+        }
+      }
+
+      /**
+       * Moves past one copy of next's value, going to the next node after its last copy.
+       */
+      private void advance() {
+        from++;
+        if(++offset == next.count) {
+          next = successor(next);
+          offset = 0;
+        }
+      }
+
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        if(from >= to) {
+          return false;
+        }
+        T value = next.getData();
+        advance();
+        action.accept(value);
+        return true;
+      }
+
+      @Override
+      public void forEachRemaining(Consumer<? super T> action) {
+        while(from < to) {
+          T value = next.getData();
+          advance();
+          action.accept(value);
+        }
+      }
+
+      @Override
+      public Spliterator<T> trySplit() {
+        if(to - from < 2) {
+          return null;
+        }
+        int middle = (from + to) >>> 1;
+        RBTSpliterator prefix = new RBTSpliterator(next, offset, from, middle);
+        //the prefix starts where this spliterator is, no need to search for it
+        from = middle;
+        seek(middle);
+        //this spliterator keeps the upper half
+        return prefix;
+      }
+
+      @Override
+      public long estimateSize() {
+        return to - from;
+      }
+
+      @Override
+      public int characteristics() {
+        return SIZED | SUBSIZED | SORTED | ORDERED | NONNULL;
+      }
+
+      @Override
+      public Comparator<? super T> getComparator() {
+        return comparator;
+        //null when values are in natural order
+      }
+    }
+
+    /**
+     * Creates an empty iterable tree, so trees split off this tree can be iterated too.
+     */
+    @Override
+    protected RedBlackTree<T> emptyTree() {
+      return new IterableRedBlackTree<T>();
+    }
+
+    /**
+     * Returns an iterator over the values between min and max in ascending order. The bounds
+     * are kept by the iterator, so concurrent read only scans with different bounds don't
+     * interfere with each other.
+     * @param min the minimum value, or null if there is no minimum
+     * @param minInclusive whether a value equal to min is returned
+     * @param max the maximum value, or null if there is no maximum
+     * @param maxInclusive whether a value equal to max is returned
+     */
+    @Override
+    public Iterator<T> iterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+      RBTIterator<T> iterator = new RBTIterator<T>(super.root, comparator, min, minInclusive, max, maxInclusive, false);
+      iterator.remover = this::removeOne;
+      return iterator;
+    }
+
+    /**
+     * Returns an iterator over the values between min and max in descending order, with bounds
+     * kept by the iterator.
+     * @param min the minimum value, or null if there is no minimum
+     * @param minInclusive whether a value equal to min is returned
+     * @param max the maximum value, or null if there is no maximum
+     * @param maxInclusive whether a value equal to max is returned
+     */
+    @Override
+    public Iterator<T> descendingIterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+      RBTIterator<T> iterator = new RBTIterator<T>(super.root, comparator, min, minInclusive, max, maxInclusive, true);
+      iterator.remover = this::removeOne;
+      return iterator;
+    }
+
+    /**
+     * Returns a live NavigableSet view of every value in this tree. Changes to the tree show up
+     * in the view and changes through the view change the tree, see RedBlackTreeNavigableSet.
+     */
+    public NavigableSet<T> navigableSet() {
+      return new RedBlackTreeNavigableSet<T>(this, null, true, null, true, false);
+    }
+
+    /**
+     * Creates an empty iterable tree that orders its values with the provided comparator,
+     * including the bounds of its iterators and views.
+     * @param comparator orders the values of the tree
+     * @return a new empty tree using the comparator
+     * @throws NullPointerException if comparator is null
+     */
+    public static <T extends Comparable<T>> IterableRedBlackTree<T> withComparator(Comparator<? super T> comparator) {
+      IterableRedBlackTree<T> tree = new IterableRedBlackTree<T>();
+      tree.comparator = Objects.requireNonNull(comparator, "comparator is null");
+      return tree;
+    }
+
+    /**
+     * Creates an empty iterable tree in multiset mode, where equal values share one node that
+     * counts its copies. Iterators return each copy separately, so the values they return are
+     * the same as for a normal tree.
+     * @return a new empty multiset tree
+     */
+    public static <T extends Comparable<T>> IterableRedBlackTree<T> multiset() {
+      IterableRedBlackTree<T> tree = new IterableRedBlackTree<T>();
+      tree.multiset = true;
+      return tree;
+    }
+
+    /**
+     * Creates an iterable red black tree holding the provided values in O(n) time, without
+     * any rotations.
+     * @param values values in ascending order, duplicates are allowed
+     * @return a new balanced tree holding the values
+     * @throws NullPointerException if any value is null
+     * @throws IllegalArgumentException if the values are not in ascending order
+     */
+    public static <T extends Comparable<T>> IterableRedBlackTree<T> fromSorted(Iterator<? extends T> values) {
+      IterableRedBlackTree<T> tree = new IterableRedBlackTree<T>();
+      tree.loadSorted(values);
+      return tree;
+    }
+
+    /**
+     * Creates an iterable red black tree holding the values of a sorted array in O(n) time.
+     * @param values values in ascending order, duplicates are allowed
+     * @return a new balanced tree holding the values
+     */
+    public static <T extends Comparable<T>> IterableRedBlackTree<T> fromSorted(T[] values) {
+      return fromSorted(Arrays.asList(values).iterator());
+    }
+
+    /**
+     * Creates an iterable red black tree holding the values of a sorted stream in O(n) time.
+     * @param values values in ascending order, duplicates are allowed
+     * @return a new balanced tree holding the values
+     */
+    public static <T extends Comparable<T>> IterableRedBlackTree<T> fromSorted(Stream<? extends T> values) {
+      return fromSorted(values.iterator());
     }
 
     /**
      * Nested class for Iterator objects created for this tree and returned by the iterator method.
      * This iterator follows an in-order traversal of the tree and returns the values in sorted,
-     * ascending order.
+     * ascending order, or in descending order when created as a descending iterator. It moves
+     * from node to node through parent references instead of keeping a stack, so creating one
+     * only allocates the iterator itself.
      */
     protected static class RBTIterator<R> implements Iterator<R> {
 
-         // stores the start point (minimum) for the iterator
+         // stores the start point (minimum) for the iterator and whether it is returned
          Comparable<R> min = null;
-         // stores the stop point (maximum) for the iterator
+         boolean minInclusive = true;
+         // stores the stop point (maximum) for the iterator and whether it is returned
          Comparable<R> max = null;
-         // stores the stack that keeps track of the inorder traversal
-         Stack<BinaryTreeNode<R>> stack = null;
+         boolean maxInclusive = true;
+         // stores whether the iterator returns values from largest to smallest
+         boolean descending = false;
+         // stores the next node to return, or null when there are no more nodes
+         BinaryTreeNode<R> next = null;
+         // stores how many copies of next's value are left to return
+         int copies = 0;
+         // stores the node returned last, which remove deletes, or null if there is none
+         BinaryTreeNode<R> last = null;
+         // deletes a node from the tree, or null if the iterator doesn't support remove
+         Consumer<BinaryTreeNode<R>> remover = null;
+         // orders the values of the tree, or null for their natural order
+         Comparator<? super R> comparator = null;
 
         /**
          * Constructor for a new iterator if the tree with root as its root node, and
@@ -68,58 +318,154 @@ public class IterableRedBlackTree<T extends Comparable<T>>
          * @param max the maximum value that the iterator will return 
          */
         public RBTIterator(BinaryTreeNode<R> root, Comparable<R> min, Comparable<R> max) { 
+            this(root, null, min, true, max, true, false);
+        }
+
+        /**
+         * Constructor for a new iterator over the values of the tree with root as its root node
+         * that are between min and max.
+         * @param root root node of the tree to traverse
+         * @param comparator orders the values of the tree, or null for their natural order
+         * @param min the minimum value, or null if there is no minimum
+         * @param minInclusive whether a value equal to min is returned
+         * @param max the maximum value, or null if there is no maximum
+         * @param maxInclusive whether a value equal to max is returned
+         * @param descending whether values are returned from largest to smallest
+         */
+        public RBTIterator(BinaryTreeNode<R> root, Comparator<? super R> comparator, Comparable<R> min, boolean minInclusive,
+                           Comparable<R> max, boolean maxInclusive, boolean descending) { 
+            this.comparator = comparator;
             this.min = min;
+            this.minInclusive = minInclusive;
             this.max = max;
-            this.stack = new Stack<BinaryTreeNode<R>>();
-            buildStackHelper(root);
-            //initiate fields and use build stack method to fill the stack
+            this.maxInclusive = maxInclusive;
+            this.descending = descending;
+            this.next = descending ? seekLast(root) : seekFirst(root);
+            //find the first node to return in O(log n) time
+            this.copies = next == null ? 0 : next.count;
         }
 
         /**
-         * Helper method for initializing and updating the stack. This method both
-         * - finds the next data value stored in the tree (or subtree) that is 
-         * between start(minimum) and stop(maximum) point (including start and stop points themselves), and
-         * - builds up the stack of ancestor nodes that contain values between start(minimum) and stop(maximum) values 
-         * (including start and stop values themselves) so that those nodes can be visited in the future.
-         * @param node the root node of the subtree to process
+         * Finds the first node in sorted order that is not below the minimum.
+         * @param node the root node of the tree to search
+         * @return that node, or null if every value is below the minimum
          */
-        private void buildStackHelper(BinaryTreeNode<R> node) { 
-          if(node == null) {
-            //base case, if current node is null
-            return;
+        private BinaryTreeNode<R> seekFirst(BinaryTreeNode<R> node) { 
+          BinaryTreeNode<R> found = null;
+          while(node != null) {
+            if(min != null && !aboveMin(node)) {
+              //if node is below minimum go to right subtree of node
+              node = node.right;
+            }else {
+              //otherwise the node is a candidate, look for a smaller one
+              found = node;
+              node = node.left;
+            }
           }
-          if(min != null && min.compareTo(node.data) > 0 ) {
-            //if minimum is larger go to right subtree of node
-            buildStackHelper(node.right);
-          }else {
-            //if minimum is smaller or equal push node into stack and go to left subtree
-            stack.push(node);
-            buildStackHelper(node.left);
+          return found;
+        }
+
+        /**
+         * Finds the last node in sorted order that is not above the maximum.
+         * @param node the root node of the tree to search
+         * @return that node, or null if every value is above the maximum
+         */
+        private BinaryTreeNode<R> seekLast(BinaryTreeNode<R> node) { 
+          BinaryTreeNode<R> found = null;
+          while(node != null) {
+            if(max != null && !belowMax(node)) {
+              //if node is above maximum go to left subtree of node
+              node = node.left;
+            }else {
+              //otherwise the node is a candidate, look for a bigger one
+              found = node;
+              node = node.right;
+            }
+          }
+          return found;
+        }
+
+        /**
+         * @return true if the value of node is inside the range on the minimum side
+         */
+        private boolean aboveMin(BinaryTreeNode<R> node) {
+          int cmp = compare(min, node.getData());
+          return cmp < 0 || (minInclusive && cmp == 0);
+        }
+
+        /**
+         * @return true if the value of node is inside the range on the maximum side
+         */
+        private boolean belowMax(BinaryTreeNode<R> node) {
+          int cmp = compare(max, node.getData());
+          return cmp > 0 || (maxInclusive && cmp == 0);
+        }
+
+        /**
+         * Compares a bound to a value of the tree with the tree's comparator, or the natural
+         * order if the tree has none.
+         */
+        @SuppressWarnings("unchecked")
+        private int compare(Comparable<R> bound, R value) {
+          return comparator == null ? bound.compareTo(value) : comparator.compare((R)bound, value);
+        }
+
+        /**
+         * Finds the node that comes after node in sorted order.
+         * @param node the node the iterator just returned
+         * @return the next node in sorted order, or null if node is the last one
+         */
+        private static <R> BinaryTreeNode<R> successor(BinaryTreeNode<R> node) {
+          if(node.right != null) {
+            node = node.right;
+            while(node.left != null) {
+              node = node.left;
+            }
+            //next node is the smallest node of the right subtree
+            return node;
+          }
+          while(node.up != null && node.up.right == node) {
+            node = node.up;
+            //climb until coming up from a left subtree
+          }
+          return node.up;
+        }
+
+        /**
+         * Finds the node that comes before node in sorted order.
+         * @param node the node the iterator just returned
+         * @return the previous node in sorted order, or null if node is the first one
+         */
+        private static <R> BinaryTreeNode<R> predecessor(BinaryTreeNode<R> node) {
+          if(node.left != null) {
+            node = node.left;
+            while(node.right != null) {
+              node = node.right;
+            }
+            //previous node is the largest node of the left subtree
+            return node;
           }
+          while(node.up != null && node.up.left == node) {
+            node = node.up;
+            //climb until coming up from a right subtree
+          }
+          return node.up;
         }
 
         /**
          * Returns true if the iterator has another value to return, and false otherwise.
          */
         public boolean hasNext() { 
-          if(!stack.isEmpty()) {
-            //check that stack still has values
-            if(max != null) {
-              //check if max is set
-              if(max.compareTo(stack.peek().getData()) >= 0) {
-                //if top of stack is smaller or equal to max there is a next value
-                return true;
-              }else {
-                //if top of stack is larger than max there is not another value to pass
-                return false;
-              }
-            }
-            //if there is no max and stack is not empty there is a next value
-            return true;
+          if(next == null) {
+            return false;
           }
-          //if stack is empty there is no value to pass
-          return false;
+          if(descending) {
+            return min == null || aboveMin(next);
+            //going down, stop once values drop below the minimum
           }
+          return max == null || belowMax(next);
+          //going up, stop once values rise above the maximum
+        }
 
         /**
          * Returns the next value of the iterator.
@@ -130,19 +476,33 @@ public class IterableRedBlackTree<T extends Comparable<T>>
             //if there is no next value throw NoSuchElementException
             throw new NoSuchElementException("No More Nodes To Visit");
           }
-          BinaryTreeNode<R> node = stack.pop();
-          //get next value for stack
-          if((min == null || min.compareTo(node.getData()) <= 0) && (max == null || max.compareTo(node.getData()) >= 0)) {
-            //check if node is between min and max
-            buildStackHelper(node.right);
-            //push right subtree of node to stack
-            return node.getData();
-            //get nodes data
+          BinaryTreeNode<R> node = next;
+          if(--copies == 0) {
+            next = descending ? predecessor(node) : successor(node);
+            copies = next == null ? 0 : next.count;
+            //move to the next node once every copy of this one was returned
           }
-          return null;
-          //otherwise return null
-          
+          last = node;
+          return node.getData();
+        }
+
+        /**
+         * Removes the value last returned by next from the tree. A node holding more than one
+         * copy only loses a copy, and the tree deletes nodes by relinking them rather than
+         * copying values, so the next node stays valid.
+         * @throws UnsupportedOperationException if the iterator was created without a tree to remove from
+         * @throws IllegalStateException if next has not been called since the last remove
+         */
+        public void remove() {
+          if(remover == null) {
+            throw new UnsupportedOperationException("remove");
           }
+          if(last == null) {
+            throw new IllegalStateException("next has not been called");
+          }
+          remover.accept(last);
+          last = null;
+        }
         
     }
     /**
@@ -298,6 +658,261 @@ public class IterableRedBlackTree<T extends Comparable<T>>
         Assertions.fail("iterator does not handle min in range and max not in range");
       }
     }
-    
+
+    /**
+     * tests iterating over a tree built from sorted values with duplicates, with and without
+     * a starting point
+     */
+    @Test
+    public void testIteratorFromSorted() {
+      IterableRedBlackTree<Integer> tree = IterableRedBlackTree.fromSorted(new Integer[] {1, 3, 3, 5, 8, 13, 21});
+      String result = "";
+      for(Integer i: tree) {
+        result += i + " ";
+      }
+      if(!result.equals("1 3 3 5 8 13 21 ")) {
+        Assertions.fail("iterator does not return values of a tree built from sorted values");
+      }
+      tree.insert(4);
+      tree.setIteratorMin(3);
+      tree.setIteratorMax(8);
+      result = "";
+      for(Integer i: tree) {
+        result += i + " ";
+      }
+      if(!result.equals("3 3 4 5 8 ")) {
+        Assertions.fail("iterator does not handle starting and stopping point after insert");
+      }
+    }
+
+    /**
+     * tests that the iterator follows parent references correctly after removals have moved
+     * nodes around, with a start point that is between values
+     */
+    @Test
+    public void testIteratorAfterRemove() {
+      IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<Integer>();
+      for(int i = 0; i < 200; i++) {
+        tree.insert((i * 73) % 200);
+      }
+      for(int i = 0; i < 200; i += 3) {
+        tree.remove(i);
+      }
+      tree.setIteratorMin(99);
+      int expected = 100;
+      //99 was removed, so the iterator starts at the next value
+      for(Integer i: tree) {
+        if(i != expected) {
+          Assertions.fail("iterator skipped or repeated a value after removals");
+        }
+        expected += expected % 3 == 2 ? 2 : 1;
+      }
+      if(expected != 200) {
+        Assertions.fail("iterator stopped before the largest value");
+      }
+    }
+
+    /**
+     * tests iterators that carry their own bounds, including exclusive bounds over duplicates,
+     * descending order, and that they ignore the bounds set on the tree
+     */
+    @Test
+    public void testRangeIterators() {
+      IterableRedBlackTree<String> tree = new IterableRedBlackTree<String>();
+      for(String value: "B C H A G D D F".split(" ")) {
+        tree.insert(value);
+      }
+      tree.setIteratorMax("B");
+      String result = "";
+      for(Iterator<String> it = tree.iterator("C", false, "G", true); it.hasNext();) {
+        result += it.next() + " ";
+      }
+      if(!result.equals("D D F G ")) {
+        Assertions.fail("iterator does not handle exclusive minimum over duplicates");
+      }
+      result = "";
+      for(Iterator<String> it = tree.descendingIterator("B", "G"); it.hasNext();) {
+        result += it.next() + " ";
+      }
+      if(!result.equals("G F D D C B ")) {
+        Assertions.fail("descending iterator does not return values in reverse order");
+      }
+      result = "";
+      for(Iterator<String> it = tree.descendingIterator("A", false, "D", false); it.hasNext();) {
+        result += it.next() + " ";
+      }
+      if(!result.equals("C B ")) {
+        Assertions.fail("descending iterator does not handle exclusive bounds");
+      }
+      if(tree.iterator("Z", null).hasNext() || !tree.iterator().hasNext()) {
+        Assertions.fail("iterators don't keep their bounds separate");
+      }
+    }
+
+    /**
+     * tests the navigable set view, its sub views and descending views, and that changes
+     * through views and iterators reach the tree
+     */
+    @Test
+    public void testNavigableSet() {
+      IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<Integer>();
+      NavigableSet<Integer> set = tree.navigableSet();
+      for(int i = 0; i < 100; i += 10) {
+        set.add(i);
+      }
+      if(set.add(50) || set.size() != 10 || tree.size() != 10) {
+        Assertions.fail("view does not add values to the tree like a set");
+      }
+      if(set.floor(55) != 50 || set.ceiling(55) != 60 || set.higher(90) != null || set.lower(0) != null) {
+        Assertions.fail("view navigation returns wrong values");
+      }
+      NavigableSet<Integer> sub = set.subSet(20, false, 70, true);
+      if(!sub.toString().equals("[30, 40, 50, 60, 70]") || sub.first() != 30 || sub.ceiling(5) != 30) {
+        Assertions.fail("sub view does not respect its bounds");
+      }
+      NavigableSet<Integer> descending = sub.descendingSet();
+      if(!descending.toString().equals("[70, 60, 50, 40, 30]") || descending.floor(45) != 50
+         || !descending.headSet(50, false).toString().equals("[70, 60]")) {
+        Assertions.fail("descending view does not reverse the order");
+      }
+      tree.insert(35);
+      if(sub.size() != 6 || !sub.contains(35) || sub.contains(20)) {
+        Assertions.fail("view does not show changes made to the tree");
+      }
+      for(Iterator<Integer> it = sub.iterator(); it.hasNext();) {
+        if(it.next() % 20 == 0) {
+          it.remove();
+        }
+      }
+      if(!set.toString().equals("[0, 10, 20, 30, 35, 50, 70, 80, 90]")) {
+        Assertions.fail("iterator remove does not remove the values from the tree");
+      }
+      set.headSet(35).clear();
+      if(!set.toString().equals("[35, 50, 70, 80, 90]") || set.pollLast() != 90 || tree.size() != 4) {
+        Assertions.fail("clearing a view doesn't remove only its values");
+      }
+      try {
+        sub.add(10);
+        Assertions.fail("view accepted a value outside its bounds");
+      }catch(IllegalArgumentException e) {
+
+      }
+    }
+
+    /**
+     * tests that iterators and spliterators of a multiset tree return every copy of a value,
+     * the same as a normal tree holding the same values, and that iterator remove takes out
+     * one copy at a time
+     */
+    @Test
+    public void testMultisetIterator() {
+      IterableRedBlackTree<Integer> multiset = IterableRedBlackTree.multiset();
+      IterableRedBlackTree<Integer> plain = new IterableRedBlackTree<Integer>();
+      for(int i = 0; i < 500; i++) {
+        multiset.insert((i * 7) % 5);
+        plain.insert((i * 7) % 5);
+      }
+      String expected = "";
+      for(Iterator<Integer> it = plain.descendingIterator(1, false, 3, true); it.hasNext();) {
+        expected += it.next();
+      }
+      String result = "";
+      for(Iterator<Integer> it = multiset.descendingIterator(1, false, 3, true); it.hasNext();) {
+        result += it.next();
+      }
+      if(result.length() != 200 || !result.equals(expected)) {
+        Assertions.fail("multiset iterator does not return every copy");
+      }
+      multiset.setIteratorMin(2);
+      Spliterator<Integer> upper = multiset.spliterator();
+      Spliterator<Integer> lower = upper.trySplit();
+      int[] counts = new int[5];
+      lower.forEachRemaining(i -> counts[i]++);
+      if(counts[2] != 100 || counts[3] != 50 || upper.estimateSize() != 150) {
+        Assertions.fail("multiset spliterator does not split inside a node");
+      }
+      upper.forEachRemaining(i -> counts[i]++);
+      if(counts[3] != 100 || counts[4] != 100) {
+        Assertions.fail("multiset spliterator does not continue inside a node");
+      }
+      for(Iterator<Integer> it = multiset.iterator(3, 3); it.hasNext();) {
+        it.next();
+        it.remove();
+      }
+      if(multiset.contains(3) || multiset.size() != 400 || multiset.blackHeight((RBTNode<Integer>)multiset.root) < 0) {
+        Assertions.fail("iterator remove does not remove each copy");
+      }
+    }
+
+    /**
+     * tests iterators, bounds and the navigable set view of a tree ordered by a case
+     * insensitive comparator
+     */
+    @Test
+    public void testComparatorIterator() {
+      IterableRedBlackTree<String> tree = IterableRedBlackTree.withComparator(String.CASE_INSENSITIVE_ORDER);
+      for(String value: "delta Alpha charlie Bravo echo".split(" ")) {
+        tree.insert(value);
+      }
+      tree.setIteratorMin("b");
+      tree.setIteratorMax("D");
+      String result = "";
+      for(String value: tree) {
+        result += value + " ";
+      }
+      if(!result.equals("Bravo charlie ")) {
+        Assertions.fail("iterator bounds don't use the comparator");
+      }
+      result = "";
+      for(Iterator<String> it = tree.descendingIterator("ALPHA", false, "DELTA", true); it.hasNext();) {
+        result += it.next() + " ";
+      }
+      if(!result.equals("delta charlie Bravo ")) {
+        Assertions.fail("descending iterator doesn't use the comparator");
+      }
+      NavigableSet<String> set = tree.navigableSet();
+      if(!set.contains("ECHO") || set.add("CHARLIE") || set.comparator() != String.CASE_INSENSITIVE_ORDER
+         || !set.headSet("c").toString().equals("[Alpha, Bravo]")) {
+        Assertions.fail("navigable set view doesn't use the comparator");
+      }
+    }
+
+    /**
+     * tests that the spliterator reports exact sizes, splits into halves that cover the range
+     * in order, and gives parallel streams the same values as the iterator
+     */
+    @Test
+    public void testSpliterator() {
+      IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<Integer>();
+      for(int i = 0; i < 10000; i++) {
+        tree.insert((i * 7919) % 5000);
+        //every value from 0 to 4999 twice
+      }
+      tree.setIteratorMin(1000);
+      tree.setIteratorMax(2999);
+      Spliterator<Integer> upper = tree.spliterator();
+      if(upper.estimateSize() != 4000 || !upper.hasCharacteristics(Spliterator.SIZED | Spliterator.SORTED)) {
+        Assertions.fail("spliterator does not report the exact size of its range");
+      }
+      Spliterator<Integer> lower = upper.trySplit();
+      if(lower == null || lower.estimateSize() != 2000 || upper.estimateSize() != 2000) {
+        Assertions.fail("spliterator does not split its range in half");
+      }
+      int[] last = {-1};
+      lower.tryAdvance(i -> last[0] = i);
+      lower.forEachRemaining(i -> last[0] = i);
+      if(last[0] != 1999 || !upper.tryAdvance(i -> last[0] = i) || last[0] != 2000) {
+        Assertions.fail("split halves don't meet at the middle value");
+      }
+      long sum = StreamSupport.stream(tree.spliterator(), true).mapToLong(i -> i).sum();
+      if(sum != 2L * (1000 + 2999) * 2000 / 2) {
+        Assertions.fail("parallel stream doesn't visit every value in range once");
+      }
+      tree.setIteratorMin(4000);
+      tree.setIteratorMax(10);
+      if(tree.spliterator().estimateSize() != 0 || StreamSupport.stream(tree.spliterator(), true).count() != 0) {
+        Assertions.fail("spliterator does not handle an empty range");
+      }
+    }
 
 }
@@ -1,3 +1,5 @@
+import java.util.Iterator;
+
 /**
  * This interface defines an ADT for data structures that support storing a 
  * collection of comparable values in their natural ordering (similar to the
@@ -8,6 +10,48 @@ public interface IterableSortedCollection<T extends Comparable<T>>
 
     public void setIteratorMin(Comparable<T> min); // null to clear min
     public void setIteratorMax(Comparable<T> max); // null to clear max
-    
-    
+
+    /**
+     * Returns an iterator over the values between min and max, in ascending order.
+     * The bounds belong to the returned iterator only, so unlike setIteratorMin and
+     * setIteratorMax they don't affect other iterators of the collection.
+     * @param min the smallest value to return, or null for no minimum
+     * @param minInclusive whether a value equal to min is returned
+     * @param max the largest value to return, or null for no maximum
+     * @param maxInclusive whether a value equal to max is returned
+     */
+    public Iterator<T> iterator(Comparable<T> min, boolean minInclusive,
+                                Comparable<T> max, boolean maxInclusive);
+
+    /**
+     * Returns an iterator over the values between min and max, in descending order.
+     * The bounds belong to the returned iterator only.
+     * @param min the smallest value to return, or null for no minimum
+     * @param minInclusive whether a value equal to min is returned
+     * @param max the largest value to return, or null for no maximum
+     * @param maxInclusive whether a value equal to max is returned
+     */
+    public Iterator<T> descendingIterator(Comparable<T> min, boolean minInclusive,
+                                          Comparable<T> max, boolean maxInclusive);
+
+    /**
+     * Returns an iterator over the values between min and max, including min and max
+     * themselves, in ascending order.
+     * @param min the smallest value to return, or null for no minimum
+     * @param max the largest value to return, or null for no maximum
+     */
+    public default Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+        return iterator(min, true, max, true);
+    }
+
+    /**
+     * Returns an iterator over the values between min and max, including min and max
+     * themselves, in descending order.
+     * @param min the smallest value to return, or null for no minimum
+     * @param max the largest value to return, or null for no maximum
+     */
+    public default Iterator<T> descendingIterator(Comparable<T> min, Comparable<T> max) {
+        return descendingIterator(min, true, max, true);
+    }
+
 }
@@ -0,0 +1,157 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This interface defines how the keys of a tree are written to and read back from the binary
+ * format of TreeFormat. Keys are written in order, and each key may be encoded relative to the
+ * key before it, which is what makes sorted keys small: the built in numeric codecs write the
+ * difference to the previous key as a varint, and the string codec only writes the part of a
+ * key that differs from the previous one.
+ */
+public interface KeyCodec<T> {
+
+    /**
+     * Writes a key.
+     * @param out the stream to write to
+     * @param previous the key written before this one, or null for the first key
+     * @param key the key to write
+     */
+    public void write(DataOutput out, T previous, T key) throws IOException;
+
+    /**
+     * Reads a key written by write.
+     * @param in the stream to read from
+     * @param previous the key read before this one, or null for the first key
+     * @return the key
+     */
+    public T read(DataInput in, T previous) throws IOException;
+
+    /**
+     * Integers as zigzag varints of the difference to the previous key.
+     */
+    public static final KeyCodec<Integer> INTEGER = new KeyCodec<Integer>() {
+        @Override
+        public void write(DataOutput out, Integer previous, Integer key) throws IOException {
+            writeVarLong(out, zigzag((long)key - (previous == null ? 0 : previous)));
+        }
+
+        @Override
+        public Integer read(DataInput in, Integer previous) throws IOException {
+            return (int)((previous == null ? 0 : previous) + unzigzag(readVarLong(in)));
+        }
+    };
+
+    /**
+     * Longs as zigzag varints of the difference to the previous key. The difference wraps
+     * around on overflow, and wraps back when it is added to the previous key again.
+     */
+    public static final KeyCodec<Long> LONG = new KeyCodec<Long>() {
+        @Override
+        public void write(DataOutput out, Long previous, Long key) throws IOException {
+            writeVarLong(out, zigzag(key - (previous == null ? 0L : previous)));
+        }
+
+        @Override
+        public Long read(DataInput in, Long previous) throws IOException {
+            return (previous == null ? 0L : previous) + unzigzag(readVarLong(in));
+        }
+    };
+
+    /**
+     * Strings as the number of leading chars shared with the previous key followed by the
+     * rest of the key in UTF-8.
+     */
+    public static final KeyCodec<String> STRING = new KeyCodec<String>() {
+        @Override
+        public void write(DataOutput out, String previous, String key) throws IOException {
+            int shared = 0;
+            if(previous != null) {
+                int limit = Math.min(previous.length(), key.length());
+                while(shared < limit && previous.charAt(shared) == key.charAt(shared)) {
+                    shared++;
+                }
+                if(shared > 0 && Character.isHighSurrogate(key.charAt(shared - 1))) {
+                    shared--;
+                    //keep surrogate pairs together so the rest is valid UTF-8
+                }
+            }
+            byte[] rest = key.substring(shared).getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, shared);
+            writeVarLong(out, rest.length);
+            out.write(rest);
+        }
+
+        @Override
+        public String read(DataInput in, String previous) throws IOException {
+            long shared = readVarLong(in);
+            long length = readVarLong(in);
+            if(shared < 0 || length < 0 || length > Integer.MAX_VALUE || shared > (previous == null ? 0 : previous.length())) {
+                throw new IOException("corrupt string key");
+            }
+            byte[] rest = readBytes(in, (int)length);
+            String suffix = new String(rest, StandardCharsets.UTF_8);
+            return shared == 0 ? suffix : previous.substring(0, (int)shared) + suffix;
+        }
+    };
+
+    /**
+     * Writes an unsigned LEB128 varint, 7 bits per byte with the high bit set on every byte
+     * but the last.
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    /**
+     * Reads a varint written by writeVarLong.
+     * @throws IOException if the varint is longer than a long allows
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long)(b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint is too long");
+    }
+
+    /**
+     * Reads length bytes, growing the array one chunk at a time so a corrupt length runs into
+     * the end of the stream instead of allocating all of it up front.
+     * @throws IOException if in fails or ends before length bytes
+     */
+    public static byte[] readBytes(DataInput in, int length) throws IOException {
+        int chunk = 1 << 16;
+        byte[] bytes = new byte[Math.min(length, chunk)];
+        for(int read = 0; read < length; ) {
+            if(read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int)Math.min(length, 2L * read));
+            }
+            in.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Maps signed values to unsigned ones so small negative values stay small.
+     */
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
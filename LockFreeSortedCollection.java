@@ -0,0 +1,442 @@
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is an iterable sorted collection that many threads can read and change at once
+ * without any locks. Values are kept in a ConcurrentSkipListMap from each distinct value to the
+ * number of copies of it in the collection, so inserting a duplicate only swaps the count of an
+ * existing entry. Every change is a compare and set on a single entry that is retried when
+ * another thread changed the same entry first, which lets writers on different values proceed
+ * in parallel instead of waiting for each other the way writers of ConcurrentRedBlackTree do.
+ *
+ * The price is that there are no subtree sizes, so there is no rank or select, and that size()
+ * is only exact while no writer is running. Iterators are weakly consistent: they never throw
+ * ConcurrentModificationException, every value returned was in the collection at some point
+ * while iterating, and changes made while iterating may or may not be seen.
+ */
+public class LockFreeSortedCollection<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  // number of copies of each distinct value, entries are removed when their count reaches zero
+  private final ConcurrentSkipListMap<T, Integer> counts = new ConcurrentSkipListMap<T, Integer>();
+  // total number of copies, updated after each change to counts
+  private final LongAdder size = new LongAdder();
+  // start and stop point for iterators created by iterator()
+  private volatile Comparable<T> min = null;
+  private volatile Comparable<T> max = null;
+
+  /**
+   * inserts a new value into the collection
+   * @param data - value to insert
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if(data == null) {
+      throw new NullPointerException("data is null");
+    }
+    while(true) {
+      Integer copies = counts.putIfAbsent(data, 1);
+      if(copies == null || counts.replace(data, copies, copies + 1)) {
+        break;
+      }
+      //another thread changed the count of data first, read it again
+    }
+    size.increment();
+  }
+
+  /**
+   * removes one occurrence of a value from the collection
+   * @param data - value to remove
+   * @return true if a value equal to data was removed, false if there was none
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean remove(Comparable<T> data) {
+    if(data == null) {
+      return false;
+    }
+    return removeOne((T)data);
+  }
+
+  /**
+   * Removes one copy of a value by lowering its count, or removing its entry when it is the
+   * last copy.
+   * @return true if a copy was removed, false if the value was not in the collection
+   */
+  private boolean removeOne(T data) {
+    while(true) {
+      Integer copies = counts.get(data);
+      if(copies == null) {
+        return false;
+      }
+      if(copies == 1 ? counts.remove(data, copies) : counts.replace(data, copies, copies - 1)) {
+        size.decrement();
+        return true;
+      }
+      //another thread changed the count of data first, read it again
+    }
+  }
+
+  /**
+   * removes and returns the smallest value in the collection
+   * @return the smallest value, or null if the collection is empty
+   */
+  public T pollFirst() {
+    while(true) {
+      Map.Entry<T, Integer> entry = counts.firstEntry();
+      if(entry == null) {
+        return null;
+      }
+      if(removeOne(entry.getKey())) {
+        return entry.getKey();
+      }
+      //the last copy was taken by another thread, try the new first value
+    }
+  }
+
+  /**
+   * removes and returns the largest value in the collection
+   * @return the largest value, or null if the collection is empty
+   */
+  public T pollLast() {
+    while(true) {
+      Map.Entry<T, Integer> entry = counts.lastEntry();
+      if(entry == null) {
+        return null;
+      }
+      if(removeOne(entry.getKey())) {
+        return entry.getKey();
+      }
+    }
+  }
+
+  /**
+   * Removes every value that was in the collection when clear started. Values inserted while
+   * clearing may or may not be removed.
+   */
+  @Override
+  public void clear() {
+    for(Map.Entry<T, Integer> entry: counts.entrySet()) {
+      if(counts.remove(entry.getKey(), entry.getValue())) {
+        size.add(-entry.getValue());
+      }else {
+        while(removeOne(entry.getKey()));
+        //the count changed since the entry was read, remove copies one at a time
+      }
+    }
+  }
+
+  /**
+   * checks if a value appears in the collection at least once
+   * @param data - value to look for
+   * @return true if the collection holds a value equal to data, false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    return data != null && counts.containsKey(data);
+  }
+
+  /**
+   * @return the largest value smaller than or equal to data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  @SuppressWarnings("unchecked")
+  public T floor(Comparable<T> data) {
+    return counts.floorKey((T)data);
+  }
+
+  /**
+   * @return the smallest value bigger than or equal to data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  @SuppressWarnings("unchecked")
+  public T ceiling(Comparable<T> data) {
+    return counts.ceilingKey((T)data);
+  }
+
+  /**
+   * @return the smallest value strictly bigger than data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  @SuppressWarnings("unchecked")
+  public T higher(Comparable<T> data) {
+    return counts.higherKey((T)data);
+  }
+
+  /**
+   * @return the largest value strictly smaller than data, or null if there is none
+   * @throws NullPointerException if data is null
+   */
+  @SuppressWarnings("unchecked")
+  public T lower(Comparable<T> data) {
+    return counts.lowerKey((T)data);
+  }
+
+  /**
+   * @return the smallest value in the collection, or null if the collection is empty
+   */
+  public T first() {
+    Map.Entry<T, Integer> entry = counts.firstEntry();
+    return entry == null ? null : entry.getKey();
+  }
+
+  /**
+   * @return the largest value in the collection, or null if the collection is empty
+   */
+  public T last() {
+    Map.Entry<T, Integer> entry = counts.lastEntry();
+    return entry == null ? null : entry.getKey();
+  }
+
+  /**
+   * Counts the values in the collection, including duplicates. The count is exact while no
+   * writer is running, and otherwise may be off by the number of writes still running.
+   */
+  @Override
+  public int size() {
+    long total = size.sum();
+    return (int)Math.max(0L, Math.min(Integer.MAX_VALUE, total));
+    //a remove can be counted before the insert it follows, so the sum can briefly be negative
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return counts.isEmpty();
+  }
+
+  /**
+   * Sets the start (minimum) value of iterators created by iterator() after this call.
+   * @param min the minimum for iterators, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) { this.min = min; }
+
+  /**
+   * Sets the stop (maximum) value of iterators created by iterator() after this call.
+   * @param max the maximum for iterators, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) { this.max = max; }
+
+  /**
+   * Returns a weakly consistent iterator over the values between the iterator min and max,
+   * including the min and max themselves, in ascending order.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(min, true, max, true);
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the values between min and max in ascending
+   * order.
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    return new CountIterator(range(min, minInclusive, max, maxInclusive));
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the values between min and max in descending
+   * order.
+   */
+  @Override
+  public Iterator<T> descendingIterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    return new CountIterator(range(min, minInclusive, max, maxInclusive).descendingMap());
+  }
+
+  /**
+   * Returns the live view of the entries between min and max, which is empty when min is
+   * bigger than max.
+   */
+  @SuppressWarnings("unchecked")
+  private NavigableMap<T, Integer> range(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    if(min != null && max != null && min.compareTo((T)max) > 0) {
+      return Collections.emptyNavigableMap();
+    }
+    NavigableMap<T, Integer> view = counts;
+    if(min != null) {
+      view = view.tailMap((T)min, minInclusive);
+    }
+    if(max != null) {
+      view = view.headMap((T)max, maxInclusive);
+    }
+    return view;
+  }
+
+  /**
+   * Iterator over the entries of a view of counts that returns each value as many times as its
+   * count was when its entry was reached.
+   */
+  private class CountIterator implements Iterator<T> {
+
+    private final Iterator<Map.Entry<T, Integer>> entries;
+    // value of the current entry and how many copies of it are still to be returned
+    private T value = null;
+    private int copies = 0;
+    // whether remove can be called
+    private boolean canRemove = false;
+
+    private CountIterator(NavigableMap<T, Integer> view) {
+      this.entries = view.entrySet().iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return copies > 0 || entries.hasNext();
+    }
+
+    @Override
+    public T next() {
+      if(copies == 0) {
+        if(!entries.hasNext()) {
+          throw new NoSuchElementException("No More Nodes To Visit");
+        }
+        Map.Entry<T, Integer> entry = entries.next();
+        value = entry.getKey();
+        copies = entry.getValue();
+      }
+      copies--;
+      canRemove = true;
+      return value;
+    }
+
+    /**
+     * Removes one copy of the value last returned by next from the collection.
+     */
+    @Override
+    public void remove() {
+      if(!canRemove) {
+        throw new IllegalStateException("next has not been called");
+      }
+      canRemove = false;
+      removeOne(value);
+    }
+  }
+
+  /**
+   * tests that the collection behaves like an iterable red black tree from a single thread
+   */
+  @Test
+  public void testSingleThread() {
+    LockFreeSortedCollection<Integer> set = new LockFreeSortedCollection<Integer>();
+    for(int i = 0; i < 300; i++) {
+      set.insert(i / 3);
+      //every value from 0 to 99 three times
+    }
+    if(set.size() != 300 || !set.contains(99) || set.contains(100) || set.floor(-1) != null
+       || set.ceiling(50) != 50 || set.higher(50) != 51 || set.lower(0) != null || set.first() != 0 || set.last() != 99) {
+      Assertions.fail("lookups return wrong values");
+    }
+    int count = 0;
+    int previous = -1;
+    for(Integer value: set) {
+      if(value < previous) {
+        Assertions.fail("iterator is not in ascending order");
+      }
+      previous = value;
+      count++;
+    }
+    if(count != 300) {
+      Assertions.fail("iterator does not return every copy");
+    }
+    String result = "";
+    for(Iterator<Integer> it = set.descendingIterator(10, false, 12, true); it.hasNext();) {
+      result += it.next() + " ";
+    }
+    if(!result.equals("12 12 12 11 11 11 ") || set.iterator(12, 10).hasNext()) {
+      Assertions.fail("descending iterator does not handle bounds");
+    }
+    set.setIteratorMin(95);
+    result = "";
+    for(Integer value: set) {
+      result += value;
+    }
+    if(!result.equals("959595969696979797989898999999")) {
+      Assertions.fail("iterator does not start at the iterator min");
+    }
+    set.setIteratorMin(null);
+    for(Iterator<Integer> it = set.iterator(); it.hasNext();) {
+      if(it.next() % 2 == 0) {
+        it.remove();
+      }
+    }
+    if(set.size() != 150 || set.contains(4) || !set.contains(5)) {
+      Assertions.fail("iterator remove does not remove the returned values");
+    }
+    if(set.pollFirst() != 1 || set.pollLast() != 99 || set.size() != 148) {
+      Assertions.fail("poll does not remove one copy of the first or last value");
+    }
+    set.clear();
+    if(!set.isEmpty() || set.size() != 0 || set.first() != null || set.pollFirst() != null) {
+      Assertions.fail("clear does not remove every value");
+    }
+  }
+
+  /**
+   * tests many writers inserting and removing overlapping values at once: after every thread
+   * is done the counts must add up exactly, and readers must never see values out of order
+   */
+  @Test
+  public void testConcurrentWriters() throws InterruptedException {
+    LockFreeSortedCollection<Integer> set = new LockFreeSortedCollection<Integer>();
+    AtomicReference<String> failure = new AtomicReference<String>();
+    int threads = 8;
+    CountDownLatch done = new CountDownLatch(threads + 1);
+    for(int t = 0; t < threads; t++) {
+      int seed = t;
+      new Thread(() -> {
+        try {
+          for(int i = 0; i < 20000; i++) {
+            int value = (i * 7919 + seed * 104729) % 1000;
+            set.insert(value);
+            set.insert(value);
+            if(!set.remove(value)) {
+              failure.set("remove did not find a value its own thread inserted");
+            }
+          }
+        }finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    new Thread(() -> {
+      try {
+        while(done.getCount() > 1) {
+          int previous = -1;
+          for(Integer value: set) {
+            if(value < previous || value < 0 || value >= 1000) {
+              failure.set("iterator returned a wrong value");
+            }
+            previous = value;
+          }
+        }
+      }catch(RuntimeException e) {
+        failure.set("reader failed with " + e);
+      }finally {
+        done.countDown();
+      }
+    }).start();
+    done.await();
+    if(failure.get() != null) {
+      Assertions.fail(failure.get());
+    }
+    int count = 0;
+    for(Integer value: set) {
+      count++;
+    }
+    if(set.size() != threads * 20000 || count != threads * 20000) {
+      Assertions.fail("concurrent inserts and removes were lost");
+    }
+  }
+
+}
@@ -0,0 +1,259 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is a red black tree of long values. Keys are kept in a long array next to the
+ * structure arrays of AbstractArrayRedBlackTree and are compared with the primitive
+ * operators, so inserting, looking up and iterating never box a value.
+ */
+public class LongRedBlackTree extends AbstractArrayRedBlackTree implements IterableLongSortedCollection {
+
+  // key stored in each slot
+  protected long[] keys = new long[INITIAL_CAPACITY];
+  // start and stop point for iterators, only used when the matching flag is set
+  private long min;
+  private long max;
+  private boolean hasMin = false;
+  private boolean hasMax = false;
+
+  @Override
+  protected void growKeys(int newCapacity) {
+    keys = Arrays.copyOf(keys, newCapacity);
+  }
+
+  /**
+   * inserts a new value into the tree, duplicates are stored to the left of equal values
+   * @param data - value to insert
+   */
+  @Override
+  public void insert(long data) {
+    int parent = NIL;
+    int curr = root;
+    boolean asLeft = false;
+    while(curr != NIL) {
+      parent = curr;
+      asLeft = data <= keys[curr];
+      curr = asLeft ? left[curr] : right[curr];
+      //smaller or equal values go left, bigger values go right
+    }
+    int slot = allocateSlot();
+    keys[slot] = data;
+    linkSlot(slot, parent, asLeft);
+  }
+
+  /**
+   * finds a slot holding data
+   * @param data - value to look for
+   * @return slot whose key equals data, or NIL if there is none
+   */
+  protected int findSlot(long data) {
+    int curr = root;
+    while(curr != NIL) {
+      long key = keys[curr];
+      if(data == key) {
+        return curr;
+      }
+      curr = data < key ? left[curr] : right[curr];
+    }
+    return NIL;
+  }
+
+  /**
+   * checks if a value appears in the tree at least once
+   * @param data - value to look for
+   * @return true if the tree holds data, false otherwise
+   */
+  @Override
+  public boolean contains(long data) {
+    return findSlot(data) != NIL;
+  }
+
+  /**
+   * removes one occurrence of a value from the tree
+   * @param data - value to remove
+   * @return true if data was removed, false if it was not in the tree
+   */
+  @Override
+  public boolean remove(long data) {
+    int slot = findSlot(data);
+    if(slot == NIL) {
+      return false;
+    }
+    deleteSlot(slot);
+    return true;
+  }
+
+  /**
+   * finds the first slot in sorted order whose key is not smaller than data
+   * @param data - lower bound
+   * @return that slot, or NIL if every key is smaller than data
+   */
+  protected int ceilingSlot(long data) {
+    int found = NIL;
+    int curr = root;
+    while(curr != NIL) {
+      if(keys[curr] >= data) {
+        found = curr;
+        curr = left[curr];
+      }else {
+        curr = right[curr];
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Sets the start (minimum) value used by iterators created after this call.
+   * @param min the smallest value iterators will return
+   */
+  @Override
+  public void setIteratorMin(long min) {
+    this.min = min;
+    this.hasMin = true;
+  }
+
+  /**
+   * Sets the stop (maximum) value used by iterators created after this call.
+   * @param max the largest value iterators will return
+   */
+  @Override
+  public void setIteratorMax(long max) {
+    this.max = max;
+    this.hasMax = true;
+  }
+
+  /**
+   * Removes the start value so iterators begin at the smallest value in the tree.
+   */
+  @Override
+  public void clearIteratorMin() { this.hasMin = false; }
+
+  /**
+   * Removes the stop value so iterators finish with the largest value in the tree.
+   */
+  @Override
+  public void clearIteratorMax() { this.hasMax = false; }
+
+  /**
+   * Returns an iterator over the values between the iterator min and max, including
+   * the min and max themselves, in ascending order.
+   */
+  @Override
+  public PrimitiveIterator.OfLong iterator() {
+    int start = hasMin ? ceilingSlot(min) : (root == NIL ? NIL : minSlot(root));
+    return new LongIterator(start, hasMax, max);
+  }
+
+  /**
+   * Iterator that walks the tree in order by following parent links, so it needs no stack.
+   */
+  private class LongIterator implements PrimitiveIterator.OfLong {
+
+    // next slot to return, or NIL when done
+    private int next;
+    // stop point for the iterator
+    private final boolean hasMax;
+    private final long max;
+
+    private LongIterator(int start, boolean hasMax, long max) {
+      this.hasMax = hasMax;
+      this.max = max;
+      this.next = start;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != NIL && (!hasMax || keys[next] <= max);
+    }
+
+    @Override
+    public long nextLong() {
+      if(!hasNext()) {
+        throw new NoSuchElementException("No More Nodes To Visit");
+      }
+      long value = keys[next];
+      next = successor(next);
+      return value;
+    }
+  }
+
+  /**
+   * tests insert, contains, remove and size with duplicates, including checking that the
+   * tree stays a valid red black tree while slots are freed and reused
+   */
+  @Test
+  public void testInsertRemove() {
+    LongRedBlackTree tree = new LongRedBlackTree();
+    for(long i = 0; i < 1000; i++) {
+      //insert scrambled values with large magnitudes and some duplicates
+      tree.insert(((i * 7919) % 600) * 10_000_000_000L);
+    }
+    if(tree.size() != 1000 || tree.blackHeight(tree.root) < 0) {
+      Assertions.fail("tree is not valid after inserting values");
+    }
+    if(!tree.contains(599 * 10_000_000_000L) || tree.contains(5)) {
+      Assertions.fail("contains doesn't find the right values");
+    }
+    for(long i = 0; i < 600; i += 2) {
+      if(!tree.remove(i * 10_000_000_000L)) {
+        Assertions.fail("remove didn't find value " + i);
+      }
+    }
+    if(tree.remove(1) || tree.size() != 700 || tree.blackHeight(tree.root) < 0) {
+      Assertions.fail("tree is not valid after removing values");
+    }
+    int highWater = tree.highWater;
+    for(long i = 0; i < 300; i++) {
+      tree.insert(-i);
+    }
+    if(tree.highWater != highWater || tree.blackHeight(tree.root) < 0) {
+      Assertions.fail("inserts don't reuse freed slots");
+    }
+    tree.clear();
+    if(!tree.isEmpty() || tree.size() != 0 || tree.iterator().hasNext()) {
+      Assertions.fail("clear doesn't empty the tree");
+    }
+  }
+
+  /**
+   * tests iteration order with duplicates and with a start and stop point
+   */
+  @Test
+  public void testIterator() {
+    LongRedBlackTree tree = new LongRedBlackTree();
+    tree.insert(65);
+    tree.insert(68);
+    tree.insert(77);
+    tree.insert(100);
+    tree.insert(7000);
+    tree.insert(66);
+    tree.insert(68);
+    String result = "";
+    PrimitiveIterator.OfLong it = tree.iterator();
+    while(it.hasNext()) {
+      result += it.nextLong() + " ";
+    }
+    if(!result.equals("65 66 68 68 77 100 7000 ")) {
+      Assertions.fail("iterator does not return correct order");
+    }
+    tree.setIteratorMin(67);
+    tree.setIteratorMax(100);
+    result = "";
+    it = tree.iterator();
+    while(it.hasNext()) {
+      result += it.nextLong() + " ";
+    }
+    if(!result.equals("68 68 77 100 ")) {
+      Assertions.fail("iterator does not handle starting and stopping point");
+    }
+    tree.clearIteratorMax();
+    tree.setIteratorMin(8000);
+    if(tree.iterator().hasNext()) {
+      Assertions.fail("iterator does not handle minimum outside range");
+    }
+  }
+
+}
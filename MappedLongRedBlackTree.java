@@ -0,0 +1,742 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is a red black tree of long keys stored in a memory mapped file, so reopening
+ * it only maps the file and reads its header instead of rebuilding the tree. Nodes are never
+ * changed once written: insert and remove copy the nodes on the path from the root to the
+ * change into free space at the end of the file (path copying) and produce a new root. The
+ * new root only becomes visible to a later open when commit() has forced the new nodes to
+ * disk and then written the root into one of two header slots. A crash at any point leaves
+ * either the previous root or the new root in the file, both of which point only at nodes
+ * that were fully written.
+ *
+ * Nodes have no parent links, since a shared node can have many parents across versions.
+ * Copied paths leave unreachable nodes behind in the file, compact() rewrites the file with
+ * only the nodes of the current tree.
+ */
+public class MappedLongRedBlackTree implements IterableLongSortedCollection, AutoCloseable {
+
+  // index used in place of a null reference
+  private static final int NIL = -1;
+  // bytes reserved at the start of the file for the two header slots
+  private static final int HEADER_SIZE = 4096;
+  // bytes in a header slot and byte offsets of its fields
+  private static final int SLOT_SIZE = 64;
+  private static final int SLOT_MAGIC = 0;
+  private static final int SLOT_SEQUENCE = 8;
+  private static final int SLOT_ROOT = 16;
+  private static final int SLOT_COUNT = 24;
+  private static final int SLOT_TOP = 32;
+  private static final int SLOT_CHECKSUM = 40;
+  // marks a header slot written by this class
+  private static final long MAGIC = 0x5242544d41503031L;
+  // bytes in a node and byte offsets of its fields
+  private static final int NODE_SIZE = 24;
+  private static final int LEFT = 0;
+  private static final int RIGHT = 4;
+  private static final int KEY = 8;
+  private static final int COLOR = 16;
+  // the file is mapped in regions of 2^REGION_SHIFT nodes
+  private static final int REGION_SHIFT = 20;
+  private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+  // deepest a tree of at most 2^31 nodes can be
+  private static final int MAX_DEPTH = 64;
+
+  // file holding the tree
+  private final Path path;
+  private FileChannel channel;
+  private MappedByteBuffer header;
+  private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+  // root, size and first unused node of the current, possibly uncommitted, version
+  private int root = NIL;
+  private int count = 0;
+  private int top = 0;
+  // values of the last committed version
+  private int committedRoot = NIL;
+  private int committedTop = 0;
+  private long sequence = 0;
+
+  // start and stop point for iterators, only used when the matching flag is set
+  private long min;
+  private long max;
+  private boolean hasMin = false;
+  private boolean hasMax = false;
+
+  /**
+   * Opens the tree stored in a file, creating an empty tree if the file doesn't exist. The
+   * tree is the one recorded by the last commit that finished before the file was closed
+   * or the program stopped.
+   * @param path the file holding the tree
+   * @throws IOException if the file can't be opened or mapped
+   */
+  public MappedLongRedBlackTree(Path path) throws IOException {
+    this.path = path;
+    open();
+  }
+
+  /**
+   * Maps the header and picks the valid header slot with the highest sequence number.
+   */
+  private void open() throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    regions = new MappedByteBuffer[0];
+    root = NIL;
+    count = 0;
+    top = 0;
+    sequence = 0;
+    for(int slot = 0; slot < 2; slot++) {
+      int base = slot * SLOT_SIZE;
+      if(header.getLong(base + SLOT_MAGIC) != MAGIC || header.getLong(base + SLOT_CHECKSUM) != checksum(base)) {
+        continue;
+        //slot was never written or was torn by a crash
+      }
+      long slotSequence = header.getLong(base + SLOT_SEQUENCE);
+      if(slotSequence > sequence) {
+        sequence = slotSequence;
+        root = (int)header.getLong(base + SLOT_ROOT);
+        count = (int)header.getLong(base + SLOT_COUNT);
+        top = (int)header.getLong(base + SLOT_TOP);
+      }
+    }
+    committedRoot = root;
+    committedTop = top;
+    if(top > 0) {
+      ensureMapped(top - 1);
+    }
+  }
+
+  /**
+   * @param base offset of a header slot
+   * @return checksum of the fields of the slot
+   */
+  private long checksum(int base) {
+    CRC32 crc = new CRC32();
+    for(int i = base; i < base + SLOT_CHECKSUM; i++) {
+      crc.update(header.get(i));
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Maps every region up to and including the one holding node.
+   */
+  private void ensureMapped(int node) throws IOException {
+    int needed = (node >>> REGION_SHIFT) + 1;
+    if(needed <= regions.length) {
+      return;
+    }
+    int old = regions.length;
+    regions = Arrays.copyOf(regions, needed);
+    for(int i = old; i < needed; i++) {
+      long position = HEADER_SIZE + ((long)i << REGION_SHIFT) * NODE_SIZE;
+      regions[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, (long)NODE_SIZE << REGION_SHIFT);
+      regions[i].order(ByteOrder.LITTLE_ENDIAN);
+      //mapping past the end of the file grows the file
+    }
+  }
+
+  /**
+   * @throws IllegalStateException if the tree has been closed
+   */
+  private void checkOpen() {
+    if(channel == null) {
+      throw new IllegalStateException("tree is closed");
+    }
+  }
+
+  //----- node access -----
+
+  private MappedByteBuffer region(int node) { return regions[node >>> REGION_SHIFT]; }
+  private int offset(int node) { return (node & REGION_MASK) * NODE_SIZE; }
+  private int left(int node) { return region(node).getInt(offset(node) + LEFT); }
+  private int right(int node) { return region(node).getInt(offset(node) + RIGHT); }
+  private long key(int node) { return region(node).getLong(offset(node) + KEY); }
+  private boolean isRed(int node) { return node != NIL && region(node).get(offset(node) + COLOR) != 0; }
+  private boolean isBlack(int node) { return node != NIL && region(node).get(offset(node) + COLOR) == 0; }
+
+  /**
+   * Writes a new node into the free space at the end of the file.
+   * @return index of the new node
+   */
+  private int node(boolean red, int left, long key, int right) {
+    if(top == Integer.MAX_VALUE) {
+      throw new IllegalStateException("file is full, call compact()");
+    }
+    int node = top;
+    try {
+      ensureMapped(node);
+    }catch(IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    MappedByteBuffer region = region(node);
+    int offset = offset(node);
+    region.putInt(offset + LEFT, left);
+    region.putInt(offset + RIGHT, right);
+    region.putLong(offset + KEY, key);
+    region.put(offset + COLOR, (byte)(red ? 1 : 0));
+    top++;
+    return node;
+  }
+
+  /**
+   * @return a copy of node with the given color, or node itself if it already has it
+   */
+  private int recolor(int node, boolean red) {
+    if(node == NIL || isRed(node) == red) {
+      return node;
+    }
+    return node(red, left(node), key(node), right(node));
+  }
+
+  //----- path copying insert and delete -----
+
+  /**
+   * Restores the red property around a black node whose children may hold a red red pair,
+   * returning the root of the repaired subtree. Also turns two red children into a red
+   * node with black children.
+   */
+  private int balance(int left, long key, int right) {
+    if(isRed(left) && isRed(right)) {
+      return node(true, recolor(left, false), key, recolor(right, false));
+    }
+    if(isRed(left)) {
+      if(isRed(left(left))) {
+        int ll = left(left);
+        return node(true, node(false, left(ll), key(ll), right(ll)), key(left), node(false, right(left), key, right));
+      }
+      if(isRed(right(left))) {
+        int lr = right(left);
+        return node(true, node(false, left(left), key(left), left(lr)), key(lr), node(false, right(lr), key, right));
+      }
+    }
+    if(isRed(right)) {
+      if(isRed(right(right))) {
+        int rr = right(right);
+        return node(true, node(false, left, key, left(right)), key(right), node(false, left(rr), key(rr), right(rr)));
+      }
+      if(isRed(left(right))) {
+        int rl = left(right);
+        return node(true, node(false, left, key, left(rl)), key(rl), node(false, right(rl), key(right), right(right)));
+      }
+    }
+    return node(false, left, key, right);
+  }
+
+  /**
+   * Inserts data below node, smaller or equal keys go left.
+   * @return root of the new version of the subtree
+   */
+  private int insert(int node, long data) {
+    if(node == NIL) {
+      return node(true, NIL, data, NIL);
+    }
+    long key = key(node);
+    if(isRed(node)) {
+      return data <= key ? node(true, insert(left(node), data), key, right(node))
+                         : node(true, left(node), key, insert(right(node), data));
+    }
+    return data <= key ? balance(insert(left(node), data), key, right(node))
+                       : balance(left(node), key, insert(right(node), data));
+  }
+
+  /**
+   * Removes one occurrence of data below node, data must be in the subtree.
+   * @return root of the new version of the subtree, which may have one black node fewer
+   */
+  private int delete(int node, long data) {
+    long key = key(node);
+    if(data < key) {
+      int left = left(node);
+      return isBlack(left) ? balanceLeft(delete(left, data), key, right(node))
+                           : node(true, delete(left, data), key, right(node));
+    }
+    if(data > key) {
+      int right = right(node);
+      return isBlack(right) ? balanceRight(left(node), key, delete(right, data))
+                            : node(true, left(node), key, delete(right, data));
+    }
+    return append(left(node), right(node));
+  }
+
+  /**
+   * Joins a left subtree that is one black node short with a key and right subtree.
+   */
+  private int balanceLeft(int left, long key, int right) {
+    if(isRed(left)) {
+      return node(true, recolor(left, false), key, right);
+    }
+    if(isBlack(right)) {
+      return balance(left, key, recolor(right, true));
+    }
+    int rl = left(right);
+    return node(true, node(false, left, key, left(rl)), key(rl),
+                balance(right(rl), key(right), recolor(right(right), true)));
+  }
+
+  /**
+   * Joins a key and left subtree with a right subtree that is one black node short.
+   */
+  private int balanceRight(int left, long key, int right) {
+    if(isRed(right)) {
+      return node(true, left, key, recolor(right, false));
+    }
+    if(isBlack(left)) {
+      return balance(recolor(left, true), key, right);
+    }
+    int lr = right(left);
+    return node(true, balance(recolor(left(left), true), key(left), left(lr)), key(lr),
+                node(false, right(lr), key, right));
+  }
+
+  /**
+   * Joins two subtrees of the same black height where every key of left is not bigger
+   * than every key of right.
+   */
+  private int append(int left, int right) {
+    if(left == NIL) {
+      return right;
+    }
+    if(right == NIL) {
+      return left;
+    }
+    if(isRed(left) && isRed(right)) {
+      int middle = append(right(left), left(right));
+      if(isRed(middle)) {
+        return node(true, node(true, left(left), key(left), left(middle)), key(middle),
+                    node(true, right(middle), key(right), right(right)));
+      }
+      return node(true, left(left), key(left), node(true, middle, key(right), right(right)));
+    }
+    if(isBlack(left) && isBlack(right)) {
+      int middle = append(right(left), left(right));
+      if(isRed(middle)) {
+        return node(true, node(false, left(left), key(left), left(middle)), key(middle),
+                    node(false, right(middle), key(right), right(right)));
+      }
+      return balanceLeft(left(left), key(left), node(false, middle, key(right), right(right)));
+    }
+    if(isRed(right)) {
+      return node(true, append(left, left(right)), key(right), right(right));
+    }
+    return node(true, left(left), key(left), append(right(left), right));
+  }
+
+  //----- collection operations -----
+
+  /**
+   * inserts a new key, the change is durable once commit() returns
+   * @param data - key to insert
+   */
+  @Override
+  public void insert(long data) {
+    checkOpen();
+    root = recolor(insert(root, data), false);
+    count++;
+  }
+
+  /**
+   * finds a node holding data
+   * @return node whose key equals data, or NIL if there is none
+   */
+  private int findNode(long data) {
+    checkOpen();
+    int curr = root;
+    while(curr != NIL) {
+      long key = key(curr);
+      if(data == key) {
+        return curr;
+      }
+      curr = data < key ? left(curr) : right(curr);
+    }
+    return NIL;
+  }
+
+  @Override
+  public boolean contains(long data) {
+    return findNode(data) != NIL;
+  }
+
+  /**
+   * removes one occurrence of a key, the change is durable once commit() returns
+   * @param data - key to remove
+   * @return true if the key was removed, false if it was not in the tree
+   */
+  @Override
+  public boolean remove(long data) {
+    if(findNode(data) == NIL) {
+      return false;
+    }
+    root = recolor(delete(root, data), false);
+    count--;
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return count;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return root == NIL;
+  }
+
+  /**
+   * Removes all keys, the change is durable once commit() returns.
+   */
+  @Override
+  public void clear() {
+    checkOpen();
+    root = NIL;
+    count = 0;
+  }
+
+  /**
+   * Makes every change since the last commit durable. The new nodes are forced to disk
+   * first, then the new root is written into the older of the two header slots and forced.
+   * If the program stops before this returns, the file opens as the previous version.
+   * @throws IOException if the file can't be written
+   */
+  public void commit() throws IOException {
+    checkOpen();
+    if(root == committedRoot && top == committedTop) {
+      return;
+      //nothing changed
+    }
+    for(int node = committedTop; node < top; ) {
+      int regionEnd = Math.min(top, ((node >>> REGION_SHIFT) + 1) << REGION_SHIFT);
+      region(node).force(offset(node), (regionEnd - node) * NODE_SIZE);
+      node = regionEnd;
+      //force the new nodes before anything points at them
+    }
+    sequence++;
+    int base = (int)(sequence & 1) * SLOT_SIZE;
+    header.putLong(base + SLOT_MAGIC, MAGIC);
+    header.putLong(base + SLOT_SEQUENCE, sequence);
+    header.putLong(base + SLOT_ROOT, root);
+    header.putLong(base + SLOT_COUNT, count);
+    header.putLong(base + SLOT_TOP, top);
+    header.putLong(base + SLOT_CHECKSUM, checksum(base));
+    header.force(base, SLOT_SIZE);
+    committedRoot = root;
+    committedTop = top;
+  }
+
+  /**
+   * Rewrites the file so it only holds the nodes of the current tree, laid out as a
+   * balanced tree in sorted order. The compacted tree is written to a new file which then
+   * replaces the old one, so a crash leaves one of the two complete files in place. Commits
+   * any uncommitted changes.
+   * @throws IOException if the files can't be written
+   */
+  public void compact() throws IOException {
+    checkOpen();
+    Path tempPath = path.resolveSibling(path.getFileName() + ".compact");
+    Files.deleteIfExists(tempPath);
+    PrimitiveIterator.OfLong keys = new MappedIterator(root, false, 0, false, 0);
+    try(MappedLongRedBlackTree compacted = new MappedLongRedBlackTree(tempPath)) {
+      int redLevel = 0;
+      for(int m = count - 1; m >= 0; m = m / 2 - 1) {
+        redLevel++;
+        //nodes on the deepest level of an incomplete tree are red
+      }
+      compacted.root = compacted.buildBalanced(keys, count, 0, redLevel);
+      compacted.count = count;
+      compacted.commit();
+    }
+    unmap();
+    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    open();
+  }
+
+  /**
+   * Writes the next size keys from an in-order stream as a balanced subtree, children are
+   * written before their parents.
+   * @return root of the subtree
+   */
+  private int buildBalanced(PrimitiveIterator.OfLong keys, int size, int depth, int redLevel) {
+    if(size == 0) {
+      return NIL;
+    }
+    int leftSize = (size - 1) / 2;
+    int left = buildBalanced(keys, leftSize, depth + 1, redLevel);
+    long key = keys.nextLong();
+    int right = buildBalanced(keys, size - 1 - leftSize, depth + 1, redLevel);
+    return node(depth == redLevel, left, key, right);
+  }
+
+  /**
+   * Commits any uncommitted changes and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if(channel == null) {
+      return;
+    }
+    commit();
+    unmap();
+  }
+
+  /**
+   * Releases the mappings and the file without committing.
+   */
+  private void unmap() throws IOException {
+    OffHeapLongRedBlackTree.freeDirect(header);
+    for(MappedByteBuffer region : regions) {
+      OffHeapLongRedBlackTree.freeDirect(region);
+    }
+    header = null;
+    regions = new MappedByteBuffer[0];
+    channel.close();
+    channel = null;
+  }
+
+  //----- iteration -----
+
+  @Override
+  public void setIteratorMin(long min) {
+    this.min = min;
+    this.hasMin = true;
+  }
+
+  @Override
+  public void setIteratorMax(long max) {
+    this.max = max;
+    this.hasMax = true;
+  }
+
+  @Override
+  public void clearIteratorMin() { this.hasMin = false; }
+
+  @Override
+  public void clearIteratorMax() { this.hasMax = false; }
+
+  /**
+   * Returns an iterator over the keys between the iterator min and max, including the min
+   * and max themselves, in ascending order. The iterator reads the version of the tree
+   * that was current when it was created, even if the tree is changed afterwards.
+   */
+  @Override
+  public PrimitiveIterator.OfLong iterator() {
+    checkOpen();
+    return new MappedIterator(root, hasMin, min, hasMax, max);
+  }
+
+  /**
+   * In-order iterator that keeps the ancestors it still has to visit on an int stack,
+   * since nodes have no parent links.
+   */
+  private class MappedIterator implements PrimitiveIterator.OfLong {
+
+    // nodes whose key and right subtree are still to be visited
+    private final int[] stack = new int[MAX_DEPTH];
+    private int depth = 0;
+    // stop point for the iterator
+    private final boolean hasMax;
+    private final long max;
+
+    private MappedIterator(int root, boolean hasMin, long min, boolean hasMax, long max) {
+      this.hasMax = hasMax;
+      this.max = max;
+      int curr = root;
+      while(curr != NIL) {
+        if(!hasMin || key(curr) >= min) {
+          stack[depth++] = curr;
+          curr = left(curr);
+          //curr is in range, visit its left subtree first
+        }else {
+          curr = right(curr);
+          //curr and its left subtree are below min
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return depth > 0 && (!hasMax || key(stack[depth - 1]) <= max);
+    }
+
+    @Override
+    public long nextLong() {
+      if(!hasNext()) {
+        throw new NoSuchElementException("No More Nodes To Visit");
+      }
+      int node = stack[--depth];
+      for(int curr = right(node); curr != NIL; curr = left(curr)) {
+        stack[depth++] = curr;
+      }
+      return key(node);
+    }
+  }
+
+  //----- tests -----
+
+  /**
+   * Checks the red black properties of a subtree.
+   * @return black height of the subtree, or -1 if the subtree is not valid
+   */
+  private int blackHeight(int node) {
+    if(node == NIL) {
+      return 0;
+    }
+    if(isRed(node) && (isRed(left(node)) || isRed(right(node)))) {
+      return -1;
+    }
+    int leftHeight = blackHeight(left(node));
+    int rightHeight = blackHeight(right(node));
+    if(leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (isRed(node) ? 0 : 1);
+  }
+
+  /**
+   * @return the keys of the tree in order as a string
+   */
+  private String keysToString() {
+    StringBuilder sb = new StringBuilder();
+    PrimitiveIterator.OfLong it = iterator();
+    while(it.hasNext()) {
+      sb.append(it.nextLong()).append(' ');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * JUnit tests, in a nested class since the tree has no constructor JUnit can call.
+   */
+  static class Tests {
+
+    /**
+     * tests insert and remove with duplicates, then checks that the tree is the same after
+     * closing and reopening the file
+     */
+    @Test
+    public void testReopen() throws IOException {
+      Path file = Files.createTempFile("rbt", ".map");
+      String expected;
+      try(MappedLongRedBlackTree tree = new MappedLongRedBlackTree(file)) {
+        for(long i = 0; i < 2000; i++) {
+          tree.insert((i * 7919) % 1500);
+        }
+        for(long i = 0; i < 1500; i += 3) {
+          if(!tree.remove(i)) {
+            Assertions.fail("remove did not find " + i);
+          }
+        }
+        if(tree.remove(-1) || tree.size() != 1500) {
+          Assertions.fail("remove changed the size wrongly");
+        }
+        if(tree.blackHeight(tree.root) < 0 || tree.isRed(tree.root)) {
+          Assertions.fail("tree is not valid after inserts and removes");
+        }
+        tree.setIteratorMin(10);
+        tree.setIteratorMax(20);
+        if(!tree.keysToString().equals("10 10 11 11 13 14 16 17 17 18 19 19 20 ")) {
+          Assertions.fail("bounded iterator returns wrong keys");
+        }
+        tree.clearIteratorMin();
+        tree.clearIteratorMax();
+        expected = tree.keysToString();
+      }
+      try(MappedLongRedBlackTree tree = new MappedLongRedBlackTree(file)) {
+        if(tree.size() != 1500 || !tree.keysToString().equals(expected)) {
+          Assertions.fail("reopened tree is not the same");
+        }
+      }
+      Files.delete(file);
+    }
+
+    /**
+     * tests that changes which were not committed are gone after a crash, and that a torn
+     * header slot makes the tree open at the previous commit
+     */
+    @Test
+    public void testCrash() throws IOException {
+      Path file = Files.createTempFile("rbt", ".map");
+      MappedLongRedBlackTree tree = new MappedLongRedBlackTree(file);
+      tree.insert(1);
+      tree.insert(2);
+      tree.commit();
+      tree.insert(3);
+      tree.commit();
+      tree.insert(4);
+      tree.remove(1);
+      tree.unmap();
+      //simulate a crash before the last changes were committed
+      tree = new MappedLongRedBlackTree(file);
+      if(!tree.keysToString().equals("1 2 3 ")) {
+        Assertions.fail("uncommitted changes survived a crash");
+      }
+      int newest = (int)(tree.sequence & 1) * SLOT_SIZE;
+      tree.header.putLong(newest + SLOT_ROOT, 12345);
+      tree.unmap();
+      //simulate a crash in the middle of writing the header slot
+      tree = new MappedLongRedBlackTree(file);
+      if(!tree.keysToString().equals("1 2 ")) {
+        Assertions.fail("torn header slot was not skipped");
+      }
+      tree.insert(5);
+      tree.close();
+      tree = new MappedLongRedBlackTree(file);
+      if(!tree.keysToString().equals("1 2 5 ")) {
+        Assertions.fail("tree does not continue from the older slot");
+      }
+      tree.close();
+      Files.delete(file);
+    }
+
+    /**
+     * tests that compact drops the unreachable nodes and keeps the keys and a valid tree
+     */
+    @Test
+    public void testCompact() throws IOException {
+      Path file = Files.createTempFile("rbt", ".map");
+      try(MappedLongRedBlackTree tree = new MappedLongRedBlackTree(file)) {
+        for(long i = 0; i < 1000; i++) {
+          tree.insert(i);
+        }
+        for(long i = 0; i < 1000; i += 2) {
+          tree.remove(i);
+        }
+        String expected = tree.keysToString();
+        int used = tree.top;
+        tree.compact();
+        if(tree.top != 500 || tree.top >= used) {
+          Assertions.fail("compact kept unreachable nodes");
+        }
+        if(!tree.keysToString().equals(expected) || tree.blackHeight(tree.root) < 0) {
+          Assertions.fail("compacted tree lost keys or is not valid");
+        }
+        tree.insert(0);
+        if(!tree.contains(0) || tree.size() != 501) {
+          Assertions.fail("compacted tree can't be changed");
+        }
+      }
+      try(MappedLongRedBlackTree tree = new MappedLongRedBlackTree(file)) {
+        if(tree.size() != 501 || !tree.contains(999) || tree.contains(998)) {
+          Assertions.fail("reopened compacted tree is not the same");
+        }
+      }
+      Files.delete(file);
+    }
+  }
+
+}
@@ -0,0 +1,546 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is a red black tree of long keys whose nodes live outside of the Java heap in
+ * direct ByteBuffers. Each node is a fixed size record holding its left, right and parent
+ * slot, its color, its key and a fixed number of value bytes. Records are grouped into
+ * chunks so the tree can hold more nodes than fit in a single buffer, and growing the tree
+ * only adds a chunk without copying the existing ones. The linking, rebalancing and navigation
+ * of the slots are those of AbstractSlotRedBlackTree. The garbage collector never sees the
+ * nodes, and the memory is given back to the operating system when close() is called, or
+ * once the buffers handed out by cursors are garbage collected if there are any.
+ */
+public class OffHeapLongRedBlackTree extends AbstractSlotRedBlackTree implements IterableLongSortedCollection, AutoCloseable {
+
+  // each chunk holds 2^CHUNK_SHIFT nodes
+  private static final int CHUNK_SHIFT = 14;
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+  // byte offsets of the fields within a node record
+  private static final int LEFT = 0;
+  private static final int RIGHT = 4;
+  private static final int UP = 8;
+  private static final int COLOR = 12;
+  private static final int KEY = 16;
+  private static final int VALUE = 24;
+  // values of the color byte
+  private static final byte RED = 1;
+  private static final byte BLACK = 0;
+
+  // number of value bytes stored with each key
+  private final int valueWidth;
+  // number of bytes in a node record, a multiple of 8 so keys stay aligned
+  private final int nodeSize;
+  // buffers holding the node records, null once the tree is closed
+  private ByteBuffer[] chunks = new ByteBuffer[0];
+  // read only views of the chunks handed out by cursors
+  private ByteBuffer[] readOnlyChunks = new ByteBuffer[0];
+  // whether a cursor has handed out a view, after which close() can't free the chunks
+  private boolean viewsShared = false;
+
+  // start and stop point for iterators, only used when the matching flag is set
+  private long min;
+  private long max;
+  private boolean hasMin = false;
+  private boolean hasMax = false;
+
+  /**
+   * Creates an empty tree that stores valueWidth bytes with every key.
+   * @param valueWidth number of value bytes per key, 0 for a tree of keys only
+   * @throws IllegalArgumentException if valueWidth is negative or too large
+   */
+  public OffHeapLongRedBlackTree(int valueWidth) {
+    if(valueWidth < 0 || valueWidth > (Integer.MAX_VALUE >> CHUNK_SHIFT) - VALUE - 8) {
+      throw new IllegalArgumentException("invalid value width " + valueWidth);
+    }
+    this.valueWidth = valueWidth;
+    this.nodeSize = (VALUE + valueWidth + 7) & ~7;
+  }
+
+  /**
+   * @return number of value bytes stored with each key
+   */
+  public int valueWidth() { return valueWidth; }
+
+  //----- record access -----
+
+  private int offset(int slot) { return (slot & CHUNK_MASK) * nodeSize; }
+  private ByteBuffer chunk(int slot) { return chunks[slot >>> CHUNK_SHIFT]; }
+  private long key(int slot) { return chunk(slot).getLong(offset(slot) + KEY); }
+  @Override
+  protected int left(int slot) { return chunk(slot).getInt(offset(slot) + LEFT); }
+  @Override
+  protected int right(int slot) { return chunk(slot).getInt(offset(slot) + RIGHT); }
+  @Override
+  protected int up(int slot) { return chunk(slot).getInt(offset(slot) + UP); }
+  @Override
+  protected boolean red(int slot) { return chunk(slot).get(offset(slot) + COLOR) == RED; }
+  @Override
+  protected void setLeft(int slot, int child) { chunk(slot).putInt(offset(slot) + LEFT, child); }
+  @Override
+  protected void setRight(int slot, int child) { chunk(slot).putInt(offset(slot) + RIGHT, child); }
+  @Override
+  protected void setUp(int slot, int parent) { chunk(slot).putInt(offset(slot) + UP, parent); }
+  @Override
+  protected void setRed(int slot, boolean red) { chunk(slot).put(offset(slot) + COLOR, red ? RED : BLACK); }
+
+  /**
+   * @throws IllegalStateException if the tree has been closed
+   */
+  private void checkOpen() {
+    if(chunks == null) {
+      throw new IllegalStateException("tree is closed");
+    }
+  }
+
+  @Override
+  protected int capacity() {
+    return (int)Math.min(Integer.MAX_VALUE, (long)chunks.length << CHUNK_SHIFT);
+  }
+
+  /**
+   * Adds a chunk, existing chunks are not copied.
+   */
+  @Override
+  protected void grow() {
+    if(highWater == Integer.MAX_VALUE) {
+      throw new IllegalStateException("tree is full");
+    }
+    ByteBuffer chunk = ByteBuffer.allocateDirect(nodeSize << CHUNK_SHIFT).order(ByteOrder.nativeOrder());
+    chunks = Arrays.copyOf(chunks, chunks.length + 1);
+    chunks[chunks.length - 1] = chunk;
+    readOnlyChunks = Arrays.copyOf(readOnlyChunks, readOnlyChunks.length + 1);
+    readOnlyChunks[readOnlyChunks.length - 1] = chunk.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+  }
+
+  //----- collection operations -----
+
+  /**
+   * inserts a key with all value bytes set to zero, duplicates are stored to the left of
+   * equal keys
+   * @param data - key to insert
+   */
+  @Override
+  public void insert(long data) {
+    int slot = insertSlot(data);
+    ByteBuffer chunk = chunk(slot);
+    int base = offset(slot) + VALUE;
+    for(int i = 0; i < valueWidth; i++) {
+      chunk.put(base + i, (byte)0);
+    }
+  }
+
+  /**
+   * inserts a key with a value, duplicates are stored to the left of equal keys
+   * @param data - key to insert
+   * @param value - buffer whose next valueWidth() bytes are copied into the tree, its
+   * position is not changed
+   * @throws IllegalArgumentException if value has fewer than valueWidth() bytes remaining
+   */
+  public void insert(long data, ByteBuffer value) {
+    if(value.remaining() < valueWidth) {
+      throw new IllegalArgumentException("value needs " + valueWidth + " bytes");
+    }
+    int slot = insertSlot(data);
+    chunk(slot).put(offset(slot) + VALUE, value, value.position(), valueWidth);
+  }
+
+  /**
+   * links a new node holding data into the tree and rebalances it
+   * @param data - key of the new node
+   * @return slot of the new node
+   */
+  private int insertSlot(long data) {
+    checkOpen();
+    int parent = NIL;
+    int curr = root;
+    boolean asLeft = false;
+    while(curr != NIL) {
+      parent = curr;
+      asLeft = data <= key(curr);
+      curr = asLeft ? left(curr) : right(curr);
+    }
+    int slot = allocateSlot();
+    chunk(slot).putLong(offset(slot) + KEY, data);
+    linkSlot(slot, parent, asLeft);
+    return slot;
+  }
+
+  /**
+   * finds a slot holding data
+   * @param data - key to look for
+   * @return slot whose key equals data, or NIL if there is none
+   */
+  private int findSlot(long data) {
+    checkOpen();
+    int curr = root;
+    while(curr != NIL) {
+      long key = key(curr);
+      if(data == key) {
+        return curr;
+      }
+      curr = data < key ? left(curr) : right(curr);
+    }
+    return NIL;
+  }
+
+  @Override
+  public boolean contains(long data) {
+    return findSlot(data) != NIL;
+  }
+
+  /**
+   * copies the value stored with a key into dst
+   * @param data - key to look for
+   * @param dst - buffer that receives valueWidth() bytes at its position, its position is
+   * not changed
+   * @return true if the key was found, false otherwise
+   */
+  public boolean get(long data, ByteBuffer dst) {
+    int slot = findSlot(data);
+    if(slot == NIL) {
+      return false;
+    }
+    dst.put(dst.position(), chunk(slot), offset(slot) + VALUE, valueWidth);
+    return true;
+  }
+
+  @Override
+  public boolean remove(long data) {
+    int slot = findSlot(data);
+    if(slot == NIL) {
+      return false;
+    }
+    deleteSlot(slot);
+    return true;
+  }
+
+  /**
+   * Removes all keys from the tree. The chunks stay allocated and are reused.
+   */
+  @Override
+  public void clear() {
+    checkOpen();
+    super.clear();
+  }
+
+  /**
+   * Frees the off heap memory of the tree. The tree can't be used after it is closed. If a
+   * cursor has handed out a buffer the memory is left to the garbage collector instead, so
+   * reading a buffer kept past close() is still safe.
+   */
+  @Override
+  public void close() {
+    if(chunks == null) {
+      return;
+    }
+    if(!viewsShared) {
+      for(ByteBuffer chunk : chunks) {
+        freeDirect(chunk);
+      }
+    }
+    chunks = null;
+    readOnlyChunks = null;
+    root = NIL;
+    count = 0;
+  }
+
+  /**
+   * Releases the memory of a direct or mapped buffer right away instead of waiting for the
+   * garbage collector, falling back to the garbage collector when that is not possible.
+   * @param buffer buffer that is no longer used
+   */
+  static void freeDirect(ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(field.get(null), buffer);
+    }catch(ReflectiveOperationException | RuntimeException e) {
+      //memory is freed when the buffer is garbage collected
+    }
+  }
+
+  //----- navigation and iteration -----
+
+  /**
+   * @return slot of the first key in the iterator range, or NIL if the range is empty
+   */
+  private int firstSlot() {
+    checkOpen();
+    if(!hasMin) {
+      return root == NIL ? NIL : minSlot(root);
+    }
+    int found = NIL;
+    int curr = root;
+    while(curr != NIL) {
+      if(key(curr) >= min) {
+        found = curr;
+        curr = left(curr);
+      }else {
+        curr = right(curr);
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public void setIteratorMin(long min) {
+    this.min = min;
+    this.hasMin = true;
+  }
+
+  @Override
+  public void setIteratorMax(long max) {
+    this.max = max;
+    this.hasMax = true;
+  }
+
+  @Override
+  public void clearIteratorMin() { this.hasMin = false; }
+
+  @Override
+  public void clearIteratorMax() { this.hasMax = false; }
+
+  /**
+   * Returns an iterator over the keys between the iterator min and max, including the min
+   * and max themselves, in ascending order.
+   */
+  @Override
+  public PrimitiveIterator.OfLong iterator() {
+    Cursor cursor = cursor();
+    return new PrimitiveIterator.OfLong() {
+      private boolean ready = false;
+      //whether the cursor is on an entry that has not been returned yet
+
+      @Override
+      public boolean hasNext() {
+        if(!ready) {
+          ready = cursor.next();
+        }
+        return ready;
+      }
+
+      @Override
+      public long nextLong() {
+        if(!hasNext()) {
+          throw new NoSuchElementException("No More Nodes To Visit");
+        }
+        ready = false;
+        return cursor.key();
+      }
+    };
+  }
+
+  /**
+   * Returns a cursor over the entries between the iterator min and max in ascending order.
+   * The cursor reads keys and values straight out of the off heap records.
+   */
+  public Cursor cursor() {
+    return new Cursor(firstSlot(), hasMax, max);
+  }
+
+  /**
+   * Moves over the entries of the tree in order without creating an object per entry.
+   * Call next() to move to an entry, then read it with key(), or find its value bytes at
+   * valueOffset() in buffer(). The buffer is a read only view of the tree's memory, not a
+   * copy, and is only valid until the tree is modified or closed.
+   */
+  public class Cursor {
+
+    // slot the cursor is on, NIL before the first call to next and after the last entry
+    private int current = NIL;
+    // slot next() moves to
+    private int pending;
+    // stop point for the cursor
+    private final boolean hasMax;
+    private final long max;
+
+    private Cursor(int start, boolean hasMax, long max) {
+      this.pending = start;
+      this.hasMax = hasMax;
+      this.max = max;
+    }
+
+    /**
+     * Moves the cursor to the next entry.
+     * @return true if the cursor is on an entry, false if there are no more entries
+     */
+    public boolean next() {
+      checkOpen();
+      if(pending == NIL || (hasMax && OffHeapLongRedBlackTree.this.key(pending) > max)) {
+        current = NIL;
+        pending = NIL;
+        return false;
+      }
+      current = pending;
+      pending = successor(current);
+      return true;
+    }
+
+    private int current() {
+      if(current == NIL) {
+        throw new NoSuchElementException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    /**
+     * @return key of the current entry
+     */
+    public long key() {
+      checkOpen();
+      return OffHeapLongRedBlackTree.this.key(current());
+    }
+
+    /**
+     * @return read only buffer holding the value bytes of the current entry
+     */
+    public ByteBuffer buffer() {
+      checkOpen();
+      viewsShared = true;
+      return readOnlyChunks[current() >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * @return index in buffer() of the first value byte of the current entry
+     */
+    public int valueOffset() {
+      checkOpen();
+      return offset(current()) + VALUE;
+    }
+  }
+
+  //----- tests -----
+
+  /**
+   * JUnit tests, in a nested class since the tree has no constructor JUnit can call.
+   */
+  static class Tests {
+
+    /**
+     * tests insert, contains, remove and iteration across several chunks, and that the tree
+     * stays a valid red black tree
+     */
+    @Test
+    public void testChunks() {
+      try(OffHeapLongRedBlackTree tree = new OffHeapLongRedBlackTree(0)) {
+        int n = 3 * (1 << CHUNK_SHIFT);
+        for(long i = 0; i < n; i++) {
+          tree.insert((i * 7919) % n - n / 2);
+          //insert scrambled values, some of them negative
+        }
+        if(tree.size() != n || tree.blackHeight(tree.root) < 0) {
+          Assertions.fail("tree is not valid after inserts");
+        }
+        if(!tree.contains(-n / 2) || !tree.contains(n / 2 - 1) || tree.contains(n)) {
+          Assertions.fail("contains gives wrong results");
+        }
+        for(long i = -n / 2; i < n / 2; i += 2) {
+          if(!tree.remove(i)) {
+            Assertions.fail("remove did not find " + i);
+          }
+        }
+        if(tree.size() != n / 2 || tree.blackHeight(tree.root) < 0) {
+          Assertions.fail("tree is not valid after removes");
+        }
+        long expected = -n / 2 + 1;
+        PrimitiveIterator.OfLong it = tree.iterator();
+        while(it.hasNext()) {
+          if(it.nextLong() != expected) {
+            Assertions.fail("iterator is not in order");
+          }
+          expected += 2;
+        }
+        if(expected != n / 2 + 1) {
+          Assertions.fail("iterator does not return every key");
+        }
+        int chunkCount = tree.chunks.length;
+        for(long i = 0; i < n / 2; i++) {
+          tree.insert(i);
+        }
+        if(tree.chunks.length != chunkCount) {
+          Assertions.fail("freed slots are not reused");
+        }
+      }
+    }
+
+    /**
+     * tests storing values with keys and reading them back through get and a bounded cursor,
+     * and that a closed tree can't be used
+     */
+    @Test
+    public void testValues() {
+      OffHeapLongRedBlackTree tree = new OffHeapLongRedBlackTree(12);
+      ByteBuffer value = ByteBuffer.allocate(12).order(ByteOrder.nativeOrder());
+      for(long i = 0; i < 100; i++) {
+        value.putLong(0, i * i);
+        value.putInt(8, (int)-i);
+        tree.insert(i * 10, value);
+      }
+      ByteBuffer dst = ByteBuffer.allocate(12).order(ByteOrder.nativeOrder());
+      if(!tree.get(70, dst) || dst.getLong(0) != 49 || dst.getInt(8) != -7 || tree.get(75, dst)) {
+        Assertions.fail("values are not stored with their keys");
+      }
+      tree.setIteratorMin(205);
+      tree.setIteratorMax(250);
+      Cursor cursor = tree.cursor();
+      long expected = 21;
+      while(cursor.next()) {
+        ByteBuffer buffer = cursor.buffer();
+        if(cursor.key() != expected * 10 || buffer.getLong(cursor.valueOffset()) != expected * expected
+           || !buffer.isReadOnly()) {
+          Assertions.fail("cursor returns a wrong key or value");
+        }
+        expected++;
+      }
+      if(expected != 26) {
+        Assertions.fail("cursor does not visit exactly the keys in the range");
+      }
+      tree.close();
+      try {
+        tree.contains(10);
+        Assertions.fail("closed tree can still be used");
+      }catch(IllegalStateException e) {
+        //expected
+      }
+    }
+
+    /**
+     * tests that a buffer kept from a cursor can still be read after the tree is closed, and
+     * that the cursor itself can't
+     */
+    @Test
+    public void testBufferAfterClose() {
+      OffHeapLongRedBlackTree tree = new OffHeapLongRedBlackTree(8);
+      ByteBuffer value = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+      value.putLong(0, 42);
+      tree.insert(1, value);
+      Cursor cursor = tree.cursor();
+      cursor.next();
+      ByteBuffer buffer = cursor.buffer();
+      int offset = cursor.valueOffset();
+      tree.close();
+      System.gc();
+      if(buffer.getLong(offset) != 42) {
+        Assertions.fail("closing the tree changed a buffer handed out by a cursor");
+        //the chunk would have been freed and this read a use after free
+      }
+      try {
+        cursor.buffer();
+        Assertions.fail("cursor of a closed tree can still be used");
+      }catch(IllegalStateException e) {
+        //expected
+      }
+    }
+  }
+
+}
@@ -0,0 +1,667 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is a red black tree whose nodes are never changed once created. insert and remove
+ * copy only the nodes on the path from the root to the change (path copying), rebalancing the
+ * copies on the way back up instead of rotating nodes in place, and then swap in the new root.
+ * Every older root stays a complete, valid tree, so snapshot() only has to hand out the current
+ * root and takes O(1) time. Any number of threads can read a snapshot without locks while
+ * writers keep changing the tree, and writers on the same tree retry their change when another
+ * writer swapped the root first.
+ *
+ * Nodes have no parent links, since a shared node can have many parents across versions, and
+ * keep the size of their subtree so size() stays O(1). Each change leaves O(log n) old nodes
+ * behind, which the garbage collector reclaims once no snapshot refers to them.
+ */
+public class PersistentRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  // deepest a tree with an int size can be
+  private static final int MAX_DEPTH = 64;
+
+  /**
+   * Immutable node of a PersistentRedBlackTree.
+   */
+  protected static final class Node<T> {
+    protected final boolean red;
+    protected final Node<T> left;
+    protected final T data;
+    protected final Node<T> right;
+    // number of nodes in the subtree rooted at this node
+    protected final int size;
+
+    protected Node(boolean red, Node<T> left, T data, Node<T> right) {
+      this.red = red;
+      this.left = left;
+      this.data = data;
+      this.right = right;
+      this.size = 1 + sizeOf(left) + sizeOf(right);
+    }
+
+    @Override
+    public String toString() {
+      return this.data + ( this.red ? "(r)" : "(b)" );
+    }
+  }
+
+  // root of the current version of the tree
+  private final AtomicReference<Node<T>> root;
+  // start and stop point for iterators created by iterator()
+  private volatile Comparable<T> min = null;
+  private volatile Comparable<T> max = null;
+
+  /**
+   * Creates an empty tree.
+   */
+  public PersistentRedBlackTree() {
+    this.root = new AtomicReference<Node<T>>(null);
+  }
+
+  /**
+   * Returns an independent tree holding the values this tree holds right now. It shares every
+   * node with this tree, so it takes O(1) time and memory, and later changes to either tree do
+   * not show up in the other.
+   * @return the snapshot
+   */
+  public PersistentRedBlackTree<T> snapshot() {
+    PersistentRedBlackTree<T> snapshot = new PersistentRedBlackTree<T>();
+    snapshot.root.set(root.get());
+    return snapshot;
+  }
+
+  //----- path copying insert and delete -----
+
+  private static int sizeOf(Node<?> node) { return node == null ? 0 : node.size; }
+  private static boolean isRed(Node<?> node) { return node != null && node.red; }
+  private static boolean isBlack(Node<?> node) { return node != null && !node.red; }
+
+  /**
+   * @return a copy of node with the given color, or node itself if it already has it
+   */
+  private static <T> Node<T> recolor(Node<T> node, boolean red) {
+    if(node == null || node.red == red) {
+      return node;
+    }
+    return new Node<T>(red, node.left, node.data, node.right);
+  }
+
+  /**
+   * Restores the red property around a black node whose children may hold a red red pair,
+   * returning the root of the repaired subtree. Also turns two red children into a red
+   * node with black children. Each case is one of the rotations of an in place insert,
+   * done on copies.
+   */
+  private static <T> Node<T> balance(Node<T> left, T data, Node<T> right) {
+    if(isRed(left) && isRed(right)) {
+      return new Node<T>(true, recolor(left, false), data, recolor(right, false));
+    }
+    if(isRed(left)) {
+      if(isRed(left.left)) {
+        Node<T> ll = left.left;
+        return new Node<T>(true, new Node<T>(false, ll.left, ll.data, ll.right), left.data,
+                           new Node<T>(false, left.right, data, right));
+      }
+      if(isRed(left.right)) {
+        Node<T> lr = left.right;
+        return new Node<T>(true, new Node<T>(false, left.left, left.data, lr.left), lr.data,
+                           new Node<T>(false, lr.right, data, right));
+      }
+    }
+    if(isRed(right)) {
+      if(isRed(right.right)) {
+        Node<T> rr = right.right;
+        return new Node<T>(true, new Node<T>(false, left, data, right.left), right.data,
+                           new Node<T>(false, rr.left, rr.data, rr.right));
+      }
+      if(isRed(right.left)) {
+        Node<T> rl = right.left;
+        return new Node<T>(true, new Node<T>(false, left, data, rl.left), rl.data,
+                           new Node<T>(false, rl.right, right.data, right.right));
+      }
+    }
+    return new Node<T>(false, left, data, right);
+  }
+
+  /**
+   * Inserts data below node, smaller or equal values go left.
+   * @return root of the new version of the subtree
+   */
+  private static <T extends Comparable<T>> Node<T> insert(Node<T> node, T data) {
+    if(node == null) {
+      return new Node<T>(true, null, data, null);
+    }
+    boolean goLeft = data.compareTo(node.data) <= 0;
+    if(node.red) {
+      return goLeft ? new Node<T>(true, insert(node.left, data), node.data, node.right)
+                    : new Node<T>(true, node.left, node.data, insert(node.right, data));
+    }
+    return goLeft ? balance(insert(node.left, data), node.data, node.right)
+                  : balance(node.left, node.data, insert(node.right, data));
+  }
+
+  /**
+   * Removes the first node equal to data on the search path below node, data must be in
+   * the subtree.
+   * @return root of the new version of the subtree, which may have one black node fewer
+   */
+  private static <T> Node<T> delete(Node<T> node, Comparable<T> data) {
+    int cmp = data.compareTo(node.data);
+    if(cmp < 0) {
+      return isBlack(node.left) ? balanceLeft(delete(node.left, data), node.data, node.right)
+                                : new Node<T>(true, delete(node.left, data), node.data, node.right);
+    }
+    if(cmp > 0) {
+      return isBlack(node.right) ? balanceRight(node.left, node.data, delete(node.right, data))
+                                 : new Node<T>(true, node.left, node.data, delete(node.right, data));
+    }
+    return append(node.left, node.right);
+  }
+
+  /**
+   * Joins a left subtree that is one black node short with a value and right subtree.
+   */
+  private static <T> Node<T> balanceLeft(Node<T> left, T data, Node<T> right) {
+    if(isRed(left)) {
+      return new Node<T>(true, recolor(left, false), data, right);
+    }
+    if(isBlack(right)) {
+      return balance(left, data, recolor(right, true));
+    }
+    Node<T> rl = right.left;
+    return new Node<T>(true, new Node<T>(false, left, data, rl.left), rl.data,
+                       balance(rl.right, right.data, recolor(right.right, true)));
+  }
+
+  /**
+   * Joins a value and left subtree with a right subtree that is one black node short.
+   */
+  private static <T> Node<T> balanceRight(Node<T> left, T data, Node<T> right) {
+    if(isRed(right)) {
+      return new Node<T>(true, left, data, recolor(right, false));
+    }
+    if(isBlack(left)) {
+      return balance(recolor(left, true), data, right);
+    }
+    Node<T> lr = left.right;
+    return new Node<T>(true, balance(recolor(left.left, true), left.data, lr.left), lr.data,
+                       new Node<T>(false, lr.right, data, right));
+  }
+
+  /**
+   * Joins two subtrees of the same black height where every value of left is not bigger
+   * than every value of right.
+   */
+  private static <T> Node<T> append(Node<T> left, Node<T> right) {
+    if(left == null) {
+      return right;
+    }
+    if(right == null) {
+      return left;
+    }
+    if(isRed(left) && isRed(right)) {
+      Node<T> middle = append(left.right, right.left);
+      if(isRed(middle)) {
+        return new Node<T>(true, new Node<T>(true, left.left, left.data, middle.left), middle.data,
+                           new Node<T>(true, middle.right, right.data, right.right));
+      }
+      return new Node<T>(true, left.left, left.data, new Node<T>(true, middle, right.data, right.right));
+    }
+    if(isBlack(left) && isBlack(right)) {
+      Node<T> middle = append(left.right, right.left);
+      if(isRed(middle)) {
+        return new Node<T>(true, new Node<T>(false, left.left, left.data, middle.left), middle.data,
+                           new Node<T>(false, middle.right, right.data, right.right));
+      }
+      return balanceLeft(left.left, left.data, new Node<T>(false, middle, right.data, right.right));
+    }
+    if(isRed(right)) {
+      return new Node<T>(true, append(left, right.left), right.data, right.right);
+    }
+    return new Node<T>(true, left.left, left.data, append(left.right, right));
+  }
+
+  //----- collection operations -----
+
+  /**
+   * inserts a new value into the tree, copying the path from the root to the new node
+   * @param data - value to insert
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if(data == null) {
+      throw new NullPointerException("data is null");
+    }
+    while(true) {
+      Node<T> current = root.get();
+      if(root.compareAndSet(current, recolor(insert(current, data), false))) {
+        return;
+      }
+      //another writer swapped the root first, insert into its version instead
+    }
+  }
+
+  /**
+   * removes one occurrence of a value from the tree, copying the path from the root to the
+   * removed node
+   * @param data - value to remove
+   * @return true if a value equal to data was removed, false if there was none
+   */
+  @Override
+  public boolean remove(Comparable<T> data) {
+    if(data == null) {
+      return false;
+    }
+    while(true) {
+      Node<T> current = root.get();
+      if(findNode(current, data) == null) {
+        return false;
+      }
+      if(root.compareAndSet(current, recolor(delete(current, data), false))) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return the first node equal to data on the search path below node, or null if there is none
+   */
+  private static <T> Node<T> findNode(Node<T> node, Comparable<T> data) {
+    while(node != null) {
+      int cmp = data.compareTo(node.data);
+      if(cmp == 0) {
+        return node;
+      }
+      node = cmp < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  @Override
+  public boolean contains(Comparable<T> data) {
+    return data != null && findNode(root.get(), data) != null;
+  }
+
+  /**
+   * @return the smallest value in the tree, or null if the tree is empty
+   */
+  public T first() {
+    Node<T> curr = root.get();
+    if(curr == null) {
+      return null;
+    }
+    while(curr.left != null) {
+      curr = curr.left;
+    }
+    return curr.data;
+  }
+
+  /**
+   * @return the largest value in the tree, or null if the tree is empty
+   */
+  public T last() {
+    Node<T> curr = root.get();
+    if(curr == null) {
+      return null;
+    }
+    while(curr.right != null) {
+      curr = curr.right;
+    }
+    return curr.data;
+  }
+
+  /**
+   * Returns the value at a position of the tree in sorted order in O(log n) time.
+   * @param index - position of the value, 0 for the smallest value
+   * @throws IndexOutOfBoundsException if index is negative or not smaller than size()
+   */
+  public T select(int index) {
+    Node<T> curr = root.get();
+    if(index < 0 || index >= sizeOf(curr)) {
+      throw new IndexOutOfBoundsException("index " + index + " is outside the tree");
+    }
+    while(true) {
+      int leftSize = sizeOf(curr.left);
+      if(index == leftSize) {
+        return curr.data;
+      }
+      if(index < leftSize) {
+        curr = curr.left;
+      }else {
+        index -= leftSize + 1;
+        curr = curr.right;
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return sizeOf(root.get());
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return root.get() == null;
+  }
+
+  /**
+   * Removes all values from the tree. Snapshots taken before keep their values.
+   */
+  @Override
+  public void clear() {
+    root.set(null);
+  }
+
+  /**
+   * Sets the start (minimum) value of iterators created by iterator() after this call.
+   * @param min the minimum for iterators, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) { this.min = min; }
+
+  /**
+   * Sets the stop (maximum) value of iterators created by iterator() after this call.
+   * @param max the maximum for iterators, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) { this.max = max; }
+
+  /**
+   * Returns an iterator over the values between the iterator min and max, including the min
+   * and max themselves, in ascending order. Like every iterator of this tree it reads the
+   * version of the tree that was current when it was created.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(min, true, max, true);
+  }
+
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    return new VersionIterator(root.get(), min, minInclusive, max, maxInclusive, false);
+  }
+
+  @Override
+  public Iterator<T> descendingIterator(Comparable<T> min, boolean minInclusive, Comparable<T> max, boolean maxInclusive) {
+    return new VersionIterator(root.get(), min, minInclusive, max, maxInclusive, true);
+  }
+
+  /**
+   * In-order iterator over one version of the tree that keeps the ancestors it still has to
+   * visit on a stack, since nodes have no parent links.
+   */
+  private class VersionIterator implements Iterator<T> {
+
+    // nodes whose value and far subtree are still to be visited
+    @SuppressWarnings("unchecked")
+    private final Node<T>[] stack = (Node<T>[])new Node<?>[MAX_DEPTH];
+    private int depth = 0;
+    // stop point of the iterator, max when ascending and min when descending
+    private final Comparable<T> end;
+    private final boolean endInclusive;
+    private final boolean descending;
+    // value last returned by next, which remove takes out of the current version
+    private T last = null;
+
+    private VersionIterator(Node<T> root, Comparable<T> min, boolean minInclusive,
+                            Comparable<T> max, boolean maxInclusive, boolean descending) {
+      this.descending = descending;
+      this.end = descending ? min : max;
+      this.endInclusive = descending ? minInclusive : maxInclusive;
+      Comparable<T> start = descending ? max : min;
+      boolean startInclusive = descending ? maxInclusive : minInclusive;
+      Node<T> curr = root;
+      while(curr != null) {
+        int cmp = start == null ? 0 : start.compareTo(curr.data);
+        boolean inRange = start == null || (descending ? cmp > 0 : cmp < 0) || (cmp == 0 && startInclusive);
+        if(inRange) {
+          stack[depth++] = curr;
+          curr = descending ? curr.right : curr.left;
+          //curr is in range, visit its near subtree first
+        }else {
+          curr = descending ? curr.left : curr.right;
+          //curr and its near subtree are before the start
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if(depth == 0) {
+        return false;
+      }
+      if(end == null) {
+        return true;
+      }
+      int cmp = end.compareTo(stack[depth - 1].data);
+      return (descending ? cmp < 0 : cmp > 0) || (cmp == 0 && endInclusive);
+    }
+
+    @Override
+    public T next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException("No More Nodes To Visit");
+      }
+      Node<T> node = stack[--depth];
+      for(Node<T> curr = descending ? node.left : node.right; curr != null; curr = descending ? curr.right : curr.left) {
+        stack[depth++] = curr;
+      }
+      last = node.data;
+      return last;
+    }
+
+    /**
+     * Removes one copy of the value last returned by next from the tree. The iterator keeps
+     * walking the version it started on.
+     */
+    @Override
+    public void remove() {
+      if(last == null) {
+        throw new IllegalStateException("next has not been called");
+      }
+      PersistentRedBlackTree.this.remove(last);
+      last = null;
+    }
+  }
+
+  //----- tests -----
+
+  /**
+   * Checks the red black properties and sizes of a subtree.
+   * @return black height of the subtree, or -1 if the subtree is not valid
+   */
+  private static int blackHeight(Node<?> node) {
+    if(node == null) {
+      return 0;
+    }
+    if(node.red && (isRed(node.left) || isRed(node.right))) {
+      return -1;
+    }
+    int leftHeight = blackHeight(node.left);
+    int rightHeight = blackHeight(node.right);
+    if(leftHeight < 0 || leftHeight != rightHeight || node.size != 1 + sizeOf(node.left) + sizeOf(node.right)) {
+      return -1;
+    }
+    return leftHeight + (node.red ? 0 : 1);
+  }
+
+  /**
+   * @return true if the tree is a valid red black tree holding exactly the values of expected
+   */
+  private boolean matches(List<Integer> expected) {
+    if(isRed(root.get()) || blackHeight(root.get()) < 0 || size() != expected.size()) {
+      return false;
+    }
+    List<Integer> sorted = new ArrayList<Integer>(expected);
+    Collections.sort(sorted);
+    int i = 0;
+    for(T value: this) {
+      if(!value.equals(sorted.get(i++))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * tests random inserts and removes with duplicates against a list of the same values
+   */
+  @Test
+  public void testAgainstList() {
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<Integer>();
+    List<Integer> expected = new ArrayList<Integer>();
+    Random random = new Random(19);
+    for(int i = 0; i < 3000; i++) {
+      int value = random.nextInt(500);
+      if(random.nextInt(3) == 0) {
+        if(tree.remove(value) != expected.remove((Integer)value)) {
+          Assertions.fail("remove of " + value + " returned the wrong result");
+        }
+      }else {
+        tree.insert(value);
+        expected.add(value);
+      }
+      if(i % 100 == 0 && !tree.matches(expected)) {
+        Assertions.fail("tree does not match the list after " + i + " changes");
+      }
+    }
+    if(!tree.matches(expected)) {
+      Assertions.fail("tree does not match the list");
+    }
+    Collections.sort(expected);
+    if(!tree.first().equals(expected.get(0)) || !tree.last().equals(expected.get(expected.size() - 1))
+       || !tree.select(expected.size() / 2).equals(expected.get(expected.size() / 2))) {
+      Assertions.fail("first, last or select returns a wrong value");
+    }
+    while(!expected.isEmpty()) {
+      if(!tree.remove(expected.remove(expected.size() / 2))) {
+        Assertions.fail("remove did not find a value in the tree");
+      }
+    }
+    if(!tree.isEmpty() || tree.first() != null) {
+      Assertions.fail("tree is not empty after removing every value");
+    }
+  }
+
+  /**
+   * tests that snapshots keep their values while the tree changes, share nodes with the tree,
+   * and can be read by other threads while a writer keeps inserting
+   */
+  @Test
+  public void testSnapshots() throws InterruptedException {
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<Integer>();
+    for(int i = 0; i < 100; i++) {
+      tree.insert(i);
+    }
+    PersistentRedBlackTree<Integer> snapshot = tree.snapshot();
+    Iterator<Integer> old = tree.iterator();
+    for(int i = 0; i < 100; i += 2) {
+      tree.remove(i);
+    }
+    tree.insert(1000);
+    if(snapshot.size() != 100 || !snapshot.contains(0) || snapshot.contains(1000)
+       || tree.size() != 51 || tree.contains(0) || !tree.contains(1000)) {
+      Assertions.fail("snapshot and tree do not keep their own values");
+    }
+    int count = 0;
+    while(old.hasNext()) {
+      if(old.next() != count++) {
+        Assertions.fail("iterator does not walk the version it was created on");
+      }
+    }
+    if(count != 100) {
+      Assertions.fail("iterator does not walk the version it was created on");
+    }
+    snapshot.insert(-1);
+    if(tree.contains(-1) || snapshot.size() != 101) {
+      Assertions.fail("changing a snapshot changes the tree");
+    }
+    PersistentRedBlackTree<Integer> copy = snapshot.snapshot();
+    if(copy.root.get() != snapshot.root.get()) {
+      Assertions.fail("snapshot copies nodes instead of sharing its root");
+    }
+
+    PersistentRedBlackTree<Integer> shared = new PersistentRedBlackTree<Integer>();
+    AtomicBoolean failed = new AtomicBoolean(false);
+    CountDownLatch done = new CountDownLatch(2);
+    Thread writer = new Thread(() -> {
+      for(int i = 0; done.getCount() > 0; i++) {
+        shared.insert(i);
+        if(i >= 1000) {
+          shared.remove(i - 1000);
+        }
+        //keep a window of the last 1000 values so every scan stays the same size
+      }
+    });
+    writer.start();
+    for(int t = 0; t < 2; t++) {
+      new Thread(() -> {
+        try {
+          for(int round = 0; round < 200; round++) {
+            PersistentRedBlackTree<Integer> view = shared.snapshot();
+            int size = view.size();
+            int seen = 0;
+            int first = 0;
+            for(Integer value: view) {
+              if(seen == 0) first = value;
+              if(value != first + seen++) failed.set(true);
+            }
+            if(seen != size || size > 1001 || blackHeight(view.root.get()) < 0) failed.set(true);
+          }
+        }finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+    writer.join();
+    if(failed.get()) {
+      Assertions.fail("a reader saw a snapshot change or an invalid tree");
+    }
+  }
+
+  /**
+   * tests bounded and descending iterators and removing through an iterator
+   */
+  @Test
+  public void testIterators() {
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<Integer>();
+    for(int i = 0; i < 30; i++) {
+      tree.insert(i % 10);
+    }
+    String result = "";
+    for(Iterator<Integer> it = tree.descendingIterator(3, false, 5, true); it.hasNext();) {
+      result += it.next();
+    }
+    if(!result.equals("555444")) {
+      Assertions.fail("descending iterator does not handle bounds");
+    }
+    tree.setIteratorMin(8);
+    result = "";
+    for(Integer value: tree) {
+      result += value;
+    }
+    if(!result.equals("888999")) {
+      Assertions.fail("iterator min is ignored");
+    }
+    tree.setIteratorMin(null);
+    for(Iterator<Integer> it = tree.iterator(); it.hasNext();) {
+      if(it.next() < 5) {
+        it.remove();
+      }
+    }
+    if(tree.size() != 15 || tree.contains(4) || tree.first() != 5 || tree.iterator(6, 5).hasNext()) {
+      Assertions.fail("iterator remove does not remove the returned values");
+    }
+  }
+
+}
@@ -0,0 +1,77 @@
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class represents a node in a RedBlackTreeMap. It inherits from RBTNode, using the node's
+ * data as the key, and adds the value mapped to that key. The node is also the map entry, so
+ * setValue changes the value stored in the tree directly.
+ */
+public class RBTMapNode<K, V> extends RBTNode<K> implements Map.Entry<K, V> {
+
+    // stores the value mapped to this node's key
+    protected V value;
+
+    /**
+     * Constructor that creates a new red node mapping key to value.
+     * @param key the key the new node stores
+     * @param value the value mapped to key
+     */
+    public RBTMapNode(K key, V value) {
+        super(key);
+        this.value = value;
+    }
+
+    /**
+     * @return the key stored in this node
+     */
+    @Override
+    public K getKey() { return this.data; }
+
+    /**
+     * @return the value mapped to this node's key
+     */
+    @Override
+    public V getValue() { return this.value; }
+
+    /**
+     * Replaces the value mapped to this node's key.
+     * @param value the new value
+     * @return the old value
+     */
+    @Override
+    public V setValue(V value) {
+        V old = this.value;
+        this.value = value;
+        return old;
+    }
+
+    /**
+     * Compares this entry to another map entry by key and value, as Map.Entry requires.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof Map.Entry)) {
+            return false;
+        }
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>)other;
+        return Objects.equals(this.data, entry.getKey()) && Objects.equals(this.value, entry.getValue());
+    }
+
+    /**
+     * Returns the hash code of this entry as defined by Map.Entry.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.data) ^ Objects.hashCode(this.value);
+    }
+
+    /**
+     * Returns a string representation for this node.
+     * @return a string representation of the node's key, value and color
+     */
+    @Override
+    public String toString() {
+        return this.data + "=" + this.value + ( this.isRed() ? "(r)" : "(b)" );
+    }
+
+}
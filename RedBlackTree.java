@@ -1,6 +1,51 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
 public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T>{
+  // whether equal values share one node that counts its copies, instead of one node each
+  protected boolean multiset = false;
+  /**
+   * Creates an empty red black tree in multiset mode. Inserting a value that is already in
+   * the tree adds one to the count of the node holding it, without adding a node or
+   * rotating, so many copies of a few values don't make the tree taller. size, rank, select
+   * and removing treat every copy as a separate value, just like in a normal tree.
+   * @return a new empty multiset tree
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> multiset() {
+    RedBlackTree<T> tree = new RedBlackTree<T>();
+    tree.multiset = true;
+    return tree;
+  }
+  /**
+   * Creates an empty red black tree that orders its values with the provided comparator
+   * instead of their natural order. The comparator is used for every insert, lookup, range
+   * and iteration bound of the tree, so custom orders don't need wrapper objects.
+   * @param comparator - orders the values of the tree
+   * @return a new empty tree using the comparator
+   * @throws NullPointerException if comparator is null
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> withComparator(Comparator<? super T> comparator) {
+    RedBlackTree<T> tree = new RedBlackTree<T>();
+    tree.comparator = Objects.requireNonNull(comparator, "comparator is null");
+    return tree;
+  }
   /**
    * inserts a new node in to the red black tree, overrides BSTRotation insertion method
    * @param data - data provided for new node
@@ -22,121 +67,977 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T>{
       return;
       //handles case where tree is empty
     }
-    super.insertHelper(newNode, root);
-    //use normal BST algorithm
+    if(!super.insertHelper(newNode, root, multiset)) {
+      return;
+      //a multiset already holds the value, so its node counts one more copy
+    }
     ensureRedProperty(newNode);
     //use repair operation
     
   }
+  /**
+   * Creates a red black tree holding the provided values in O(n) time, without any comparisons
+   * beyond checking the order and without any rotations.
+   * @param values - values in ascending order, duplicates are allowed
+   * @return a new balanced tree holding the values
+   * @throws NullPointerException if any value is null
+   * @throws IllegalArgumentException if the values are not in ascending order
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> fromSorted(Iterator<? extends T> values) {
+    RedBlackTree<T> tree = new RedBlackTree<T>();
+    tree.loadSorted(values);
+    return tree;
+  }
+  /**
+   * Creates a red black tree holding the values of a sorted array in O(n) time.
+   * @param values - values in ascending order, duplicates are allowed
+   * @return a new balanced tree holding the values
+   * @throws NullPointerException if any value is null
+   * @throws IllegalArgumentException if the values are not in ascending order
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> fromSorted(T[] values) {
+    return fromSorted(Arrays.asList(values).iterator());
+  }
+  /**
+   * Creates a red black tree holding the values of a sorted stream in O(n) time.
+   * @param values - values in ascending order, duplicates are allowed
+   * @return a new balanced tree holding the values
+   * @throws NullPointerException if any value is null
+   * @throws IllegalArgumentException if the values are not in ascending order
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> fromSorted(Stream<? extends T> values) {
+    return fromSorted(values.iterator());
+  }
+  /**
+   * Replaces the contents of this tree with the provided sorted values. Every value gets one
+   * node, the nodes are first chained into a list through their right references and then
+   * linked into a balanced tree in a single in-order pass. All levels are black except the
+   * deepest level of a tree that is not perfect, which is red, so every path has the same
+   * number of black nodes. The tree is left unchanged if an exception is thrown.
+   * @param values - values in ascending order, duplicates are allowed
+   * @throws NullPointerException if any value is null
+   * @throws IllegalArgumentException if the values are not in ascending order
+   */
+  protected void loadSorted(Iterator<? extends T> values) {
+    NodeList<T> list = new NodeList<T>();
+    RBTNode<T> tail = null;
+    int count = 0;
+    while(values.hasNext()) {
+      T data = values.next();
+      if(data == null) {
+        throw new NullPointerException("data is null");
+      }
+      if(tail != null && compare(tail.getData(), data) > 0) {
+        throw new IllegalArgumentException("values are not in ascending order");
+      }
+      RBTNode<T> node = new RBTNode<T>(data);
+      if(tail == null) {
+        list.head = node;
+      }else {
+        tail.right = node;
+      }
+      tail = node;
+      count++;
+      //chain the new node to the end of the list
+    }
+    linkSorted(list, count);
+  }
+  /**
+   * Makes the nodes of a sorted list the whole contents of this tree, linked as a balanced
+   * red black tree.
+   * @param list - list of nodes chained through their right references, in ascending order
+   * @param count - number of nodes in the list
+   */
+  protected void linkSorted(NodeList<T> list, int count) {
+    int redLevel = 0;
+    for(int m = count - 1; m >= 0; m = m / 2 - 1) {
+      redLevel++;
+      //depth of the deepest level, which is only full when the tree is perfect
+    }
+    root = buildBalanced(list, count, 0, redLevel);
+  }
+  /**
+   * Inserts every value of a batch into the tree. The batch is sorted first. When the batch
+   * is small compared to the tree each value is inserted on its own, which costs
+   * O(m log(n + m)) for m values into a tree of n values. When the batch is large enough that
+   * this costs more than O(n + m), the existing nodes are instead merged with the sorted batch
+   * in one in-order pass and the whole tree is relinked as a balanced tree, reusing the
+   * existing nodes.
+   * @param values - values to insert, in any order
+   * @throws NullPointerException if values or any value in it is null, in which case the
+   * tree is unchanged
+   */
+  @SuppressWarnings("unchecked")
+  public void insertAll(Collection<? extends T> values) {
+    Object[] batch = values.toArray();
+    for(Object data : batch) {
+      if(data == null) {
+        throw new NullPointerException("data is null");
+      }
+    }
+    if(batch.length == 0) {
+      return;
+    }
+    Arrays.sort(batch, (Comparator<Object>)(a, b) -> compare((T)a, (T)b));
+    //sort the batch so both paths visit the tree in order
+    int total = size() + batch.length;
+    int log = 32 - Integer.numberOfLeadingZeros(total);
+    if((long)batch.length * log < total) {
+      for(Object data : batch) {
+        insert((T)data);
+      }
+      return;
+    }
+    //flatten the tree in order with a stack, reading each node's right child before reusing
+    //the right reference to chain the merged list
+    ArrayDeque<RBTNode<T>> stack = new ArrayDeque<RBTNode<T>>();
+    for(RBTNode<T> curr = (RBTNode<T>)root; curr != null; curr = curr.childLeft()) {
+      stack.push(curr);
+    }
+    NodeList<T> list = new NodeList<T>();
+    RBTNode<T> tail = null;
+    int next = 0;
+    int nodes = 0;
+    while(!stack.isEmpty() || next < batch.length) {
+      RBTNode<T> node;
+      if(stack.isEmpty() || (next < batch.length && compare((T)batch[next], stack.peek().getData()) < 0)) {
+        T data = (T)batch[next++];
+        if(multiset && tail != null && compare(tail.getData(), data) == 0) {
+          tail.count++;
+          continue;
+          //a multiset counts the copy in the node already holding the value
+        }
+        node = new RBTNode<T>(data);
+        //next batch value comes first
+      }else {
+        node = stack.pop();
+        for(RBTNode<T> curr = node.childRight(); curr != null; curr = curr.childLeft()) {
+          stack.push(curr);
+        }
+        //next existing node comes first, queue up its right subtree
+      }
+      if(tail == null) {
+        list.head = node;
+      }else {
+        tail.right = node;
+      }
+      tail = node;
+      nodes++;
+    }
+    linkSorted(list, nodes);
+  }
+  /**
+   * Writes the values of this tree to a stream in the binary format of TreeFormat, without
+   * the shape of the tree. The stream is flushed but not closed.
+   * @param out - stream to write to
+   * @param codec - writes each value
+   */
+  public void writeTo(OutputStream out, KeyCodec<? super T> codec) throws IOException {
+    TreeFormat.write(this, codec, out, false);
+  }
+  /**
+   * Writes this tree to a stream in the binary format of TreeFormat.
+   * @param out - stream to write to
+   * @param codec - writes each value
+   * @param withShape - whether to also write the shape and colors, so readFrom rebuilds exactly
+   * this tree instead of a balanced one
+   */
+  public void writeTo(OutputStream out, KeyCodec<? super T> codec, boolean withShape) throws IOException {
+    TreeFormat.write(this, codec, out, withShape);
+  }
+  /**
+   * Writes the values of this tree to a channel in the binary format of TreeFormat. The channel
+   * is not closed.
+   * @param out - channel to write to
+   * @param codec - writes each value
+   */
+  public void writeTo(WritableByteChannel out, KeyCodec<? super T> codec) throws IOException {
+    TreeFormat.write(this, codec, Channels.newOutputStream(out), false);
+  }
+  /**
+   * Replaces the contents of this tree with a tree written by writeTo, in O(n) time and
+   * without rotating. The tree is left unchanged if an exception is thrown.
+   * @param in - stream to read from
+   * @param codec - reads each value, must match the codec the tree was written with
+   * @throws IOException if in fails or does not hold a valid tree
+   */
+  public void readFrom(InputStream in, KeyCodec<T> codec) throws IOException {
+    TreeFormat.read(this, codec, in);
+  }
+  /**
+   * Replaces the contents of this tree with a tree written by writeTo, in O(n) time and
+   * without rotating. The tree is left unchanged if an exception is thrown.
+   * @param in - channel to read from
+   * @param codec - reads each value, must match the codec the tree was written with
+   * @throws IOException if in fails or does not hold a valid tree
+   */
+  public void readFrom(ReadableByteChannel in, KeyCodec<T> codec) throws IOException {
+    TreeFormat.read(this, codec, Channels.newInputStream(in));
+  }
+  /**
+   * Links the next size nodes of a list into a balanced subtree, in in-order order.
+   * @param list - list of unlinked nodes, advanced past the nodes used
+   * @param size - number of nodes in the subtree
+   * @param depth - depth of the subtree root in the whole tree
+   * @param redLevel - depth whose nodes are colored red
+   * @return root of the subtree, or null if size is 0
+   */
+  private RBTNode<T> buildBalanced(NodeList<T> list, int size, int depth, int redLevel) {
+    if(size == 0) {
+      return null;
+    }
+    int leftSize = (size - 1) / 2;
+    RBTNode<T> left = buildBalanced(list, leftSize, depth + 1, redLevel);
+    RBTNode<T> node = list.head;
+    list.head = (RBTNode<T>)node.right;
+    //take the next node of the list as the subtree root
+    RBTNode<T> right = buildBalanced(list, size - 1 - leftSize, depth + 1, redLevel);
+    node.up = null;
+    node.left = left;
+    node.right = right;
+    if(left != null) {
+      left.up = node;
+    }
+    if(right != null) {
+      right.up = node;
+    }
+    node.size = node.count + sizeOf(left) + sizeOf(right);
+    node.isRed = depth == redLevel;
+    return node;
+  }
+  /**
+   * Holds the next unused node of the list loadSorted builds the tree from.
+   */
+  protected static class NodeList<R> {
+    RBTNode<R> head = null;
+  }
   /**
    * Checks if a new red node in the RedBlackTree causes a red property violation
    * by having a red parent. If this is not the case, the method terminates without
    * making any changes to the tree. If a red property violation is detected, then
    * the method repairs this violation and any additional red property violations
-   * that are generated as a result of the applied repair operation.
+   * that are generated as a result of the applied repair operation, working its way
+   * up the tree in a loop instead of recursing.
    * @param newNode a newly inserted red node, or a node turned red by previous repair
    */
   protected void ensureRedProperty(RBTNode<T> newNode) {
-      RBTNode<T> grandparent;
-      RBTNode<T> parent;
-      //create initial variables for parent and grandparent refrences
-      if(newNode.parent() == null) {
-        return;
-      }
-      //if recursive call to the root quit
-      else if(!(newNode.parent().isRed) ) {
-        return;
-        //if there is no violation quit
+    RBTNode<T> node = newNode;
+    RBTNode<T> parent = node.parent();
+    //keep references to the current node and its parent so they are only looked up once
+    int depth = 0;
+    int rotations = 0;
+    int recolorings = 0;
+    //only read when metrics are enabled, otherwise the JIT drops them
+    while(parent != null && parent.isRed) {
+      //red parent is never the root so grandparent exists
+      depth++;
+      RBTNode<T> grandparent = parent.parent();
+      if(parent == grandparent.right) {
+        RBTNode<T> aunt = grandparent.childLeft();
+        if(aunt == null || !aunt.isRed) {
+          //parent is a right child and aunt is black
+          if(node != parent.right) {
+            rotate(node, parent);
+            rotations++;
+            parent = node;
+            //if parent and node don't have a right child relationship rotate to align them
+          }
+          boolean grandColor = grandparent.isRed;
+          boolean parentColor = parent.isRed;
+          //store the colors of the nodes to be rotated
+          rotate(parent, grandparent);
+          rotations++;
+          //rotate the nodes
+          grandparent.isRed = parentColor;
+          parent.isRed = grandColor;
+          recolorings += 2;
+          //swap the colors
+          ((RBTNode<T>)this.root).isRed = false;
+          //if root color is affected color it black
+          break;
+        }
+        //if aunt is red recolor the grandparent and its two children
+        grandparent.isRed = true;
+        aunt.isRed = false;
+        parent.isRed = false;
+        recolorings += 3;
       }else {
-        if(newNode.parent().isRightChild()) {
-          //check if parent is a right child
-          if(newNode.parent().parent().childLeft() == null || !newNode.parent().parent().childLeft().isRed) {
-          //if parent is a right child check if aunt is black
-            if(!newNode.isRightChild()) {
-              rotate(newNode, newNode.parent());
-              //if parent and newNode don't have a right child relationship rotate to align them
-              parent = newNode;
-              grandparent = newNode.parent();
-              //make references for next rotation considering new positioning
-            }else {
-              
-              parent = newNode.parent();
-              grandparent = newNode.parent().parent();
-              //otherwise create references for rotation
-            }
-            boolean grandColor = grandparent.isRed;
-            boolean parentColor = parent.isRed;
-            //store the colors of the nodes to be rotated
-            rotate(parent, grandparent);
-            //rotate the nodes
-            grandparent.isRed = parentColor;
-            parent.isRed = grandColor;
-            //swap the colors
-            if(((RBTNode<T>)this.root).isRed) {
-              ((RBTNode<T>)this.root).isRed = false;
-            }
-            //if root color is affected color it black
+        RBTNode<T> aunt = grandparent.childRight();
+        if(aunt == null || !aunt.isRed) {
+          //parent is a left child and aunt is black
+          if(node == parent.right) {
+            rotate(node, parent);
+            rotations++;
+            parent = node;
+            //if parent and node don't have a left child relationship rotate to align them
           }
-          else if(newNode.parent().parent().childLeft().isRed) {
-            //if aunt is red 
-            grandparent = newNode.parent().parent();
-            grandparent.isRed = true;
-            grandparent.childLeft().isRed = false;
-            grandparent.childRight().isRed = false;
-            //recolor the grandparent and its two children
-            if(((RBTNode<T>)this.root).isRed) {
-              ((RBTNode<T>)this.root).isRed = false;
-            }
-            //if it affects the root color it black
-            ensureRedProperty(grandparent);
-            //recursive call with grandparent to solve violations that can be caused higher in the tree
-            
+          boolean grandColor = grandparent.isRed;
+          boolean parentColor = parent.isRed;
+          //store the colors of the nodes to be rotated
+          rotate(parent, grandparent);
+          rotations++;
+          //rotate the nodes
+          grandparent.isRed = parentColor;
+          parent.isRed = grandColor;
+          recolorings += 2;
+          //swap the colors
+          ((RBTNode<T>)this.root).isRed = false;
+          //if root color is affected color it black
+          break;
+        }
+        //if aunt is red recolor the grandparent and its two children
+        grandparent.isRed = true;
+        aunt.isRed = false;
+        parent.isRed = false;
+        recolorings += 3;
+      }
+      ((RBTNode<T>)this.root).isRed = false;
+      //if it affects the root color it black
+      node = grandparent;
+      parent = node.parent();
+      //continue with grandparent to solve violations that can be caused higher in the tree
+    }
+    if(TreeMetrics.ENABLED) {
+      TreeMetrics.fixUp(false, depth, rotations, recolorings);
+    }
+  }
+  /**
+   * checks whether a node is red, null children count as black leaves
+   * @param node - node to check, may be null
+   * @return true if node is not null and red, false otherwise
+   */
+  private boolean isRed(RBTNode<T> node) {
+    return node != null && node.isRed;
+  }
+  /**
+   * Removes a node from the red black tree. Unlinks the node the same way the BST delete does
+   * and then, if a black node was taken out of the tree, repairs the black height
+   * of the affected path with the double black fix-up.
+   * @param node - node to remove, must be in this tree
+   */
+  @Override
+  protected void deleteNode(BinaryTreeNode<T> node) {
+    RBTNode<T> removed = (RBTNode<T>)node;
+    RBTNode<T> replacement;
+    //node that moves into the position that lost a node
+    RBTNode<T> replacementParent;
+    //parent of that position, needed when replacement is a null leaf
+    boolean removedBlack = !removed.isRed;
+    //color of the node taken out of its position
+    if(removed.childLeft() == null) {
+      replacement = removed.childRight();
+      replacementParent = removed.parent();
+      transplant(removed, replacement);
+    }else if(removed.childRight() == null) {
+      replacement = removed.childLeft();
+      replacementParent = removed.parent();
+      transplant(removed, replacement);
+    }else {
+      RBTNode<T> successor = (RBTNode<T>)minNode(removed.right);
+      removedBlack = !successor.isRed;
+      replacement = successor.childRight();
+      if(successor.parent() == removed) {
+        replacementParent = successor;
+      }else {
+        replacementParent = successor.parent();
+        transplant(successor, replacement);
+        successor.right = removed.right;
+        successor.right.up = successor;
+        //successor takes over removed node's right subtree
+      }
+      transplant(removed, successor);
+      successor.left = removed.left;
+      successor.left.up = successor;
+      successor.isRed = removed.isRed;
+      //successor takes removed node's place and color
+    }
+    resizeUpward(replacementParent);
+    //every subtree that lost the removed node or moved the successor is on this path
+    removed.up = null;
+    removed.left = null;
+    removed.right = null;
+    removed.size = removed.count;
+    //detach removed node from the tree
+    if(removedBlack) {
+      ensureBlackHeight(replacement, replacementParent);
+      //a black node left the path so it is one black node short
+    }
+  }
+  /**
+   * Repairs a double black violation after a delete. The provided position has one
+   * fewer black node on its paths than its sibling does. Red siblings are rotated up so
+   * the sibling becomes black, black siblings with black children are recolored and the
+   * violation moves up to the parent, otherwise a rotation at the parent ends the repair.
+   * @param node - node in the double black position, may be null
+   * @param parent - parent of the double black position, null when the position is the root
+   */
+  protected void ensureBlackHeight(RBTNode<T> node, RBTNode<T> parent) {
+    int depth = 0;
+    int rotations = 0;
+    int recolorings = 0;
+    //only read when metrics are enabled, otherwise the JIT drops them
+    while(node != root && !isRed(node)) {
+      depth++;
+      if(node == parent.childLeft()) {
+        RBTNode<T> sibling = parent.childRight();
+        if(sibling.isRed) {
+          sibling.isRed = false;
+          parent.isRed = true;
+          rotate(sibling, parent);
+          rotations++;
+          recolorings += 2;
+          sibling = parent.childRight();
+          //turn the red sibling case into a black sibling case
+        }
+        if(!isRed(sibling.childLeft()) && !isRed(sibling.childRight())) {
+          sibling.isRed = true;
+          recolorings++;
+          node = parent;
+          parent = node.parent();
+          //sibling gives up a black node, parent now carries the violation
+        }else {
+          if(!isRed(sibling.childRight())) {
+            sibling.childLeft().isRed = false;
+            sibling.isRed = true;
+            rotate(sibling.childLeft(), sibling);
+            rotations++;
+            recolorings += 2;
+            sibling = parent.childRight();
+            //move the red nephew to the outside
           }
+          sibling.isRed = parent.isRed;
+          parent.isRed = false;
+          sibling.childRight().isRed = false;
+          rotate(sibling, parent);
+          rotations++;
+          recolorings += 3;
+          //rotation adds a black node to the short side
+          node = (RBTNode<T>)root;
+          parent = null;
+        }
+      }else {
+        RBTNode<T> sibling = parent.childLeft();
+        if(sibling.isRed) {
+          sibling.isRed = false;
+          parent.isRed = true;
+          rotate(sibling, parent);
+          rotations++;
+          recolorings += 2;
+          sibling = parent.childLeft();
+          //turn the red sibling case into a black sibling case
+        }
+        if(!isRed(sibling.childLeft()) && !isRed(sibling.childRight())) {
+          sibling.isRed = true;
+          recolorings++;
+          node = parent;
+          parent = node.parent();
+          //sibling gives up a black node, parent now carries the violation
         }else {
-            if(newNode.parent().parent().childRight() == null || !newNode.parent().parent().childRight().isRed) {
-              //check if aunt is black
-              if(newNode.isRightChild()) {
-                rotate(newNode, newNode.parent());
-                //if parent and new node don't have a left child relationship rotate to align them
-                parent = newNode;
-                grandparent = newNode.parent();
-                //make references for next rotation considering new positioning
-              }else {
-                parent = newNode.parent();
-                grandparent = newNode.parent().parent();
-                //otherwise make references for rotation
-                
-              }
-              boolean grandColor = grandparent.isRed;
-              boolean parentColor = parent.isRed;
-              //store the colors of the nodes to be rotated
-              rotate(parent, grandparent);
-              //rotate the nodes
-              grandparent.isRed = parentColor;
-              parent.isRed = grandColor;
-              //swap the colors 
-              if(((RBTNode<T>)this.root).isRed) {
-                ((RBTNode<T>)this.root).isRed = false;
-              }
-              //if root color is affected color it black
-            }
-            else if(newNode.parent().parent().childRight().isRed) {
-              //if aunt is red
-              grandparent = newNode.parent().parent();
-              grandparent.isRed = true;
-              grandparent.childLeft().isRed = false;
-              grandparent.childRight().isRed = false;
-              //recolor grandparent and two children
-              if(((RBTNode<T>)this.root).isRed) {
-                ((RBTNode<T>)this.root).isRed = false;
-              }
-              //if root is recolored color it black
-              ensureRedProperty(grandparent);
-              //recursive call to solve violation that can be caused higher in the tree
-              
-            }
+          if(!isRed(sibling.childLeft())) {
+            sibling.childRight().isRed = false;
+            sibling.isRed = true;
+            rotate(sibling.childRight(), sibling);
+            rotations++;
+            recolorings += 2;
+            sibling = parent.childLeft();
+            //move the red nephew to the outside
+          }
+          sibling.isRed = parent.isRed;
+          parent.isRed = false;
+          sibling.childLeft().isRed = false;
+          rotate(sibling, parent);
+          rotations++;
+          recolorings += 3;
+          //rotation adds a black node to the short side
+          node = (RBTNode<T>)root;
+          parent = null;
         }
       }
+    }
+    if(node != null) {
+      node.isRed = false;
+      //a red node absorbs the extra black, this also keeps the root black
+    }
+    if(TreeMetrics.ENABLED) {
+      TreeMetrics.fixUp(true, depth, rotations, recolorings);
+    }
+  }
+  /**
+   * Creates an empty tree of the same kind as this tree, used by split to hold the values it
+   * moves out of this tree.
+   * @return a new empty tree
+   */
+  protected RedBlackTree<T> emptyTree() {
+    return new RedBlackTree<T>();
+  }
+  /**
+   * Moves every value of right and the pivot into this tree in O(log n) time. Every value in
+   * this tree must be smaller than or equal to pivot, and every value in right must be
+   * bigger than or equal to pivot. The right tree is left empty.
+   * @param pivot - value that sits between the two trees
+   * @param right - tree holding the bigger values
+   * @throws NullPointerException if pivot or right is null
+   * @throws IllegalArgumentException if the values are not ordered as required, or right
+   * is this tree
+   */
+  public void join(T pivot, RedBlackTree<T> right) {
+    if(pivot == null) {
+      throw new NullPointerException("data is null");
+    }
+    if(right == this) {
+      throw new IllegalArgumentException("can't join a tree with itself");
+    }
+    checkSameOrder(right);
+    if((root != null && compare(lastNode((RBTNode<T>)root).getData(), pivot) > 0)
+       || (right.root != null && compare(pivot, minNode(right.root).getData()) > 0)) {
+      throw new IllegalArgumentException("values are not ordered around the pivot");
+    }
+    Subtree<T> joined = joinNodes(wholeTree(root), new RBTNode<T>(pivot), wholeTree(right.root));
+    right.root = null;
+    setRoot(joined.root);
+  }
+  /**
+   * Moves every value that is bigger than or equal to key out of this tree and into a new
+   * tree, in O(log n) time. Values smaller than key stay in this tree.
+   * @param key - the smallest value that is moved
+   * @return a new tree holding the moved values
+   * @throws NullPointerException if key is null
+   */
+  public RedBlackTree<T> split(Comparable<T> key) {
+    if(key == null) {
+      throw new NullPointerException("data is null");
+    }
+    Split<T> parts = splitNodes(wholeTree(root), key, false);
+    RedBlackTree<T> right = emptyTree();
+    right.multiset = multiset;
+    right.comparator = comparator;
+    setRoot(parts.left.root);
+    right.setRoot(parts.right.root);
+    return right;
+  }
+  /**
+   * Moves every value of other into this tree. Duplicates are kept, so the tree ends up with
+   * the values of both trees. Uses split and join on the two trees instead of inserting
+   * value by value, which takes O(m log(n/m + 1)) work for trees of m and n values, and runs
+   * independent halves in parallel on the common ForkJoinPool. The other tree is left empty.
+   * @param other - tree whose values are added
+   * @throws IllegalArgumentException if other is this tree
+   */
+  public void union(RedBlackTree<T> other) {
+    setOperation(other, UNION);
+  }
+  /**
+   * Keeps only the values of this tree that also appear in other, with all of their
+   * duplicates in this tree. Uses split and join like union. The other tree is left empty.
+   * @param other - tree of values to keep
+   * @throws IllegalArgumentException if other is this tree
+   */
+  public void intersection(RedBlackTree<T> other) {
+    setOperation(other, INTERSECTION);
+  }
+  /**
+   * Removes every value of this tree that appears in other, including all of its
+   * duplicates. Uses split and join like union. The other tree is left empty.
+   * @param other - tree of values to remove
+   * @throws IllegalArgumentException if other is this tree
+   */
+  public void difference(RedBlackTree<T> other) {
+    setOperation(other, DIFFERENCE);
+  }
+  // the set operations run by SetOperation tasks
+  private static final int UNION = 0;
+  private static final int INTERSECTION = 1;
+  private static final int DIFFERENCE = 2;
+  // subtrees with fewer values than this together are combined without forking tasks
+  private static final int PARALLEL_THRESHOLD = 4096;
+  /**
+   * Runs a set operation between this tree and other and stores the result in this tree.
+   */
+  private void setOperation(RedBlackTree<T> other, int operation) {
+    if(other == this) {
+      throw new IllegalArgumentException("can't combine a tree with itself");
+    }
+    checkSameOrder(other);
+    Subtree<T> result = ForkJoinPool.commonPool().invoke(
+        new SetOperation(operation, wholeTree(root), wholeTree(other.root)));
+    other.root = null;
+    setRoot(result.root);
+  }
+  /**
+   * Makes sure other orders its values the same way as this tree, so their nodes can be
+   * combined.
+   * @throws IllegalArgumentException if the trees use different comparators
+   */
+  private void checkSameOrder(RedBlackTree<T> other) {
+    if(!Objects.equals(comparator, other.comparator)) {
+      throw new IllegalArgumentException("trees are ordered by different comparators");
+    }
+  }
+  /**
+   * Makes node the root of this tree and colors it black.
+   * @param node - root of a detached valid subtree, may be null
+   */
+  private void setRoot(RBTNode<T> node) {
+    root = node;
+    if(node != null) {
+      node.up = null;
+      node.isRed = false;
+    }
+  }
+  /**
+   * Task that combines two detached subtrees, forking the left halves when the subtrees are
+   * large.
+   */
+  private class SetOperation extends RecursiveTask<Subtree<T>> {
+    private static final long serialVersionUID = 1L;
+    private final int operation;
+    private final Subtree<T> a;
+    private final Subtree<T> b;
+
+    SetOperation(int operation, Subtree<T> a, Subtree<T> b) {
+      this.operation = operation;
+      this.a = a;
+      this.b = b;
+    }
+
+    @Override
+    protected Subtree<T> compute() {
+      if(a.root == null) {
+        return operation == UNION ? b : a;
+      }
+      if(b.root == null) {
+        return operation == INTERSECTION ? b : a;
+      }
+      boolean parallel = a.root.size + b.root.size > PARALLEL_THRESHOLD;
+      RBTNode<T> pivot = a.root;
+      Subtree<T> aLeft = detachLeft(pivot, a.height);
+      Subtree<T> aRight = detachRight(pivot, a.height);
+      T key = pivot.getData();
+      if(operation == UNION) {
+        Split<T> bParts = splitNodes(b, key, false);
+        //values of b smaller than key go left, the rest go right
+        Split<T> halves = combine(aLeft, bParts.left, aRight, bParts.right, parallel);
+        return joinNodes(halves.left, pivot, halves.right);
+      }
+      Split<T> bLower = splitNodes(b, key, false);
+      Split<T> bUpper = splitNodes(bLower.right, key, true);
+      boolean found = bUpper.left.root != null;
+      //b is split into values smaller than, equal to and bigger than key
+      Split<T> aLower = splitNodes(aLeft, key, false);
+      Split<T> aUpper = splitNodes(aRight, key, true);
+      //duplicates of key in a can be on both sides of the pivot, collect them with it
+      Split<T> halves = combine(aLower.left, bLower.left, aUpper.right, bUpper.right, parallel);
+      boolean keep = operation == INTERSECTION ? found : !found;
+      if(keep) {
+        Subtree<T> equal = joinNodes(aLower.right, pivot, aUpper.left);
+        return concatNodes(concatNodes(halves.left, equal), halves.right);
+      }
+      return concatNodes(halves.left, halves.right);
+    }
+
+    /**
+     * Runs the operation on the two pairs of subtrees, the first pair in a forked task when
+     * parallel is true.
+     * @return the result of the first pair as left and of the second pair as right
+     */
+    private Split<T> combine(Subtree<T> a1, Subtree<T> b1, Subtree<T> a2, Subtree<T> b2, boolean parallel) {
+      SetOperation first = new SetOperation(operation, a1, b1);
+      SetOperation second = new SetOperation(operation, a2, b2);
+      if(parallel) {
+        first.fork();
+        Subtree<T> right = second.compute();
+        return new Split<T>(first.join(), right);
+      }
+      Subtree<T> left = first.compute();
+      return new Split<T>(left, second.compute());
+    }
+  }
+  /**
+   * A detached subtree together with its black height, so joins don't walk the tree to find
+   * it.
+   */
+  private static class Subtree<R> {
+    final RBTNode<R> root;
+    // black nodes on every path from root to a null leaf, counting root as black even if it
+    // is red, since joins make the roots of their subtrees black
+    final int height;
+
+    Subtree(RBTNode<R> root, int height) {
+      this.root = root;
+      this.height = height;
+    }
+  }
+  /**
+   * The two subtrees a subtree is split into.
+   */
+  private static class Split<R> {
+    Subtree<R> left;
+    Subtree<R> right;
+
+    Split(Subtree<R> left, Subtree<R> right) {
+      this.left = left;
+      this.right = right;
+    }
+  }
+  /**
+   * Wraps the root of a whole tree, finding its black height once.
+   */
+  private Subtree<T> wholeTree(BinaryTreeNode<T> root) {
+    return new Subtree<T>((RBTNode<T>)root, blackHeightOf((RBTNode<T>)root));
+  }
+  /**
+   * Detaches and returns the left subtree of node.
+   * @param height - black height of node, counting node as black
+   */
+  private Subtree<T> detachLeft(RBTNode<T> node, int height) {
+    RBTNode<T> child = detachLeft(node);
+    return new Subtree<T>(child, child == null ? 0 : height - (child.isRed ? 0 : 1));
+  }
+  /**
+   * Detaches and returns the right subtree of node.
+   * @param height - black height of node, counting node as black
+   */
+  private Subtree<T> detachRight(RBTNode<T> node, int height) {
+    RBTNode<T> child = detachRight(node);
+    return new Subtree<T>(child, child == null ? 0 : height - (child.isRed ? 0 : 1));
+  }
+  /**
+   * Detaches and returns the left subtree of node.
+   */
+  private RBTNode<T> detachLeft(RBTNode<T> node) {
+    RBTNode<T> child = node.childLeft();
+    node.left = null;
+    if(child != null) {
+      child.up = null;
+    }
+    node.size = node.count + sizeOf(node.right);
+    return child;
+  }
+  /**
+   * Detaches and returns the right subtree of node.
+   */
+  private RBTNode<T> detachRight(RBTNode<T> node) {
+    RBTNode<T> child = node.childRight();
+    node.right = null;
+    if(child != null) {
+      child.up = null;
+    }
+    node.size = node.count + sizeOf(node.left);
+    return child;
+  }
+  /**
+   * Splits a detached subtree into the values smaller than key, or smaller than or equal to
+   * key when inclusive is true, and the rest. Reuses the nodes of the subtree. The black
+   * heights of the subtrees met on the way down follow from the height of the subtree, so
+   * each join on the way back up costs O(1 + height difference) and the whole split
+   * O(log n).
+   * @param tree - detached valid subtree, its root may be null
+   * @param key - value to split at
+   * @param inclusive - whether values equal to key go to the left part
+   * @return the two detached subtrees
+   */
+  private Split<T> splitNodes(Subtree<T> tree, Comparable<T> key, boolean inclusive) {
+    RBTNode<T> node = tree.root;
+    if(node == null) {
+      return new Split<T>(tree, tree);
+    }
+    Subtree<T> left = detachLeft(node, tree.height);
+    Subtree<T> right = detachRight(node, tree.height);
+    int cmp = compare(key, node.getData());
+    if(cmp > 0 || (inclusive && cmp == 0)) {
+      Split<T> parts = splitNodes(right, key, inclusive);
+      parts.left = joinNodes(left, node, parts.left);
+      //node and its left subtree belong to the left part
+      return parts;
+    }
+    Split<T> parts = splitNodes(left, key, inclusive);
+    parts.right = joinNodes(parts.right, node, right);
+    //node and its right subtree belong to the right part
+    return parts;
+  }
+  /**
+   * Links two detached subtrees and a pivot node into one valid subtree. Every value of left
+   * must not be bigger than the pivot and every value of right must not be smaller. The
+   * shorter subtree is attached at the matching black height along the inner spine of the
+   * taller one, then red red violations on the way back up are fixed with a rotation. Takes
+   * O(1 + difference of the black heights) time.
+   * @param left - detached valid subtree, its root may be null
+   * @param pivot - detached node without children
+   * @param right - detached valid subtree, its root may be null
+   * @return the joined subtree, whose root may be red
+   */
+  private Subtree<T> joinNodes(Subtree<T> left, RBTNode<T> pivot, Subtree<T> right) {
+    if(left.root != null) {
+      left.root.isRed = false;
+    }
+    if(right.root != null) {
+      right.root.isRed = false;
+    }
+    //black roots keep the new red pivot from having a red child
+    int leftHeight = left.height;
+    int rightHeight = right.height;
+    RBTNode<T> joined;
+    int height;
+    if(leftHeight > rightHeight) {
+      joined = joinRight(left.root, leftHeight, pivot, right.root, rightHeight);
+      height = leftHeight + (joined.isRed ? 1 : 0);
+      //a red root is counted as black, and only turns black without other changes
+      if(joined.isRed && isRed(joined.childRight())) {
+        joined.isRed = false;
+      }
+    }else if(rightHeight > leftHeight) {
+      joined = joinLeft(left.root, leftHeight, pivot, right.root, rightHeight);
+      height = rightHeight + (joined.isRed ? 1 : 0);
+      if(joined.isRed && isRed(joined.childLeft())) {
+        joined.isRed = false;
+      }
+    }else {
+      joined = linkNode(left.root, pivot, right.root);
+      pivot.isRed = true;
+      height = leftHeight + 1;
+    }
+    return new Subtree<T>(joined, height);
+  }
+  /**
+   * Attaches the pivot and right subtree on the right spine of left where the black heights
+   * match.
+   */
+  private RBTNode<T> joinRight(RBTNode<T> left, int leftHeight, RBTNode<T> pivot, RBTNode<T> right, int rightHeight) {
+    if(!isRed(left) && leftHeight == rightHeight) {
+      linkNode(left, pivot, right);
+      pivot.isRed = true;
+      return pivot;
+    }
+    int childHeight = leftHeight - (left.isRed ? 0 : 1);
+    RBTNode<T> child = joinRight(detachRight(left), childHeight, pivot, right, rightHeight);
+    left.right = child;
+    child.up = left;
+    left.size += child.size;
+    if(!left.isRed && child.isRed && isRed(child.childRight())) {
+      child.childRight().isRed = false;
+      return rotateDetached(child, left);
+      //red child with red right child under a black node, rotate the child up
+    }
+    return left;
+  }
+  /**
+   * Attaches the pivot and left subtree on the left spine of right where the black heights
+   * match.
+   */
+  private RBTNode<T> joinLeft(RBTNode<T> left, int leftHeight, RBTNode<T> pivot, RBTNode<T> right, int rightHeight) {
+    if(!isRed(right) && leftHeight == rightHeight) {
+      linkNode(left, pivot, right);
+      pivot.isRed = true;
+      return pivot;
+    }
+    int childHeight = rightHeight - (right.isRed ? 0 : 1);
+    RBTNode<T> child = joinLeft(left, leftHeight, pivot, detachLeft(right), childHeight);
+    right.left = child;
+    child.up = right;
+    right.size += child.size;
+    if(!right.isRed && child.isRed && isRed(child.childLeft())) {
+      child.childLeft().isRed = false;
+      return rotateDetached(child, right);
+      //red child with red left child under a black node, rotate the child up
+    }
+    return right;
+  }
+  /**
+   * Makes left and right the children of node and updates its size.
+   * @return node
+   */
+  private RBTNode<T> linkNode(RBTNode<T> left, RBTNode<T> node, RBTNode<T> right) {
+    node.left = left;
+    node.right = right;
+    if(left != null) {
+      left.up = node;
+    }
+    if(right != null) {
+      right.up = node;
+    }
+    node.size = node.count + sizeOf(left) + sizeOf(right);
+    return node;
+  }
+  /**
+   * Rotates child into the position of parent, where parent is the root of a detached
+   * subtree. Keeps parent references and sizes up to date.
+   * @return child, the new root of the subtree
+   */
+  private RBTNode<T> rotateDetached(RBTNode<T> child, RBTNode<T> parent) {
+    if(parent.right == child) {
+      parent.right = child.left;
+      if(child.left != null) {
+        child.left.up = parent;
+      }
+      child.left = parent;
+    }else {
+      parent.left = child.right;
+      if(child.right != null) {
+        child.right.up = parent;
+      }
+      child.right = parent;
+    }
+    child.up = null;
+    parent.up = child;
+    child.size = parent.size;
+    parent.size = parent.count + sizeOf(parent.left) + sizeOf(parent.right);
+    return child;
+  }
+  /**
+   * Joins two detached subtrees where every value of left is not bigger than every value of
+   * right, using the last node of left as the pivot.
+   * @return the joined subtree, its root may be null
+   */
+  private Subtree<T> concatNodes(Subtree<T> left, Subtree<T> right) {
+    if(left.root == null) {
+      return right;
+    }
+    if(right.root == null) {
+      return left;
+    }
+    Split<T> parts = splitLast(left);
+    return joinNodes(parts.left, parts.right.root, right);
+  }
+  /**
+   * Removes the last node from a detached subtree.
+   * @param tree - detached valid subtree, its root must not be null
+   * @return the remaining subtree as left and the detached last node as the root of right
+   */
+  private Split<T> splitLast(Subtree<T> tree) {
+    RBTNode<T> node = tree.root;
+    Subtree<T> left = detachLeft(node, tree.height);
+    Subtree<T> right = detachRight(node, tree.height);
+    if(right.root == null) {
+      return new Split<T>(left, new Subtree<T>(node, 1));
+    }
+    Split<T> parts = splitLast(right);
+    parts.left = joinNodes(left, node, parts.left);
+    return parts;
+  }
+  /**
+   * Counts the black nodes on the left spine of a subtree, which is the same on every path.
+   * @param node - root of a valid subtree, may be null
+   * @return number of black nodes from node down to a null leaf
+   */
+  private int blackHeightOf(RBTNode<T> node) {
+    int height = 0;
+    for(; node != null; node = node.childLeft()) {
+      if(!node.isRed) {
+        height++;
+      }
+    }
+    return height;
+  }
+  /**
+   * Finds the node with the largest value in a subtree.
+   * @param node - root of the subtree, must not be null
+   * @return the right most node of the subtree
+   */
+  private RBTNode<T> lastNode(RBTNode<T> node) {
+    while(node.childRight() != null) {
+      node = node.childRight();
+    }
+    return node;
   }
   /**
   * Tests the rotation and color swap that is done if child has a black aunt
@@ -290,4 +1191,407 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T>{
       Assertions.fail("left subtree leaf doesn't have correct data or color");
     }
   }
+  /**
+   * tests that subtree sizes stay correct through the rotations and recolors done by insert
+   * by checking size, rank and select against the expected sorted order
+   */
+  @Test
+  public void testSubtreeSizes() {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    //insert ascending values which forces a rotation on most inserts
+    for(int i = 1; i <= 100; i++) {
+      tree.insert(i * 2);
+    }
+    if(tree.size() != 100) {
+      Assertions.fail("size doesn't match number of inserted values");
+    }
+    for(int i = 0; i < 100; i++) {
+      //every position should hold the value inserted for it and rank should invert select
+      if(!tree.select(i).equals((i + 1) * 2)) {
+        Assertions.fail("select doesn't return value in sorted position " + i);
+      }
+      if(tree.rank((i + 1) * 2) != i) {
+        Assertions.fail("rank doesn't return position of value " + ((i + 1) * 2));
+      }
+    }
+    if(tree.countInRange(11, 40) != 15) {
+      Assertions.fail("countInRange doesn't count values between min and max");
+    }
+  }
+  /**
+   * tests that removing values, polling both ends and removing a range keep the tree a
+   * valid red black tree with correct sizes
+   */
+  @Test
+  public void testRemove() {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    for(int i = 0; i < 200; i++) {
+      //insert values in a scrambled order with some duplicates
+      tree.insert((i * 37) % 150);
+    }
+    if(tree.remove(1000)) {
+      Assertions.fail("remove returned true for a value not in the tree");
+    }
+    for(int i = 0; i < 150; i += 3) {
+      if(!tree.remove(i)) {
+        Assertions.fail("remove didn't find value " + i);
+      }
+      if(tree.blackHeight((RBTNode<Integer>)tree.root) < 0) {
+        Assertions.fail("tree is not a valid red black tree after removing " + i);
+      }
+    }
+    if(tree.size() != 150) {
+      Assertions.fail("size doesn't match after removing values");
+    }
+    if(!tree.pollFirst().equals(0) || !tree.pollLast().equals(149) || !tree.pollLast().equals(148)) {
+      Assertions.fail("poll doesn't remove the smallest and largest values");
+    }
+    if(tree.removeRange(10, 20) != 12) {
+      Assertions.fail("removeRange doesn't remove all values in the range");
+    }
+    if(tree.contains(11) || !tree.contains(8) || !tree.contains(22)) {
+      Assertions.fail("removeRange removed the wrong values");
+    }
+    if(tree.blackHeight((RBTNode<Integer>)tree.root) < 0 || tree.size() != 135) {
+      Assertions.fail("tree is not valid after polling and removing a range");
+    }
+    while(tree.pollFirst() != null) {
+      //empty out the tree
+    }
+    if(!tree.isEmpty()) {
+      Assertions.fail("tree is not empty after polling every value");
+    }
+  }
+  /**
+   * tests building trees from sorted arrays, iterators and streams of several sizes, and that
+   * unsorted input is rejected without changing the tree
+   */
+  @Test
+  public void testFromSorted() {
+    for(int n = 0; n <= 70; n++) {
+      Integer[] values = new Integer[n];
+      for(int i = 0; i < n; i++) {
+        values[i] = i / 2;
+        //every value appears twice
+      }
+      RedBlackTree<Integer> tree = RedBlackTree.fromSorted(values);
+      if(tree.size() != n || tree.blackHeight((RBTNode<Integer>)tree.root) < 0) {
+        Assertions.fail("tree built from " + n + " values is not a valid red black tree");
+      }
+      if(tree.root != null && ((RBTNode<Integer>)tree.root).isRed) {
+        Assertions.fail("root of tree built from " + n + " values is red");
+      }
+      for(int i = 0; i < n; i++) {
+        if(!tree.select(i).equals(i / 2)) {
+          Assertions.fail("tree built from " + n + " values is not in sorted order");
+        }
+      }
+    }
+    RedBlackTree<String> tree = RedBlackTree.fromSorted(Stream.of("Apple", "Bicycle", "Dolphin"));
+    tree.insert("Cat");
+    if(tree.size() != 4 || !tree.contains("Cat") || tree.blackHeight((RBTNode<String>)tree.root) < 0) {
+      Assertions.fail("tree built from a stream doesn't support inserts");
+    }
+    try {
+      tree.loadSorted(Arrays.asList("Bob", "Ariel").iterator());
+      Assertions.fail("unsorted values were accepted");
+    }catch(IllegalArgumentException e) {
+      
+    }
+    if(tree.size() != 4) {
+      Assertions.fail("tree changed when loading unsorted values failed");
+    }
+  }
+  /**
+   * tests inserting small batches, which insert one value at a time, and large batches,
+   * which merge and relink the tree, including duplicates of values already in the tree
+   */
+  @Test
+  public void testInsertAll() {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    List<Integer> expected = new ArrayList<Integer>();
+    for(int round = 0; round < 6; round++) {
+      List<Integer> batch = new ArrayList<Integer>();
+      int batchSize = round % 2 == 0 ? 300 : 4;
+      for(int i = 0; i < batchSize; i++) {
+        batch.add((i * 7 + round * 13) % 101);
+        //scrambled values that repeat across rounds
+      }
+      tree.insertAll(batch);
+      expected.addAll(batch);
+      Collections.sort(expected);
+      if(tree.size() != expected.size() || tree.blackHeight((RBTNode<Integer>)tree.root) < 0) {
+        Assertions.fail("tree is not valid after inserting batch " + round);
+      }
+      for(int i = 0; i < expected.size(); i++) {
+        if(!tree.select(i).equals(expected.get(i))) {
+          Assertions.fail("tree is not in sorted order after inserting batch " + round);
+        }
+      }
+    }
+    try {
+      tree.insertAll(Arrays.asList(1, null));
+      Assertions.fail("batch with null was accepted");
+    }catch(NullPointerException e) {
+      
+    }
+    if(tree.size() != expected.size()) {
+      Assertions.fail("tree changed when inserting a batch with null failed");
+    }
+  }
+  /**
+   * tests join and split against a sorted list, including duplicates of the split key and
+   * joining trees of very different heights
+   */
+  @Test
+  public void testJoinSplit() {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    List<Integer> expected = new ArrayList<Integer>();
+    for(int i = 0; i < 2000; i++) {
+      tree.insert((i * 37) % 700);
+      expected.add((i * 37) % 700);
+    }
+    Collections.sort(expected);
+    RedBlackTree<Integer> upper = tree.split(350);
+    int cut = expected.indexOf(350);
+    if(tree.size() != cut || upper.size() != expected.size() - cut
+       || tree.blackHeight((RBTNode<Integer>)tree.root) < 0
+       || upper.blackHeight((RBTNode<Integer>)upper.root) < 0) {
+      Assertions.fail("split trees are not valid");
+    }
+    if(tree.select(cut - 1) != 349 || upper.select(0) != 350) {
+      Assertions.fail("split doesn't move the values bigger than or equal to the key");
+    }
+    RedBlackTree<Integer> small = new RedBlackTree<Integer>();
+    small.insert(1000);
+    upper.join(900, small);
+    tree.join(349, upper);
+    expected.add(cut, 349);
+    expected.add(900);
+    expected.add(1000);
+    //join the short tree to the tall tree, then two trees of similar height
+    if(!small.isEmpty() || tree.size() != expected.size()
+       || tree.blackHeight((RBTNode<Integer>)tree.root) < 0) {
+      Assertions.fail("joined tree is not valid");
+    }
+    for(int i = 0; i < expected.size(); i++) {
+      if(!tree.select(i).equals(expected.get(i))) {
+        Assertions.fail("joined tree is not in sorted order");
+      }
+    }
+    try {
+      tree.join(5, new RedBlackTree<Integer>());
+      Assertions.fail("join accepted a pivot smaller than the tree");
+    }catch(IllegalArgumentException e) {
+      
+    }
+  }
+  /**
+   * tests that the black heights splitNodes and joinNodes pass along match the subtrees they
+   * belong to, so no join needs to walk a spine to find them
+   */
+  @Test
+  public void testSplitHeights() {
+    for(int n = 1; n < 300; n += 7) {
+      for(int key = -1; key <= n; key += 5) {
+        RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+        for(int i = 0; i < n; i++) {
+          tree.insert((i * 31) % n);
+        }
+        Split<Integer> parts = tree.splitNodes(tree.wholeTree(tree.root), key, key % 2 == 0);
+        for(Subtree<Integer> part: List.of(parts.left, parts.right)) {
+          if(part.root != null) {
+            part.root.isRed = false;
+          }
+          if(part.height != tree.blackHeightOf(part.root) || (part.root != null && tree.blackHeight(part.root) < 0)) {
+            Assertions.fail("split of " + n + " values at " + key + " tracked a wrong black height");
+          }
+        }
+        Subtree<Integer> joined = tree.concatNodes(parts.left, parts.right);
+        if(joined.root != null) {
+          joined.root.isRed = false;
+        }
+        if(joined.height != tree.blackHeightOf(joined.root) || tree.sizeOf(joined.root) != n) {
+          Assertions.fail("concat of " + n + " values tracked a wrong black height");
+        }
+      }
+    }
+  }
+  /**
+   * tests union, intersection and difference of trees large enough to run in parallel
+   * against the same operations on sorted lists
+   */
+  @Test
+  public void testSetOperations() {
+    for(int operation = UNION; operation <= DIFFERENCE; operation++) {
+      RedBlackTree<Integer> a = new RedBlackTree<Integer>();
+      RedBlackTree<Integer> b = new RedBlackTree<Integer>();
+      List<Integer> listA = new ArrayList<Integer>();
+      List<Integer> listB = new ArrayList<Integer>();
+      for(int i = 0; i < 20000; i++) {
+        listA.add((i * 7919) % 15000);
+        listB.add((i * 104729) % 30000 + 5000);
+        //overlapping ranges with duplicates in both trees
+      }
+      a.insertAll(listA);
+      b.insertAll(listB);
+      List<Integer> sortedB = new ArrayList<Integer>(listB);
+      Collections.sort(sortedB);
+      List<Integer> expected = new ArrayList<Integer>();
+      if(operation == UNION) {
+        expected.addAll(listA);
+        expected.addAll(listB);
+        a.union(b);
+      }else if(operation == INTERSECTION) {
+        for(Integer value: listA) {
+          if(Collections.binarySearch(sortedB, value) >= 0) {
+            expected.add(value);
+          }
+        }
+        a.intersection(b);
+      }else {
+        for(Integer value: listA) {
+          if(Collections.binarySearch(sortedB, value) < 0) {
+            expected.add(value);
+          }
+        }
+        a.difference(b);
+      }
+      Collections.sort(expected);
+      if(!b.isEmpty() || a.size() != expected.size()
+         || a.blackHeight((RBTNode<Integer>)a.root) < 0) {
+        Assertions.fail("tree is not valid after set operation " + operation);
+      }
+      for(int i = 0; i < expected.size(); i++) {
+        if(!a.select(i).equals(expected.get(i))) {
+          Assertions.fail("wrong values after set operation " + operation);
+        }
+      }
+    }
+  }
+  /**
+   * tests that a multiset tree keeps one node per distinct value while size, select, rank
+   * and removing count every copy, including values added by insertAll
+   */
+  @Test
+  public void testMultiset() {
+    RedBlackTree<Integer> tree = RedBlackTree.multiset();
+    List<Integer> expected = new ArrayList<Integer>();
+    for(int i = 0; i < 3000; i++) {
+      int value = i % 10 == 0 ? i : i % 3;
+      //values 0, 1 and 2 repeated about 900 times each, plus a few distinct values
+      tree.insert(value);
+      expected.add(value);
+    }
+    List<Integer> batch = new ArrayList<Integer>();
+    for(int i = 0; i < 3000; i++) {
+      batch.add(i % 4);
+    }
+    tree.insertAll(batch);
+    expected.addAll(batch);
+    Collections.sort(expected);
+    RBTNode<Integer> root = (RBTNode<Integer>)tree.root;
+    if(tree.size() != 6000 || tree.blackHeight(root) < 0 || tree.countNodes(root) != 303) {
+      Assertions.fail("multiset tree doesn't keep one node per distinct value");
+    }
+    for(int i = 0; i < expected.size(); i += 7) {
+      if(!tree.select(i).equals(expected.get(i))) {
+        Assertions.fail("select doesn't count every copy");
+      }
+    }
+    if(tree.rank(2) != expected.indexOf(2) || tree.countInRange(1, 1) != expected.lastIndexOf(1) - expected.indexOf(1) + 1) {
+      Assertions.fail("rank doesn't count every copy");
+    }
+    if(!tree.remove(3) || tree.pollFirst() != 0 || tree.size() != 5998 || tree.countNodes((RBTNode<Integer>)tree.root) != 303) {
+      Assertions.fail("removing a copy takes the node out of the tree");
+    }
+    int ones = tree.countInRange(1, 1);
+    if(tree.removeRange(1, 1) != ones || tree.contains(1) || tree.blackHeight((RBTNode<Integer>)tree.root) < 0) {
+      Assertions.fail("removeRange doesn't remove every copy");
+    }
+    int[] compares = {0};
+    RedBlackTree<Integer> plain = RedBlackTree.withComparator((a, b) -> { compares[0]++; return a.compareTo(b); });
+    RedBlackTree<Integer> counted = RedBlackTree.multiset();
+    counted.comparator = plain.comparator;
+    for(int i = 0; i < 1000; i++) {
+      plain.insert(i * 2);
+      counted.insert(i * 2);
+    }
+    compares[0] = 0;
+    plain.insert(1001);
+    int plainCompares = compares[0];
+    compares[0] = 0;
+    counted.insert(1001);
+    if(compares[0] != plainCompares) {
+      Assertions.fail("multiset insert of a new value descends the tree more than once");
+    }
+    compares[0] = 0;
+    counted.insert(1000);
+    if(compares[0] > plainCompares + 1 || counted.countInRange(1000, 1000) != 2) {
+      Assertions.fail("multiset insert of a copy descends the tree more than once");
+    }
+  }
+  /**
+   * tests a tree ordered by a comparator instead of the natural order, through insert,
+   * insertAll, lookups, rank and select, removal and split
+   */
+  @Test
+  public void testComparator() {
+    RedBlackTree<Integer> tree = RedBlackTree.withComparator(Comparator.<Integer>reverseOrder());
+    for(int i = 0; i < 100; i++) {
+      tree.insert((i * 37) % 100);
+    }
+    tree.insertAll(Arrays.asList(150, 120, -5));
+    if(tree.select(0) != 150 || tree.select(102) != -5 || tree.rank(90) != 11
+       || tree.blackHeight((RBTNode<Integer>)tree.root) < 0) {
+      Assertions.fail("tree does not keep values in comparator order");
+    }
+    if(!tree.contains(42) || tree.ceiling(200) != 150 || tree.floor(-10) != -5 || tree.higher(50) != 49) {
+      Assertions.fail("lookups don't use the comparator");
+    }
+    if(!tree.remove(99) || tree.pollFirst() != 150 || tree.first() != 120) {
+      Assertions.fail("removing values doesn't use the comparator");
+    }
+    RedBlackTree<Integer> lower = tree.split(10);
+    if(lower.comparator() != tree.comparator() || lower.select(0) != 10 || tree.last() != 11) {
+      Assertions.fail("split doesn't keep the comparator");
+    }
+    try {
+      tree.union(new RedBlackTree<Integer>());
+      Assertions.fail("union accepted a tree with a different order");
+    }catch(IllegalArgumentException e) {
+
+    }
+  }
+  /**
+   * counts the nodes of a subtree, used by the tests
+   */
+  private int countNodes(RBTNode<T> node) {
+    return node == null ? 0 : 1 + countNodes(node.childLeft()) + countNodes(node.childRight());
+  }
+  /**
+   * checks the red black properties and subtree sizes of a subtree, used by the tests
+   * @param node - root of the subtree
+   * @return black height of the subtree, or -1 if the subtree is not valid
+   */
+  protected int blackHeight(RBTNode<T> node) {
+    if(node == null) {
+      return 0;
+    }
+    if(node.isRed && (isRed(node.childLeft()) || isRed(node.childRight()))) {
+      return -1;
+      //red node with a red child
+    }
+    if(node.size != node.count + sizeOf(node.left) + sizeOf(node.right)) {
+      return -1;
+      //size doesn't match the children
+    }
+    int left = blackHeight(node.childLeft());
+    int right = blackHeight(node.childRight());
+    if(left < 0 || left != right) {
+      return -1;
+      //paths don't have the same number of black nodes
+    }
+    return left + (node.isRed ? 0 : 1);
+  }
 }
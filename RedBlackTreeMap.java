@@ -0,0 +1,767 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class is an ordered map from keys to values built on a RedBlackTree whose nodes are
+ * RBTMapNodes. Every key appears at most once. put, get, computeIfAbsent and merge find or
+ * create the node for a key with a single descent of the tree and change its value in place,
+ * and the entries returned by entrySet are the tree's nodes, so setValue also updates the tree
+ * directly.
+ *
+ * The map is a NavigableMap. Its key set is a RedBlackTreeNavigableSet, and the sub maps,
+ * head maps, tail maps and descending maps are live views that take their bounds and order
+ * from a RedBlackTreeNavigableSet of their keys, so navigation in a view is a single descent
+ * of the tree that returns the node holding both the key and the value.
+ */
+public class RedBlackTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+  // tree holding one RBTMapNode per key
+  protected final IterableRedBlackTree<K> tree = new IterableRedBlackTree<K>();
+  // number of nodes added or removed, used to detect functions that change the map
+  private int modCount = 0;
+  // view of every key of the map, which the navigation methods of the map go through
+  private final SubMap all = new SubMap(new RedBlackTreeNavigableSet<K>(tree, null, true, null, true, false, false));
+  // view of the entries, created the first time it is asked for
+  private Set<Map.Entry<K, V>> entrySet = null;
+
+  /**
+   * Creates an empty map that orders its keys with the provided comparator instead of their
+   * natural order.
+   * @param comparator - orders the keys of the map
+   * @return a new empty map using the comparator
+   * @throws NullPointerException if comparator is null
+   */
+  public static <K extends Comparable<K>, V> RedBlackTreeMap<K, V> withComparator(Comparator<? super K> comparator) {
+    RedBlackTreeMap<K, V> map = new RedBlackTreeMap<K, V>();
+    map.tree.comparator = Objects.requireNonNull(comparator, "comparator is null");
+    return map;
+  }
+
+  /**
+   * @return the comparator ordering the keys, or null if they use their natural order
+   */
+  public Comparator<? super K> comparator() {
+    return tree.comparator();
+  }
+
+  /**
+   * finds the node holding key
+   * @param key - key to look for
+   * @return the node, or null if key is not in the map
+   * @throws NullPointerException if key is null
+   */
+  @SuppressWarnings("unchecked")
+  protected RBTMapNode<K, V> findNode(Object key) {
+    if(key == null) {
+      throw new NullPointerException("key is null");
+    }
+    Comparable<K> data = (Comparable<K>)key;
+    BinaryTreeNode<K> curr = tree.root;
+    while(curr != null) {
+      int cmp = tree.compare(data, curr.getData());
+      if(cmp == 0) {
+        return entry(curr);
+      }
+      curr = cmp < 0 ? curr.left : curr.right;
+    }
+    return null;
+  }
+
+  /**
+   * links a new node below parent, updates the sizes of its ancestors and repairs the red
+   * black properties
+   * @param node - new red node
+   * @param parent - node the new node becomes a child of, or null if the tree is empty
+   * @param asLeft - whether the new node becomes the left child of parent
+   */
+  private void attach(RBTMapNode<K, V> node, BinaryTreeNode<K> parent, boolean asLeft) {
+    modCount++;
+    if(parent == null) {
+      node.isRed = false;
+      tree.root = node;
+      return;
+    }
+    if(asLeft) {
+      parent.left = node;
+    }else {
+      parent.right = node;
+    }
+    node.up = parent;
+    for(BinaryTreeNode<K> curr = parent; curr != null; curr = curr.up) {
+      curr.size++;
+      //every ancestor's subtree gained the new node
+    }
+    tree.ensureRedProperty(node);
+  }
+
+  /**
+   * returns the value mapped to key
+   * @param key - key to look up
+   * @return the value, or null if key is not in the map
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public V get(Object key) {
+    RBTMapNode<K, V> node = findNode(key);
+    return node == null ? null : node.value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return findNode(key) != null;
+  }
+
+  /**
+   * maps key to value, replacing the value of the existing node if key is already in the map
+   * @param key - key to map
+   * @param value - value to map key to
+   * @return the old value, or null if key was not in the map
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public V put(K key, V value) {
+    if(key == null) {
+      throw new NullPointerException("key is null");
+    }
+    BinaryTreeNode<K> parent = null;
+    BinaryTreeNode<K> curr = tree.root;
+    int cmp = 0;
+    while(curr != null) {
+      cmp = tree.compare(key, curr.getData());
+      if(cmp == 0) {
+        return entry(curr).setValue(value);
+        //key is already in the map so update the value in place
+      }
+      parent = curr;
+      curr = cmp < 0 ? curr.left : curr.right;
+    }
+    attach(new RBTMapNode<K, V>(key, value), parent, cmp < 0);
+    return null;
+  }
+
+  /**
+   * returns the value mapped to key, first mapping key to the value computed by function if
+   * key is not in the map or mapped to null
+   * @param key - key to look up
+   * @param function - computes the value for key, returning null adds nothing
+   * @return the existing or computed value
+   * @throws NullPointerException if key or function is null
+   * @throws ConcurrentModificationException if function adds or removes keys of this map
+   */
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+    if(key == null || function == null) {
+      throw new NullPointerException("key or function is null");
+    }
+    BinaryTreeNode<K> parent = null;
+    BinaryTreeNode<K> curr = tree.root;
+    int cmp = 0;
+    while(curr != null) {
+      cmp = tree.compare(key, curr.getData());
+      if(cmp == 0) {
+        break;
+      }
+      parent = curr;
+      curr = cmp < 0 ? curr.left : curr.right;
+    }
+    RBTMapNode<K, V> node = entry(curr);
+    if(node != null && node.value != null) {
+      return node.value;
+    }
+    int expectedModCount = modCount;
+    V value = function.apply(key);
+    if(modCount != expectedModCount) {
+      throw new ConcurrentModificationException("function changed the map");
+      //the spot found for the key may no longer be valid
+    }
+    if(value == null) {
+      return null;
+    }
+    if(node != null) {
+      node.value = value;
+    }else {
+      attach(new RBTMapNode<K, V>(key, value), parent, cmp < 0);
+    }
+    return value;
+  }
+
+  /**
+   * maps key to value if key is not in the map or mapped to null, otherwise maps it to the
+   * result of function applied to the old value and value, removing key if that is null
+   * @param key - key to update
+   * @param value - value to map or combine with the old value
+   * @param function - combines the old value and value
+   * @return the new value mapped to key, or null if key was removed
+   * @throws NullPointerException if key, value or function is null
+   * @throws ConcurrentModificationException if function adds or removes keys of this map
+   */
+  @Override
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+    if(key == null || value == null || function == null) {
+      throw new NullPointerException("key, value or function is null");
+    }
+    BinaryTreeNode<K> parent = null;
+    BinaryTreeNode<K> curr = tree.root;
+    int cmp = 0;
+    while(curr != null) {
+      cmp = tree.compare(key, curr.getData());
+      if(cmp == 0) {
+        break;
+      }
+      parent = curr;
+      curr = cmp < 0 ? curr.left : curr.right;
+    }
+    if(curr == null) {
+      attach(new RBTMapNode<K, V>(key, value), parent, cmp < 0);
+      return value;
+    }
+    RBTMapNode<K, V> node = entry(curr);
+    if(node.value == null) {
+      node.value = value;
+      return value;
+    }
+    int expectedModCount = modCount;
+    V merged = function.apply(node.value, value);
+    if(modCount != expectedModCount) {
+      throw new ConcurrentModificationException("function changed the map");
+    }
+    if(merged == null) {
+      deleteNode(node);
+    }else {
+      node.value = merged;
+    }
+    return merged;
+  }
+
+  /**
+   * removes key and its value from the map
+   * @param key - key to remove
+   * @return the value key was mapped to, or null if key was not in the map
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public V remove(Object key) {
+    RBTMapNode<K, V> node = findNode(key);
+    if(node == null) {
+      return null;
+    }
+    deleteNode(node);
+    return node.value;
+  }
+
+  /**
+   * unlinks a node from the tree
+   * @param node - node of this map
+   */
+  private void deleteNode(RBTMapNode<K, V> node) {
+    modCount++;
+    tree.deleteNode(node);
+  }
+
+  @Override
+  public int size() {
+    return tree.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return tree.isEmpty();
+  }
+
+  @Override
+  public void clear() {
+    modCount++;
+    tree.clear();
+  }
+
+  /**
+   * casts a node of the tree to the entry it is
+   * @param node - node of this map's tree, or null
+   * @return the node as an entry, or null if node is null
+   */
+  @SuppressWarnings("unchecked")
+  private RBTMapNode<K, V> entry(BinaryTreeNode<K> node) {
+    return (RBTMapNode<K, V>)node;
+    //every node of tree is an RBTMapNode<K, V> created by this map
+  }
+
+  //----- navigation, through the view of every key -----
+
+  @Override
+  public K firstKey() { return all.firstKey(); }
+
+  @Override
+  public K lastKey() { return all.lastKey(); }
+
+  @Override
+  public K floorKey(K key) { return all.floorKey(key); }
+
+  @Override
+  public K ceilingKey(K key) { return all.ceilingKey(key); }
+
+  @Override
+  public K higherKey(K key) { return all.higherKey(key); }
+
+  @Override
+  public K lowerKey(K key) { return all.lowerKey(key); }
+
+  @Override
+  public Map.Entry<K, V> firstEntry() { return all.firstEntry(); }
+
+  @Override
+  public Map.Entry<K, V> lastEntry() { return all.lastEntry(); }
+
+  @Override
+  public Map.Entry<K, V> floorEntry(K key) { return all.floorEntry(key); }
+
+  @Override
+  public Map.Entry<K, V> ceilingEntry(K key) { return all.ceilingEntry(key); }
+
+  @Override
+  public Map.Entry<K, V> higherEntry(K key) { return all.higherEntry(key); }
+
+  @Override
+  public Map.Entry<K, V> lowerEntry(K key) { return all.lowerEntry(key); }
+
+  @Override
+  public Map.Entry<K, V> pollFirstEntry() { return all.pollFirstEntry(); }
+
+  @Override
+  public Map.Entry<K, V> pollLastEntry() { return all.pollLastEntry(); }
+
+  /**
+   * Returns the keys of the map in ascending order. Removing a key removes it from the map,
+   * adding one is not supported.
+   */
+  @Override
+  public NavigableSet<K> keySet() { return all.keySet(); }
+
+  @Override
+  public NavigableSet<K> navigableKeySet() { return all.navigableKeySet(); }
+
+  @Override
+  public NavigableSet<K> descendingKeySet() { return all.descendingKeySet(); }
+
+  @Override
+  public NavigableMap<K, V> descendingMap() { return all.descendingMap(); }
+
+  @Override
+  public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+    return all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+  }
+
+  @Override
+  public NavigableMap<K, V> headMap(K toKey, boolean inclusive) { return all.headMap(toKey, inclusive); }
+
+  @Override
+  public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) { return all.tailMap(fromKey, inclusive); }
+
+  @Override
+  public SortedMap<K, V> subMap(K fromKey, K toKey) { return subMap(fromKey, true, toKey, false); }
+
+  @Override
+  public SortedMap<K, V> headMap(K toKey) { return headMap(toKey, false); }
+
+  @Override
+  public SortedMap<K, V> tailMap(K fromKey) { return tailMap(fromKey, true); }
+
+  /**
+   * Returns a view of the entries of the map in ascending key order. The entries are the
+   * nodes of the tree, and removing through the view or its iterator removes from the map.
+   */
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if(entrySet == null) {
+      entrySet = new EntrySet(this, all.keys);
+    }
+    return entrySet;
+  }
+
+  /**
+   * Live view of the entries of the map whose keys are in a RedBlackTreeNavigableSet, in the
+   * order of that set. Everything the view does goes through the map, which takes care of
+   * keeping the tree valid.
+   */
+  private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    // keys of the view, whose bounds and order are those of the view
+    private final RedBlackTreeNavigableSet<K> keys;
+    // view of the entries, created the first time it is asked for
+    private Set<Map.Entry<K, V>> entrySet = null;
+
+    SubMap(RedBlackTreeNavigableSet<K> keys) {
+      this.keys = keys;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+      return keys.inRange((K)key) ? RedBlackTreeMap.this.get(key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return keys.contains(key);
+    }
+
+    /**
+     * @throws IllegalArgumentException if key is outside the bounds of the view
+     */
+    @Override
+    public V put(K key, V value) {
+      if(!keys.inRange(key)) {
+        throw new IllegalArgumentException("key is outside the bounds of the view");
+      }
+      return RedBlackTreeMap.this.put(key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+      return keys.inRange((K)key) ? RedBlackTreeMap.this.remove(key) : null;
+    }
+
+    @Override
+    public int size() { return keys.size(); }
+
+    @Override
+    public boolean isEmpty() { return keys.isEmpty(); }
+
+    @Override
+    public void clear() {
+      modCount++;
+      keys.clear();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() { return keys.comparator(); }
+
+    @Override
+    public K firstKey() { return keys.first(); }
+
+    @Override
+    public K lastKey() { return keys.last(); }
+
+    @Override
+    public K floorKey(K key) { return keys.floor(key); }
+
+    @Override
+    public K ceilingKey(K key) { return keys.ceiling(key); }
+
+    @Override
+    public K higherKey(K key) { return keys.higher(key); }
+
+    @Override
+    public K lowerKey(K key) { return keys.lower(key); }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() { return entry(keys.firstNode()); }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() { return entry(keys.lastNode()); }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) { return entry(keys.floorNode(key)); }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) { return entry(keys.ceilingNode(key)); }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) { return entry(keys.higherNode(key)); }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) { return entry(keys.lowerNode(key)); }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+      RBTMapNode<K, V> node = entry(keys.firstNode());
+      if(node != null) {
+        deleteNode(node);
+      }
+      return node;
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+      RBTMapNode<K, V> node = entry(keys.lastNode());
+      if(node != null) {
+        deleteNode(node);
+      }
+      return node;
+    }
+
+    @Override
+    public NavigableSet<K> keySet() { return keys; }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() { return keys; }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() { return keys.descendingSet(); }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+      return new SubMap((RedBlackTreeNavigableSet<K>)keys.descendingSet());
+    }
+
+    /**
+     * @throws IllegalArgumentException if a bound is outside the bounds of this view
+     */
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+      return new SubMap((RedBlackTreeNavigableSet<K>)keys.subSet(fromKey, fromInclusive, toKey, toInclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+      return new SubMap((RedBlackTreeNavigableSet<K>)keys.headSet(toKey, inclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+      return new SubMap((RedBlackTreeNavigableSet<K>)keys.tailSet(fromKey, inclusive));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) { return subMap(fromKey, true, toKey, false); }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) { return headMap(toKey, false); }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) { return tailMap(fromKey, true); }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+      if(entrySet == null) {
+        entrySet = new EntrySet(this, keys);
+      }
+      return entrySet;
+    }
+  }
+
+  /**
+   * Set of the entries of the map or of a view of it, backed by the tree.
+   */
+  private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+    // map or view the entries belong to
+    private final Map<K, V> owner;
+    // keys of owner, in the order of the entries
+    private final RedBlackTreeNavigableSet<K> keys;
+
+    EntrySet(Map<K, V> owner, RedBlackTreeNavigableSet<K> keys) {
+      this.owner = owner;
+      this.keys = keys;
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+      return new EntryIterator(keys);
+    }
+
+    @Override
+    public int size() {
+      return owner.size();
+    }
+
+    @Override
+    public void clear() {
+      owner.clear();
+    }
+  }
+
+  /**
+   * Iterator over the nodes whose keys are in a RedBlackTreeNavigableSet, in the order of that
+   * set, following parent references.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+    // keys the iterator walks
+    private final RedBlackTreeNavigableSet<K> keys;
+    // next node to return, or null when done
+    private BinaryTreeNode<K> next;
+    // node returned last, or null if remove can't be called
+    private RBTMapNode<K, V> last = null;
+
+    EntryIterator(RedBlackTreeNavigableSet<K> keys) {
+      this.keys = keys;
+      this.next = keys.firstNode();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if(next == null) {
+        throw new NoSuchElementException("No More Nodes To Visit");
+      }
+      last = entry(next);
+      next = keys.nextNode(next);
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      if(last == null) {
+        throw new IllegalStateException("next has not been called");
+      }
+      deleteNode(last);
+      //deleting relinks nodes without moving keys between them, so next stays valid
+      last = null;
+    }
+  }
+
+  /**
+   * tests put, get and remove against keys added in scrambled order, checking that the tree
+   * stays valid and entries come out in key order
+   */
+  @Test
+  public void testPutGetRemove() {
+    RedBlackTreeMap<Integer, String> map = new RedBlackTreeMap<Integer, String>();
+    for(int i = 0; i < 500; i++) {
+      int key = (i * 211) % 500;
+      if(map.put(key, "v" + key) != null) {
+        Assertions.fail("put returned an old value for a new key");
+      }
+    }
+    if(!map.put(42, "answer").equals("v42") || map.size() != 500 || !map.get(42).equals("answer")) {
+      Assertions.fail("put does not replace the value of an existing key");
+    }
+    for(int i = 0; i < 500; i += 2) {
+      if(map.remove(i) == null) {
+        Assertions.fail("remove didn't find key " + i);
+      }
+    }
+    if(map.size() != 250 || map.get(4) != null || !map.get(5).equals("v5")
+       || map.tree.blackHeight((RBTNode<Integer>)map.tree.root) < 0) {
+      Assertions.fail("map is not valid after removing keys");
+    }
+    int expected = 1;
+    for(Map.Entry<Integer, String> entry: map.entrySet()) {
+      if(entry.getKey() != expected) {
+        Assertions.fail("entries are not in key order");
+      }
+      expected += 2;
+    }
+    if(map.firstKey() != 1 || map.lastKey() != 499 || map.floorKey(100) != 99 || map.higherKey(499) != null) {
+      Assertions.fail("key navigation returns wrong keys");
+    }
+  }
+
+  /**
+   * tests computeIfAbsent, merge and entry setValue, which update values in place
+   */
+  @Test
+  public void testComputeAndMerge() {
+    RedBlackTreeMap<String, Integer> map = new RedBlackTreeMap<String, Integer>();
+    for(String word: "the cat and the dog and the bird".split(" ")) {
+      map.merge(word, 1, Integer::sum);
+    }
+    if(!map.toString().equals("{and=2, bird=1, cat=1, dog=1, the=3}")) {
+      Assertions.fail("merge does not count words");
+    }
+    if(map.merge("cat", -1, (a, b) -> a + b == 0 ? null : a + b) != null || map.containsKey("cat")) {
+      Assertions.fail("merge does not remove a key when the function returns null");
+    }
+    int[] calls = {0};
+    map.computeIfAbsent("the", key -> ++calls[0]);
+    map.computeIfAbsent("fox", key -> ++calls[0]);
+    map.computeIfAbsent("owl", key -> null);
+    if(calls[0] != 1 || map.get("fox") != 1 || map.containsKey("owl")) {
+      Assertions.fail("computeIfAbsent only computes values for missing keys");
+    }
+    for(Map.Entry<String, Integer> entry: map.entrySet()) {
+      entry.setValue(entry.getValue() * 10);
+    }
+    if(map.get("the") != 30 || map.size() != 5) {
+      Assertions.fail("entry setValue does not update the map");
+    }
+    RedBlackTreeMap<String, Integer> reversed = RedBlackTreeMap.withComparator(Comparator.<String>reverseOrder());
+    reversed.putAll(map);
+    if(!reversed.firstKey().equals("the") || reversed.merge("fox", 5, Integer::sum) != 15) {
+      Assertions.fail("map does not order keys with its comparator");
+    }
+    try {
+      map.computeIfAbsent("ant", key -> map.put("bee", 1));
+      Assertions.fail("computeIfAbsent allowed the function to change the map");
+    }catch(ConcurrentModificationException e) {
+
+    }
+  }
+
+
+  /**
+   * tests the NavigableMap views: bounded and descending sub maps, entry navigation and the
+   * key set, and that changes through a view change the map
+   */
+  @Test
+  public void testNavigableViews() {
+    NavigableMap<Integer, String> map = new RedBlackTreeMap<Integer, String>();
+    for(int i = 0; i < 100; i++) {
+      map.put((i * 37) % 100, "v" + (i * 37) % 100);
+    }
+    NavigableMap<Integer, String> sub = map.subMap(20, true, 30, false);
+    if(sub.size() != 10 || sub.firstKey() != 20 || sub.lastKey() != 29 || sub.containsKey(30) || sub.get(31) != null
+       || !sub.floorEntry(25).getValue().equals("v25") || sub.higherEntry(29) != null || sub.lowerKey(20) != null) {
+      Assertions.fail("sub map does not stay inside its bounds");
+    }
+    NavigableMap<Integer, String> descending = sub.descendingMap();
+    int expected = 29;
+    for(Map.Entry<Integer, String> entry: descending.entrySet()) {
+      if(entry.getKey() != expected-- || !entry.getValue().equals("v" + entry.getKey())) {
+        Assertions.fail("descending map does not return its entries from largest to smallest");
+      }
+    }
+    if(expected != 19 || descending.ceilingKey(25) != 25 || descending.higherKey(25) != 24
+       || descending.headMap(25, true).size() != 5 || descending.firstEntry().getKey() != 29) {
+      Assertions.fail("descending map does not navigate in reverse order");
+    }
+    if(map.headMap(10).size() != 10 || map.tailMap(90, false).size() != 9 || map.lastEntry().getKey() != 99
+       || map.ceilingEntry(-5).getKey() != 0 || map.descendingKeySet().first() != 99) {
+      Assertions.fail("head, tail and entry navigation of the map return wrong keys");
+    }
+    sub.pollFirstEntry();
+    sub.remove(26);
+    sub.put(26, "new");
+    descending.entrySet().removeIf(entry -> entry.getKey() % 2 == 1);
+    if(map.size() != 94 || map.containsKey(20) || !map.get(26).equals("new") || map.containsKey(27) || !map.containsKey(31)
+       || ((RedBlackTreeMap<Integer, String>)map).tree.blackHeight((RBTNode<Integer>)((RedBlackTreeMap<Integer, String>)map).tree.root) < 0) {
+      Assertions.fail("changes through a view do not change the map");
+    }
+    sub.clear();
+    if(!sub.isEmpty() || map.size() != 90 || map.floorKey(29) != 19) {
+      Assertions.fail("clearing a view does not remove its keys from the map");
+    }
+    try {
+      sub.put(30, "out");
+      Assertions.fail("view accepted a key outside its bounds");
+    }catch(IllegalArgumentException e) {
+      //expected
+    }
+    try {
+      map.keySet().add(1000);
+      Assertions.fail("key set added a key without a value");
+    }catch(UnsupportedOperationException e) {
+      //expected
+    }
+  }
+
+}
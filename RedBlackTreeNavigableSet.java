@@ -0,0 +1,397 @@
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * This class is a live NavigableSet view of the values of an IterableRedBlackTree between an
+ * optional lower and upper bound, in ascending or descending order. Nothing is copied: lookups
+ * and iterators go straight to the tree, changes to the tree show up in the view, and changes
+ * made through the view change the tree. Navigation and size() take O(log n) time.
+ *
+ * The tree may hold duplicates, which the view returns as separate values just like the tree's
+ * own iterators. add only inserts values that are not in the tree yet, so a tree that is only
+ * changed through views behaves like a set. The view is also the key set of RedBlackTreeMap and
+ * its sub maps, which navigate through the node methods of the view and don't allow add.
+ */
+public class RedBlackTreeNavigableSet<T extends Comparable<T>> extends AbstractSet<T> implements NavigableSet<T> {
+
+  // tree holding the values
+  private final IterableRedBlackTree<T> tree;
+  // lower bound of the view and whether it is part of the view, lo is null for no bound
+  private final T lo;
+  private final boolean loInclusive;
+  // upper bound of the view and whether it is part of the view, hi is null for no bound
+  private final T hi;
+  private final boolean hiInclusive;
+  // whether the view orders values from largest to smallest
+  private final boolean descending;
+  // whether add may insert values, false for the keys of a map whose nodes also hold values
+  private final boolean addable;
+
+  /**
+   * Creates a view of the values of tree between lo and hi.
+   * @param tree - tree backing the view
+   * @param lo - lower bound, or null for no lower bound
+   * @param loInclusive - whether a value equal to lo is in the view
+   * @param hi - upper bound, or null for no upper bound
+   * @param hiInclusive - whether a value equal to hi is in the view
+   * @param descending - whether the view is in descending order
+   */
+  RedBlackTreeNavigableSet(IterableRedBlackTree<T> tree, T lo, boolean loInclusive, T hi, boolean hiInclusive, boolean descending) {
+    this(tree, lo, loInclusive, hi, hiInclusive, descending, true);
+  }
+
+  /**
+   * Creates a view of the values of tree between lo and hi.
+   * @param addable - whether add may insert values into the tree
+   */
+  RedBlackTreeNavigableSet(IterableRedBlackTree<T> tree, T lo, boolean loInclusive, T hi, boolean hiInclusive, boolean descending,
+                           boolean addable) {
+    if(lo != null && hi != null && tree.compare(lo, hi) > 0) {
+      throw new IllegalArgumentException("lower bound is bigger than upper bound");
+    }
+    this.tree = tree;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+    this.descending = descending;
+    this.addable = addable;
+  }
+
+  /**
+   * @return true if value is below the lower bound of the view
+   */
+  private boolean tooLow(T value) {
+    if(lo == null) {
+      return false;
+    }
+    int cmp = tree.compare(value, lo);
+    return cmp < 0 || (cmp == 0 && !loInclusive);
+  }
+
+  /**
+   * @return true if value is above the upper bound of the view
+   */
+  private boolean tooHigh(T value) {
+    if(hi == null) {
+      return false;
+    }
+    int cmp = tree.compare(value, hi);
+    return cmp > 0 || (cmp == 0 && !hiInclusive);
+  }
+
+  /**
+   * @return true if value is between the bounds of the view
+   */
+  boolean inRange(T value) {
+    return !tooLow(value) && !tooHigh(value);
+  }
+
+  /**
+   * @return true if value is between the bounds of the view, or equal to a bound that is
+   * not part of the view, so it can be used as the bound of a sub view
+   */
+  private boolean inClosedRange(T value) {
+    return (lo == null || tree.compare(value, lo) >= 0) && (hi == null || tree.compare(value, hi) <= 0);
+  }
+
+  // navigation in ascending order of the tree, ignoring the descending flag
+
+  private BinaryTreeNode<T> absLowest() {
+    BinaryTreeNode<T> node = lo == null ? (tree.root == null ? null : tree.minNode(tree.root)) : tree.boundNode(lo, loInclusive, true);
+    return node == null || tooHigh(node.getData()) ? null : node;
+  }
+
+  private BinaryTreeNode<T> absHighest() {
+    BinaryTreeNode<T> node = hi == null ? (tree.root == null ? null : tree.maxNode(tree.root)) : tree.boundNode(hi, hiInclusive, false);
+    return node == null || tooLow(node.getData()) ? null : node;
+  }
+
+  private BinaryTreeNode<T> absCeiling(T value) {
+    if(tooLow(value)) {
+      return absLowest();
+    }
+    BinaryTreeNode<T> found = tree.boundNode(value, true, true);
+    return found == null || tooHigh(found.getData()) ? null : found;
+  }
+
+  private BinaryTreeNode<T> absHigher(T value) {
+    if(tooLow(value)) {
+      return absLowest();
+    }
+    BinaryTreeNode<T> found = tree.boundNode(value, false, true);
+    return found == null || tooHigh(found.getData()) ? null : found;
+  }
+
+  private BinaryTreeNode<T> absFloor(T value) {
+    if(tooHigh(value)) {
+      return absHighest();
+    }
+    BinaryTreeNode<T> found = tree.boundNode(value, true, false);
+    return found == null || tooLow(found.getData()) ? null : found;
+  }
+
+  private BinaryTreeNode<T> absLower(T value) {
+    if(tooHigh(value)) {
+      return absHighest();
+    }
+    BinaryTreeNode<T> found = tree.boundNode(value, false, false);
+    return found == null || tooLow(found.getData()) ? null : found;
+  }
+
+  private static <T> T data(BinaryTreeNode<T> node) {
+    return node == null ? null : node.getData();
+  }
+
+  // navigation in the order of the view, returning the tree's nodes for RedBlackTreeMap
+
+  BinaryTreeNode<T> lowerNode(T value) {
+    return descending ? absHigher(value) : absLower(value);
+  }
+
+  BinaryTreeNode<T> floorNode(T value) {
+    return descending ? absCeiling(value) : absFloor(value);
+  }
+
+  BinaryTreeNode<T> ceilingNode(T value) {
+    return descending ? absFloor(value) : absCeiling(value);
+  }
+
+  BinaryTreeNode<T> higherNode(T value) {
+    return descending ? absLower(value) : absHigher(value);
+  }
+
+  /**
+   * @return the first node of the view, or null if the view is empty
+   */
+  BinaryTreeNode<T> firstNode() {
+    return descending ? absHighest() : absLowest();
+  }
+
+  /**
+   * @return the last node of the view, or null if the view is empty
+   */
+  BinaryTreeNode<T> lastNode() {
+    return descending ? absLowest() : absHighest();
+  }
+
+  /**
+   * @param node - node of the view
+   * @return the node after node in the order of the view, or null if node is the last one
+   */
+  BinaryTreeNode<T> nextNode(BinaryTreeNode<T> node) {
+    BinaryTreeNode<T> next = descending ? tree.predecessor(node) : tree.successor(node);
+    return next == null || (descending ? tooLow(next.getData()) : tooHigh(next.getData())) ? null : next;
+  }
+
+  @Override
+  public T lower(T value) {
+    return data(lowerNode(value));
+  }
+
+  @Override
+  public T floor(T value) {
+    return data(floorNode(value));
+  }
+
+  @Override
+  public T ceiling(T value) {
+    return data(ceilingNode(value));
+  }
+
+  @Override
+  public T higher(T value) {
+    return data(higherNode(value));
+  }
+
+  @Override
+  public T first() {
+    BinaryTreeNode<T> node = firstNode();
+    if(node == null) {
+      throw new NoSuchElementException("set is empty");
+    }
+    return node.getData();
+  }
+
+  @Override
+  public T last() {
+    BinaryTreeNode<T> node = lastNode();
+    if(node == null) {
+      throw new NoSuchElementException("set is empty");
+    }
+    return node.getData();
+  }
+
+  @Override
+  public T pollFirst() {
+    T value = data(firstNode());
+    if(value != null) {
+      tree.remove(value);
+    }
+    return value;
+  }
+
+  @Override
+  public T pollLast() {
+    T value = data(lastNode());
+    if(value != null) {
+      tree.remove(value);
+    }
+    return value;
+  }
+
+  /**
+   * Counts the values in the view in O(log n) time from the subtree sizes of the tree.
+   */
+  @Override
+  public int size() {
+    int lower = lo == null ? 0 : (loInclusive ? tree.rank(lo) : tree.rankInclusive(lo));
+    int upper = hi == null ? tree.size() : (hiInclusive ? tree.rankInclusive(hi) : tree.rank(hi));
+    return Math.max(0, upper - lower);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return absLowest() == null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean contains(Object value) {
+    T data = (T)value;
+    return inRange(data) && tree.contains(data);
+  }
+
+  /**
+   * Inserts value into the tree if it is not in the tree yet.
+   * @throws IllegalArgumentException if value is outside the bounds of the view
+   * @throws UnsupportedOperationException if the view is the key set of a map
+   */
+  @Override
+  public boolean add(T value) {
+    if(!addable) {
+      throw new UnsupportedOperationException("keys can only be added through the map");
+    }
+    if(!inRange(value)) {
+      throw new IllegalArgumentException("value is outside the bounds of the view");
+    }
+    if(tree.contains(value)) {
+      return false;
+    }
+    tree.insert(value);
+    return true;
+  }
+
+  /**
+   * Removes one occurrence of value from the tree.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean remove(Object value) {
+    T data = (T)value;
+    return inRange(data) && tree.remove(data);
+  }
+
+  @Override
+  public void clear() {
+    T first = data(absLowest());
+    if(first != null) {
+      tree.removeRange(first, data(absHighest()));
+      //the first and last values in the view are inclusive bounds for the same range
+    }
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    if(descending) {
+      return tree.descendingIterator(lo, loInclusive, hi, hiInclusive);
+    }
+    return tree.iterator(lo, loInclusive, hi, hiInclusive);
+  }
+
+  @Override
+  public Iterator<T> descendingIterator() {
+    return descendingSet().iterator();
+  }
+
+  @Override
+  public NavigableSet<T> descendingSet() {
+    return new RedBlackTreeNavigableSet<T>(tree, lo, loInclusive, hi, hiInclusive, !descending, addable);
+  }
+
+  @Override
+  public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+    if(descending) {
+      return subView(toElement, toInclusive, fromElement, fromInclusive);
+      //in descending order from is the upper bound
+    }
+    return subView(fromElement, fromInclusive, toElement, toInclusive);
+  }
+
+  @Override
+  public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+    return descending ? subView(toElement, inclusive, null, false) : subView(null, false, toElement, inclusive);
+  }
+
+  @Override
+  public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+    return descending ? subView(null, false, fromElement, inclusive) : subView(fromElement, inclusive, null, false);
+  }
+
+  @Override
+  public SortedSet<T> subSet(T fromElement, T toElement) {
+    return subSet(fromElement, true, toElement, false);
+  }
+
+  @Override
+  public SortedSet<T> headSet(T toElement) {
+    return headSet(toElement, false);
+  }
+
+  @Override
+  public SortedSet<T> tailSet(T fromElement) {
+    return tailSet(fromElement, true);
+  }
+
+  /**
+   * Creates a view with the tighter of the bounds of this view and the provided bounds.
+   * @param from - new lower bound, or null to keep the bound of this view
+   * @param to - new upper bound, or null to keep the bound of this view
+   * @throws IllegalArgumentException if a new bound is outside the bounds of this view
+   */
+  private NavigableSet<T> subView(T from, boolean fromInclusive, T to, boolean toInclusive) {
+    if((from != null && !inClosedRange(from)) || (to != null && !inClosedRange(to))) {
+      throw new IllegalArgumentException("bound is outside the bounds of the view");
+    }
+    if(from == null) {
+      from = lo;
+      fromInclusive = loInclusive;
+    }else if(lo != null && tree.compare(from, lo) == 0) {
+      fromInclusive &= loInclusive;
+    }
+    if(to == null) {
+      to = hi;
+      toInclusive = hiInclusive;
+    }else if(hi != null && tree.compare(to, hi) == 0) {
+      toInclusive &= hiInclusive;
+    }
+    return new RedBlackTreeNavigableSet<T>(tree, from, fromInclusive, to, toInclusive, descending, addable);
+  }
+
+  /**
+   * Returns the comparator of the view, null for ascending natural order.
+   */
+  @Override
+  public Comparator<? super T> comparator() {
+    if(!descending) {
+      return tree.comparator();
+    }
+    return tree.comparator() == null ? Comparator.<T>reverseOrder() : Collections.reverseOrder(tree.comparator());
+  }
+
+}
@@ -20,6 +20,14 @@ public interface SortedCollection<T extends Comparable<T>> {
      */
     public boolean contains(Comparable<T> data);
 
+    /**
+     * Removes one occurrence of data from the collection.
+     * @param data the value to remove from the collection
+     * @return true if a value equal to data was found and removed, 
+     * and false otherwise
+     */
+    public boolean remove(Comparable<T> data);
+
     /**
      * Counts the number of values in the collection, with each duplicate value
      * being counted separately within the value returned.
@@ -0,0 +1,397 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class writes a RedBlackTree as a compact binary snapshot and loads it back in O(n) time
+ * without a single rotation. The snapshot is
+ *
+ *   magic (4 bytes), version (1 byte), flags (1 byte), node count (varint)
+ *   shape bitmap, only with the SHAPE flag: 3 bits per node in pre-order
+ *   keys: every node's key in order through a KeyCodec, followed by its count as a varint
+ *   when the COUNTS flag is set
+ *
+ * Without the shape bitmap the loader links the nodes into a balanced tree the same way
+ * fromSorted does. With it the loader rebuilds exactly the tree that was written, shape and
+ * colors included, checking the red black properties as it goes. Both the writer and the
+ * loader stream: the writer walks the tree through parent references, so it needs no extra
+ * memory, and the loader only keeps the shape bitmap and the nodes it creates.
+ */
+public final class TreeFormat {
+
+  // first bytes of every snapshot, "RBTF"
+  static final int MAGIC = 0x52425446;
+  static final int VERSION = 1;
+  // flag bits: the snapshot has a shape bitmap, the nodes have counts
+  static final int SHAPE = 1;
+  static final int COUNTS = 2;
+  // bits of a node in the shape bitmap
+  private static final int HAS_LEFT = 4;
+  private static final int HAS_RIGHT = 2;
+  private static final int RED = 1;
+  private static final int BUFFER = 1 << 16;
+  // no valid red black tree with an int size is deeper than this
+  private static final int MAX_DEPTH = 64;
+
+  TreeFormat() {}
+
+  /**
+   * Writes tree to out. out is flushed but not closed.
+   * @param tree - tree to write, must not change while it is written
+   * @param codec - writes each key
+   * @param out - stream to write to
+   * @param withShape - whether to also write the shape and colors of the tree, so the loader
+   * rebuilds exactly this tree instead of a balanced one
+   */
+  public static <T extends Comparable<T>> void write(RedBlackTree<T> tree, KeyCodec<? super T> codec, OutputStream out,
+                                                     boolean withShape) throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER));
+    BinaryTreeNode<T> first = tree.root == null ? null : tree.minNode(tree.root);
+    long nodes = 0;
+    for(BinaryTreeNode<T> node = first; node != null; node = tree.successor(node)) {
+      nodes++;
+    }
+    int flags = (withShape ? SHAPE : 0) | (tree.multiset ? COUNTS : 0);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    data.writeByte(flags);
+    KeyCodec.writeVarLong(data, nodes);
+    if(withShape) {
+      writeShape(tree, data);
+    }
+    T previous = null;
+    for(BinaryTreeNode<T> node = first; node != null; node = tree.successor(node)) {
+      codec.write(data, previous, node.data);
+      if(tree.multiset) {
+        KeyCodec.writeVarLong(data, node.count);
+      }
+      previous = node.data;
+    }
+    data.flush();
+  }
+
+  /**
+   * Writes the shape bitmap, 3 bits per node in pre-order packed from the high bit down.
+   */
+  private static <T extends Comparable<T>> void writeShape(RedBlackTree<T> tree, DataOutputStream data) throws IOException {
+    ArrayDeque<RBTNode<T>> stack = new ArrayDeque<RBTNode<T>>();
+    if(tree.root != null) {
+      stack.push((RBTNode<T>)tree.root);
+    }
+    int buffer = 0;
+    int bits = 0;
+    while(!stack.isEmpty()) {
+      RBTNode<T> node = stack.pop();
+      int shape = (node.left != null ? HAS_LEFT : 0) | (node.right != null ? HAS_RIGHT : 0) | (node.isRed ? RED : 0);
+      buffer = (buffer << 3) | shape;
+      bits += 3;
+      if(bits >= 8) {
+        bits -= 8;
+        data.writeByte(buffer >>> bits);
+        buffer &= (1 << bits) - 1;
+      }
+      if(node.right != null) {
+        stack.push(node.childRight());
+      }
+      if(node.left != null) {
+        stack.push(node.childLeft());
+        //left is popped first, so nodes come out in pre-order
+      }
+    }
+    if(bits > 0) {
+      data.writeByte(buffer << (8 - bits));
+    }
+  }
+
+  /**
+   * Replaces the contents of tree with the tree written to in. The tree keeps its own
+   * comparator and multiset mode, and is left unchanged if an exception is thrown. in is read
+   * through a buffer, so bytes after the snapshot may be consumed too.
+   * @param tree - tree to load into
+   * @param codec - reads each key, must match the codec the snapshot was written with
+   * @param in - stream to read from
+   * @throws IOException if in fails or does not hold a valid snapshot
+   */
+  public static <T extends Comparable<T>> void read(RedBlackTree<T> tree, KeyCodec<T> codec, InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER));
+    if(data.readInt() != MAGIC) {
+      throw new IOException("not a red black tree snapshot");
+    }
+    int version = data.readUnsignedByte();
+    if(version != VERSION) {
+      throw new IOException("unsupported snapshot version " + version);
+    }
+    int flags = data.readUnsignedByte();
+    long nodes = KeyCodec.readVarLong(data);
+    if(nodes < 0 || nodes > Integer.MAX_VALUE || (flags & ~(SHAPE | COUNTS)) != 0) {
+      throw new IOException("corrupt snapshot header");
+    }
+    Loader<T> loader = new Loader<T>(tree, codec, data, (flags & COUNTS) != 0);
+    if((flags & SHAPE) != 0) {
+      loader.shape = KeyCodec.readBytes(data, (int)((3 * nodes + 7) / 8));
+      //the node count is not trusted yet, so the bitmap grows as it is read
+      RBTNode<T> root = nodes == 0 ? null : loader.build(0);
+      if(loader.read != nodes || (root != null && root.isRed)) {
+        throw new IOException("corrupt shape bitmap");
+      }
+      tree.root = root;
+      return;
+    }
+    RedBlackTree.NodeList<T> list = new RedBlackTree.NodeList<T>();
+    RBTNode<T> tail = null;
+    for(long i = 0; i < nodes; i++) {
+      RBTNode<T> node = loader.next();
+      if(tail == null) {
+        list.head = node;
+      }else {
+        tail.right = node;
+      }
+      tail = node;
+      //chain the nodes through their right references like loadSorted does
+    }
+    tree.linkSorted(list, (int)nodes);
+  }
+
+  /**
+   * Reads the nodes of one snapshot.
+   */
+  private static final class Loader<T extends Comparable<T>> {
+
+    private final RedBlackTree<T> tree;
+    private final KeyCodec<T> codec;
+    private final DataInputStream data;
+    private final boolean counts;
+    // shape bitmap, and the index of the next node in it
+    private byte[] shape = null;
+    private long read = 0;
+    private T previous = null;
+    // black height of the subtree build returned last
+    private int blackHeight = 0;
+
+    private Loader(RedBlackTree<T> tree, KeyCodec<T> codec, DataInputStream data, boolean counts) {
+      this.tree = tree;
+      this.codec = codec;
+      this.data = data;
+      this.counts = counts;
+    }
+
+    /**
+     * Reads the next key and count into a new node, checking they come in order.
+     */
+    private RBTNode<T> next() throws IOException {
+      T key = codec.read(data, previous);
+      if(key == null || (previous != null && tree.compare(previous, key) > 0)) {
+        throw new IOException("keys are missing or out of order");
+      }
+      RBTNode<T> node = new RBTNode<T>(key);
+      if(counts) {
+        long count = KeyCodec.readVarLong(data);
+        if(count < 1 || count > Integer.MAX_VALUE) {
+          throw new IOException("corrupt count");
+        }
+        node.count = (int)count;
+      }
+      node.size = node.count;
+      previous = key;
+      return node;
+    }
+
+    /**
+     * Rebuilds the subtree whose root is the next node of the shape bitmap, reading keys in
+     * order as the in-order walk reaches them.
+     */
+    private RBTNode<T> build(int depth) throws IOException {
+      if(depth > MAX_DEPTH || read * 3 + 3 > shape.length * 8L) {
+        throw new IOException("corrupt shape bitmap");
+      }
+      long bit = read * 3;
+      int bits = shapeBit(bit) << 2 | shapeBit(bit + 1) << 1 | shapeBit(bit + 2);
+      read++;
+      RBTNode<T> left = (bits & HAS_LEFT) != 0 ? build(depth + 1) : null;
+      int leftBlack = left == null ? 0 : blackHeight;
+      RBTNode<T> node = next();
+      RBTNode<T> right = (bits & HAS_RIGHT) != 0 ? build(depth + 1) : null;
+      int rightBlack = right == null ? 0 : blackHeight;
+      node.isRed = (bits & RED) != 0;
+      if(leftBlack != rightBlack || (node.isRed && ((left != null && left.isRed) || (right != null && right.isRed)))) {
+        throw new IOException("snapshot is not a valid red black tree");
+      }
+      node.left = left;
+      node.right = right;
+      if(left != null) {
+        left.up = node;
+      }
+      if(right != null) {
+        right.up = node;
+      }
+      node.size = node.count + tree.sizeOf(left) + tree.sizeOf(right);
+      blackHeight = leftBlack + (node.isRed ? 0 : 1);
+      return node;
+    }
+
+    private int shapeBit(long index) {
+      return shape[(int)(index >>> 3)] >>> (7 - (int)(index & 7)) & 1;
+    }
+  }
+
+  //----- tests -----
+
+  private static <T extends Comparable<T>> byte[] toBytes(RedBlackTree<T> tree, KeyCodec<? super T> codec, boolean withShape) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    write(tree, codec, bytes, withShape);
+    return bytes.toByteArray();
+  }
+
+  private static <T extends Comparable<T>> java.util.List<T> values(RedBlackTree<T> tree) {
+    java.util.List<T> values = new java.util.ArrayList<T>();
+    for(BinaryTreeNode<T> node = tree.root == null ? null : tree.minNode(tree.root); node != null; node = tree.successor(node)) {
+      values.add(node.data);
+    }
+    return values;
+  }
+
+  /**
+   * tests that balanced and exact loads give back the values, and that the exact load also
+   * gives back the shape and colors
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    Random random = new Random(24);
+    for(int i = 0; i < 5000; i++) {
+      tree.insert(random.nextInt(100000) - 50000);
+    }
+    tree.insert(Integer.MIN_VALUE);
+    tree.insert(Integer.MAX_VALUE);
+    java.util.List<Integer> values = values(tree);
+    RedBlackTree<Integer> balanced = new RedBlackTree<Integer>();
+    balanced.readFrom(new ByteArrayInputStream(toBytes(tree, KeyCodec.INTEGER, false)), KeyCodec.INTEGER);
+    if(!values(balanced).equals(values) || balanced.size() != 5002 || balanced.blackHeight((RBTNode<Integer>)balanced.root) < 0) {
+      Assertions.fail("balanced load does not give back the values as a valid tree");
+    }
+    RedBlackTree<Integer> exact = new RedBlackTree<Integer>();
+    exact.readFrom(new ByteArrayInputStream(toBytes(tree, KeyCodec.INTEGER, true)), KeyCodec.INTEGER);
+    if(!exact.root.toLevelOrderString().equals(tree.root.toLevelOrderString()) || exact.blackHeight((RBTNode<Integer>)exact.root) < 0) {
+      Assertions.fail("exact load does not give back the same shape and colors");
+    }
+    RedBlackTree<Integer> empty = new RedBlackTree<Integer>();
+    empty.readFrom(new ByteArrayInputStream(toBytes(new RedBlackTree<Integer>(), KeyCodec.INTEGER, true)), KeyCodec.INTEGER);
+    if(!empty.isEmpty()) {
+      Assertions.fail("empty tree does not load as an empty tree");
+    }
+  }
+
+  /**
+   * tests delta encoding sizes, multiset counts, and long and string keys
+   */
+  @Test
+  public void testCodecs() throws IOException {
+    RedBlackTree<Long> longs = RedBlackTree.multiset();
+    for(long i = 0; i < 10000; i++) {
+      longs.insert(i / 4);
+    }
+    longs.insert(Long.MIN_VALUE);
+    longs.insert(Long.MAX_VALUE);
+    byte[] bytes = toBytes(longs, KeyCodec.LONG, false);
+    if(bytes.length > 2 * 2502 + 40) {
+      Assertions.fail("sorted keys and counts take more than about two bytes per node");
+    }
+    RedBlackTree<Long> loaded = RedBlackTree.multiset();
+    loaded.readFrom(new ByteArrayInputStream(bytes), KeyCodec.LONG);
+    if(loaded.size() != 10002 || loaded.first() != Long.MIN_VALUE || loaded.last() != Long.MAX_VALUE
+       || loaded.rank(100L) != 401 || !loaded.remove(100L) || loaded.size() != 10001) {
+      Assertions.fail("multiset counts or long keys do not survive a round trip");
+    }
+    RedBlackTree<String> strings = new RedBlackTree<String>();
+    for(String s: new String[] {"apple", "applesauce", "apply", "banana", "band", "\ud83d\ude00a", "\ud83d\ude01b", ""}) {
+      strings.insert(s);
+    }
+    RedBlackTree<String> loadedStrings = new RedBlackTree<String>();
+    loadedStrings.readFrom(new ByteArrayInputStream(toBytes(strings, KeyCodec.STRING, true)), KeyCodec.STRING);
+    if(!loadedStrings.root.toLevelOrderString().equals(strings.root.toLevelOrderString())) {
+      Assertions.fail("string keys do not survive a round trip");
+    }
+  }
+
+  /**
+   * tests that damaged snapshots are rejected and leave the tree unchanged
+   */
+  @Test
+  public void testCorruptSnapshots() throws IOException {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    for(int i = 0; i < 100; i++) {
+      tree.insert(i);
+    }
+    byte[] exact = toBytes(tree, KeyCodec.INTEGER, true);
+    RedBlackTree<Integer> target = new RedBlackTree<Integer>();
+    target.insert(-1);
+    byte[][] damaged = {
+      java.util.Arrays.copyOf(exact, exact.length / 2),
+      exact.clone(),
+      exact.clone(),
+    };
+    damaged[1][0] = 0;
+    //bad magic
+    damaged[2][7] ^= 1;
+    //flip the color of the root in the shape bitmap
+    for(byte[] bytes: damaged) {
+      try {
+        target.readFrom(new ByteArrayInputStream(bytes), KeyCodec.INTEGER);
+        Assertions.fail("damaged snapshot was loaded");
+      }catch(IOException e) {
+        //expected
+      }
+      if(target.size() != 1 || !target.contains(-1)) {
+        Assertions.fail("failed load changed the tree");
+      }
+    }
+  }
+
+  /**
+   * tests that a header or key claiming a huge length fails at the end of the stream instead
+   * of allocating that length
+   */
+  @Test
+  public void testHugeLengths() throws IOException {
+    ByteArrayOutputStream shape = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(shape);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    data.writeByte(SHAPE);
+    KeyCodec.writeVarLong(data, Integer.MAX_VALUE);
+    data.write(new byte[100]);
+    ByteArrayOutputStream key = new ByteArrayOutputStream();
+    data = new DataOutputStream(key);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    data.writeByte(0);
+    KeyCodec.writeVarLong(data, 1);
+    KeyCodec.writeVarLong(data, 0);
+    KeyCodec.writeVarLong(data, Integer.MAX_VALUE);
+    data.writeBytes("abc");
+    try {
+      new RedBlackTree<Integer>().readFrom(new ByteArrayInputStream(shape.toByteArray()), KeyCodec.INTEGER);
+      Assertions.fail("huge shape bitmap was loaded");
+    }catch(EOFException e) {
+      //expected
+    }
+    try {
+      new RedBlackTree<String>().readFrom(new ByteArrayInputStream(key.toByteArray()), KeyCodec.STRING);
+      Assertions.fail("huge string key was loaded");
+    }catch(EOFException e) {
+      //expected
+    }
+  }
+
+}
@@ -0,0 +1,291 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class counts what the red black trees of this JVM spend their time on: comparisons,
+ * rotations, recolorings, how far insert and delete fix-ups move up the tree, and how many nodes
+ * each search visits. Metrics are off unless the JVM starts with -Dredblacktree.metrics=true.
+ * Every hook in the trees is guarded by the static final ENABLED flag, so when it is false the
+ * JIT removes the hooks and the values they would record entirely.
+ *
+ * When enabled the counters are LongAdders, which many threads can bump without contending,
+ * and they are exported through the RedBlackTree:type=TreeMetrics MBean and a periodic JFR
+ * event. Each fix-up can also be recorded as its own JFR event, which is off by default
+ * because a busy tree produces one per insert.
+ */
+public final class TreeMetrics implements TreeMetricsMBean {
+
+  // whether the trees record metrics, fixed when the class is loaded
+  public static final boolean ENABLED = Boolean.getBoolean("redblacktree.metrics");
+  // name the MBean is registered under
+  public static final String OBJECT_NAME = "RedBlackTree:type=TreeMetrics";
+  // histograms have one bucket per length up to this, longer lengths share the last bucket
+  private static final int BUCKETS = 64;
+
+  private static final TreeMetrics INSTANCE = new TreeMetrics();
+
+  private final LongAdder comparisons = new LongAdder();
+  private final LongAdder rotations = new LongAdder();
+  private final LongAdder recolorings = new LongAdder();
+  private final Histogram fixUpDepth = new Histogram();
+  private final Histogram searchPath = new Histogram();
+
+  static {
+    if(ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+      }catch(JMException e) {
+        //another class loader registered its copy first, metrics are still counted
+      }
+      FlightRecorder.addPeriodicEvent(MetricsEvent.class, TreeMetrics::emitTotals);
+    }
+  }
+
+  TreeMetrics() {}
+
+  /**
+   * @return the metrics shared by every tree of this JVM
+   */
+  public static TreeMetrics get() {
+    return INSTANCE;
+  }
+
+  //----- hooks called by the trees, only when ENABLED -----
+
+  static void comparison() {
+    INSTANCE.comparisons.increment();
+  }
+
+  static void rotation() {
+    INSTANCE.rotations.increment();
+  }
+
+  /**
+   * Records a search that visited length nodes.
+   */
+  static void searchPath(int length) {
+    INSTANCE.searchPath.record(length);
+  }
+
+  /**
+   * Records a finished insert or delete fix-up.
+   * @param delete - true for a delete fix-up, false for an insert fix-up
+   * @param depth - number of levels the violation moved up the tree
+   * @param rotations - rotations the fix-up made
+   * @param recolorings - nodes whose color the fix-up changed
+   */
+  static void fixUp(boolean delete, int depth, int rotations, int recolorings) {
+    INSTANCE.fixUpDepth.record(depth);
+    INSTANCE.recolorings.add(recolorings);
+    FixUpEvent event = new FixUpEvent();
+    if(event.shouldCommit()) {
+      event.delete = delete;
+      event.depth = depth;
+      event.rotations = rotations;
+      event.recolorings = recolorings;
+      event.commit();
+    }
+  }
+
+  //----- MBean attributes -----
+
+  @Override
+  public long getComparisons() { return comparisons.sum(); }
+
+  @Override
+  public long getRotations() { return rotations.sum(); }
+
+  @Override
+  public long getRecolorings() { return recolorings.sum(); }
+
+  @Override
+  public long[] getFixUpDepthHistogram() { return fixUpDepth.counts(); }
+
+  @Override
+  public long[] getSearchPathHistogram() { return searchPath.counts(); }
+
+  @Override
+  public double getMeanFixUpDepth() { return fixUpDepth.mean(); }
+
+  @Override
+  public double getMeanSearchPathLength() { return searchPath.mean(); }
+
+  @Override
+  public int getMaxSearchPathLength() { return searchPath.max(); }
+
+  @Override
+  public void reset() {
+    comparisons.reset();
+    rotations.reset();
+    recolorings.reset();
+    fixUpDepth.reset();
+    searchPath.reset();
+  }
+
+  private static void emitTotals() {
+    MetricsEvent event = new MetricsEvent();
+    event.comparisons = INSTANCE.getComparisons();
+    event.rotations = INSTANCE.getRotations();
+    event.recolorings = INSTANCE.getRecolorings();
+    event.meanFixUpDepth = INSTANCE.getMeanFixUpDepth();
+    event.meanSearchPathLength = INSTANCE.getMeanSearchPathLength();
+    event.commit();
+  }
+
+  /**
+   * Histogram of small non-negative lengths with one LongAdder per length.
+   */
+  static final class Histogram {
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS + 1];
+
+    Histogram() {
+      for(int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(int length) {
+      buckets[Math.min(Math.max(length, 0), BUCKETS)].increment();
+    }
+
+    long[] counts() {
+      long[] counts = new long[buckets.length];
+      for(int i = 0; i < counts.length; i++) {
+        counts[i] = buckets[i].sum();
+      }
+      return counts;
+    }
+
+    double mean() {
+      long total = 0;
+      long weighted = 0;
+      long[] counts = counts();
+      for(int i = 0; i < counts.length; i++) {
+        total += counts[i];
+        weighted += i * counts[i];
+      }
+      return total == 0 ? 0.0 : (double)weighted / total;
+    }
+
+    int max() {
+      long[] counts = counts();
+      for(int i = counts.length - 1; i >= 0; i--) {
+        if(counts[i] > 0) {
+          return i;
+        }
+      }
+      return 0;
+    }
+
+    void reset() {
+      for(LongAdder bucket: buckets) {
+        bucket.reset();
+      }
+    }
+  }
+
+  @Name("RedBlackTree.FixUp")
+  @Label("Red Black Tree Fix-up")
+  @Description("One insert or delete fix-up of a red black tree")
+  @Category("Red Black Tree")
+  @Enabled(false)
+  @StackTrace(false)
+  static final class FixUpEvent extends Event {
+    @Label("Delete")
+    boolean delete;
+    @Label("Depth")
+    int depth;
+    @Label("Rotations")
+    int rotations;
+    @Label("Recolorings")
+    int recolorings;
+  }
+
+  @Name("RedBlackTree.Metrics")
+  @Label("Red Black Tree Metrics")
+  @Description("Totals counted by TreeMetrics since the JVM started or the last reset")
+  @Category("Red Black Tree")
+  @Period("1 s")
+  @StackTrace(false)
+  static final class MetricsEvent extends Event {
+    @Label("Comparisons")
+    long comparisons;
+    @Label("Rotations")
+    long rotations;
+    @Label("Recolorings")
+    long recolorings;
+    @Label("Mean Fix-up Depth")
+    double meanFixUpDepth;
+    @Label("Mean Search Path Length")
+    double meanSearchPathLength;
+  }
+
+  /**
+   * tests that the histogram buckets lengths and computes the mean and max
+   */
+  @Test
+  public void testHistogram() {
+    Histogram histogram = new Histogram();
+    histogram.record(2);
+    histogram.record(4);
+    histogram.record(1000);
+    long[] counts = histogram.counts();
+    if(counts[2] != 1 || counts[4] != 1 || counts[BUCKETS] != 1 || histogram.max() != BUCKETS) {
+      Assertions.fail("histogram puts lengths in the wrong buckets");
+    }
+    if(histogram.mean() != (2 + 4 + BUCKETS) / 3.0) {
+      Assertions.fail("histogram mean is wrong");
+    }
+    histogram.reset();
+    if(histogram.max() != 0 || histogram.mean() != 0.0) {
+      Assertions.fail("reset does not clear the histogram");
+    }
+  }
+
+  /**
+   * tests that a tree records its work when metrics are enabled and records nothing otherwise
+   */
+  @Test
+  public void testTreeHooks() {
+    TreeMetrics metrics = TreeMetrics.get();
+    metrics.reset();
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    for(int i = 0; i < 1000; i++) {
+      tree.insert(i);
+    }
+    for(int i = 0; i < 1000; i += 2) {
+      tree.remove(i);
+    }
+    tree.contains(501);
+    if(!ENABLED) {
+      if(metrics.getComparisons() != 0 || metrics.getRotations() != 0 || metrics.getMaxSearchPathLength() != 0) {
+        Assertions.fail("disabled metrics recorded values");
+      }
+      return;
+    }
+    if(metrics.getComparisons() == 0 || metrics.getRotations() == 0 || metrics.getRecolorings() == 0) {
+      Assertions.fail("tree did not record comparisons, rotations or recolorings");
+    }
+    if(metrics.getMaxSearchPathLength() < 5 || metrics.getMaxSearchPathLength() > 2 * 10 + 2) {
+      Assertions.fail("search path lengths are not those of a balanced tree of 1000 nodes");
+    }
+    if(metrics.getFixUpDepthHistogram()[0] == 0 || metrics.getMeanFixUpDepth() <= 0.0) {
+      Assertions.fail("fix-up depths were not recorded");
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+/**
+ * JMX view of the counters and histograms kept by TreeMetrics. Registered as
+ * RedBlackTree:type=TreeMetrics when metrics are enabled.
+ */
+public interface TreeMetricsMBean {
+
+    public long getComparisons(); // compareTo or comparator calls made by tree lookups
+    public long getRotations();
+    public long getRecolorings();
+
+    /**
+     * @return how many insert and delete fix-ups moved up the tree each number of levels,
+     * index i counts fix-ups that took i steps and the last index also counts longer ones
+     */
+    public long[] getFixUpDepthHistogram();
+
+    /**
+     * @return how many searches visited each number of nodes, index i counts searches of
+     * i nodes and the last index also counts longer ones
+     */
+    public long[] getSearchPathHistogram();
+
+    public double getMeanFixUpDepth();
+    public double getMeanSearchPathLength();
+    public int getMaxSearchPathLength();
+
+    /**
+     * Sets every counter and histogram back to zero.
+     */
+    public void reset();
+
+}
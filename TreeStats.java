@@ -0,0 +1,479 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * This class reports the shape of a RedBlackTree and whether it still holds every red black
+ * invariant: the root is black, no red node has a red child, every path from a node down to
+ * a null child has the same number of black nodes, every child's up reference points at its
+ * parent, subtree sizes add up and values are in order.
+ *
+ * full() visits every node, splitting the tree into subtrees that run as tasks on a
+ * ForkJoinPool so trees with hundreds of millions of nodes are checked on every core. sample()
+ * only walks a fixed number of random root to leaf paths, which takes O(samples * log n) time
+ * and is cheap enough for a periodic health check. A sample checks the invariants along the
+ * paths it walks and estimates the statistics from them, so it can miss a broken node that
+ * no path went through.
+ *
+ * The tree must not be changed while its statistics are collected.
+ */
+public final class TreeStats {
+
+  // subtrees with fewer nodes than this are checked by a single task
+  private static final int SEQUENTIAL_THRESHOLD = 1 << 15;
+  // paths longer than this can't be part of a valid tree with an int size
+  private static final int MAX_HEIGHT = 64;
+  // number of violations kept as messages, the rest are only counted
+  private static final int MAX_MESSAGES = 16;
+
+  // whether the statistics were estimated from sampled paths
+  private boolean sampled = false;
+  // number of values in the tree, counting duplicates, as the root reports it
+  private int size = 0;
+  // number of nodes, only known after a full scan
+  private long nodeCount = 0;
+  // number of red nodes, only known after a full scan
+  private long redCount = 0;
+  // fraction of red nodes, or of red nodes on sampled paths
+  private double redRatio = 0.0;
+  // nodes on the longest path from the root to a node, 0 for an empty tree
+  private int height = 0;
+  // black nodes on a path from the root to a null child, counting the root
+  private int blackHeight = 0;
+  // average number of nodes visited to find a value, counting the node holding it
+  private double averageSearchDepth = 0.0;
+  // number of invariant violations found and a description of the first few
+  private long violationCount = 0;
+  private final List<String> violations = new ArrayList<String>();
+
+  TreeStats() {}
+
+  /**
+   * Checks every node of tree on the common ForkJoinPool.
+   * @param tree - tree to check, must not change while it is checked
+   * @return statistics of the tree
+   */
+  public static <T extends Comparable<T>> TreeStats full(RedBlackTree<T> tree) {
+    return full(tree, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Checks every node of tree with tasks on pool.
+   * @param tree - tree to check, must not change while it is checked
+   * @param pool - pool running the tasks
+   * @return statistics of the tree
+   */
+  public static <T extends Comparable<T>> TreeStats full(RedBlackTree<T> tree, ForkJoinPool pool) {
+    TreeStats stats = new TreeStats();
+    BinaryTreeNode<T> root = tree.root;
+    if(root == null) {
+      return stats;
+    }
+    stats.size = root.size;
+    if(((RBTNode<T>)root).isRed) {
+      stats.violation("root is red");
+    }
+    if(root.up != null) {
+      stats.violation("root has a parent");
+    }
+    Part<T> part = pool.invoke(new Scan<T>(tree, (RBTNode<T>)root, 1));
+    stats.nodeCount = part.nodes;
+    stats.redCount = part.red;
+    stats.redRatio = (double)part.red / part.nodes;
+    stats.height = part.height;
+    stats.blackHeight = part.blackHeight;
+    stats.averageSearchDepth = (double)part.depthSum / part.nodes;
+    stats.violationCount += part.violationCount;
+    for(String message: part.violations) {
+      if(stats.violations.size() < MAX_MESSAGES) {
+        stats.violations.add(message);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Walks samples random paths from the root to a null child. Each path goes through the node
+   * holding a random value, chosen by rank, and then continues down to a random null child.
+   * @param tree - tree to check, must not change while it is checked
+   * @param samples - number of paths to walk
+   * @param random - source of the random paths
+   * @return statistics estimated from the paths
+   */
+  public static <T extends Comparable<T>> TreeStats sample(RedBlackTree<T> tree, int samples, Random random) {
+    TreeStats stats = new TreeStats();
+    stats.sampled = true;
+    stats.nodeCount = -1;
+    stats.redCount = -1;
+    BinaryTreeNode<T> root = tree.root;
+    if(root == null) {
+      return stats;
+    }
+    stats.size = root.size;
+    if(((RBTNode<T>)root).isRed) {
+      stats.violation("root is red");
+    }
+    stats.blackHeight = -1;
+    long red = 0;
+    long visited = 0;
+    long depthSum = 0;
+    for(int i = 0; i < samples; i++) {
+      int index = random.nextInt(Math.max(1, stats.size));
+      //walk down by rank to the node holding the value at index
+      RBTNode<T> curr = (RBTNode<T>)root;
+      RBTNode<T> target = null;
+      int depth = 0;
+      int blacks = 0;
+      while(curr != null) {
+        depth++;
+        if(depth > MAX_HEIGHT) {
+          stats.violation("path is longer than a valid tree allows");
+          return stats;
+        }
+        visited++;
+        if(curr.isRed) {
+          red++;
+        }else {
+          blacks++;
+        }
+        stats.checkNode(tree, curr);
+        RBTNode<T> next;
+        if(target == null) {
+          int leftSize = curr.left == null ? 0 : curr.left.size;
+          if(index < leftSize) {
+            next = curr.childLeft();
+          }else if(index < leftSize + curr.count) {
+            target = curr;
+            depthSum += depth;
+            next = random.nextBoolean() ? curr.childLeft() : curr.childRight();
+            //found the value, continue to a random null child
+          }else {
+            index -= leftSize + curr.count;
+            next = curr.childRight();
+          }
+        }else {
+          next = random.nextBoolean() ? curr.childLeft() : curr.childRight();
+        }
+        curr = next;
+      }
+      stats.height = Math.max(stats.height, depth);
+      if(stats.blackHeight == -1) {
+        stats.blackHeight = blacks;
+      }else if(stats.blackHeight != blacks) {
+        stats.violation("paths have " + stats.blackHeight + " and " + blacks + " black nodes");
+      }
+    }
+    stats.redRatio = visited == 0 ? 0.0 : (double)red / visited;
+    stats.averageSearchDepth = samples == 0 ? 0.0 : (double)depthSum / samples;
+    stats.blackHeight = Math.max(stats.blackHeight, 0);
+    return stats;
+  }
+
+  /**
+   * Checks the invariants between a node and its children.
+   */
+  private <T extends Comparable<T>> void checkNode(RedBlackTree<T> tree, RBTNode<T> node) {
+    for(String message: Scan.check(tree, node)) {
+      violation(message);
+    }
+  }
+
+  private void violation(String message) {
+    violationCount++;
+    if(violations.size() < MAX_MESSAGES) {
+      violations.add(message);
+    }
+  }
+
+  /**
+   * Statistics of one subtree, combined bottom up.
+   */
+  private static final class Part<T> {
+    long nodes = 0;
+    long red = 0;
+    int height = 0;
+    int blackHeight = 0;
+    // sum of the depths of the nodes, counting from the root of the whole tree
+    long depthSum = 0;
+    // smallest and largest value, used to check the order of the parent
+    T min = null;
+    T max = null;
+    long violationCount = 0;
+    List<String> violations = Collections.emptyList();
+
+    void violation(String message) {
+      violationCount++;
+      if(violations.isEmpty()) {
+        violations = new ArrayList<String>();
+      }
+      if(violations.size() < MAX_MESSAGES) {
+        violations.add(message);
+      }
+    }
+
+    void addViolations(Part<T> child) {
+      violationCount += child.violationCount - child.violations.size();
+      for(String message: child.violations) {
+        violation(message);
+      }
+    }
+  }
+
+  /**
+   * Task that checks a subtree, forking the checks of its children while the subtree is big.
+   */
+  private static final class Scan<T extends Comparable<T>> extends RecursiveTask<Part<T>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RedBlackTree<T> tree;
+    private final RBTNode<T> node;
+    private final int depth;
+
+    Scan(RedBlackTree<T> tree, RBTNode<T> node, int depth) {
+      this.tree = tree;
+      this.node = node;
+      this.depth = depth;
+    }
+
+    @Override
+    protected Part<T> compute() {
+      return scan(node, depth, node.size >= SEQUENTIAL_THRESHOLD);
+    }
+
+    /**
+     * Checks the subtree below node, which is at the given depth.
+     * @param parallel - whether to fork the check of the left subtree
+     */
+    private Part<T> scan(RBTNode<T> node, int depth, boolean parallel) {
+      Part<T> part = new Part<T>();
+      if(node == null) {
+        return part;
+      }
+      if(depth > MAX_HEIGHT) {
+        part.violation("path is longer than a valid tree allows");
+        return part;
+      }
+      Part<T> left;
+      Part<T> right;
+      if(parallel && node.left != null) {
+        Scan<T> leftTask = new Scan<T>(tree, node.childLeft(), depth + 1);
+        leftTask.fork();
+        right = scanChild(node.childRight(), depth + 1);
+        left = leftTask.join();
+      }else {
+        left = scanChild(node.childLeft(), depth + 1);
+        right = scanChild(node.childRight(), depth + 1);
+      }
+      part.addViolations(left);
+      part.addViolations(right);
+      for(String message: check(tree, node)) {
+        part.violation(message);
+      }
+      if(left.max != null && tree.compare(left.max, node.data) > 0) {
+        part.violation("left subtree of " + node.data + " holds bigger value " + left.max);
+      }
+      if(right.min != null && tree.compare(right.min, node.data) < 0) {
+        part.violation("right subtree of " + node.data + " holds smaller value " + right.min);
+      }
+      if(left.blackHeight != right.blackHeight) {
+        part.violation("children of " + node.data + " have black heights " + left.blackHeight + " and " + right.blackHeight);
+      }
+      part.nodes = 1 + left.nodes + right.nodes;
+      part.red = (node.isRed ? 1 : 0) + left.red + right.red;
+      part.height = 1 + Math.max(left.height, right.height);
+      part.blackHeight = Math.max(left.blackHeight, right.blackHeight) + (node.isRed ? 0 : 1);
+      part.depthSum = depth + left.depthSum + right.depthSum;
+      part.min = left.min != null ? left.min : node.data;
+      part.max = right.max != null ? right.max : node.data;
+      return part;
+    }
+
+    private Part<T> scanChild(RBTNode<T> child, int depth) {
+      return scan(child, depth, child != null && child.size >= SEQUENTIAL_THRESHOLD);
+    }
+
+    /**
+     * Checks the invariants that only involve a node and its children.
+     * @return a description of each broken invariant
+     */
+    static <T extends Comparable<T>> List<String> check(RedBlackTree<T> tree, RBTNode<T> node) {
+      List<String> messages = Collections.emptyList();
+      RBTNode<T> left = node.childLeft();
+      RBTNode<T> right = node.childRight();
+      if(node.isRed && ((left != null && left.isRed) || (right != null && right.isRed))) {
+        messages = add(messages, "red node " + node.data + " has a red child");
+      }
+      if((left != null && left.up != node) || (right != null && right.up != node)) {
+        messages = add(messages, "child of " + node.data + " does not point up at it");
+      }
+      if(node.count < 1 || node.size != node.count + tree.sizeOf(left) + tree.sizeOf(right)) {
+        messages = add(messages, "size of " + node.data + " does not match its children");
+      }
+      return messages;
+    }
+
+    private static List<String> add(List<String> messages, String message) {
+      if(messages.isEmpty()) {
+        messages = new ArrayList<String>();
+      }
+      messages.add(message);
+      return messages;
+    }
+  }
+
+  /**
+   * @return whether the statistics were estimated from sampled paths
+   */
+  public boolean isSampled() { return sampled; }
+
+  /**
+   * @return number of values in the tree, counting duplicates
+   */
+  public int size() { return size; }
+
+  /**
+   * @return number of nodes, or -1 for sampled statistics
+   */
+  public long nodeCount() { return nodeCount; }
+
+  /**
+   * @return number of red nodes, or -1 for sampled statistics
+   */
+  public long redCount() { return redCount; }
+
+  /**
+   * @return fraction of nodes that are red, estimated from the nodes on the paths when sampled
+   */
+  public double redRatio() { return redRatio; }
+
+  /**
+   * @return nodes on the longest path from the root, the longest sampled path when sampled
+   */
+  public int height() { return height; }
+
+  /**
+   * @return black nodes on every path from the root to a null child
+   */
+  public int blackHeight() { return blackHeight; }
+
+  /**
+   * @return average number of nodes visited to find a node, or a value when sampled
+   */
+  public double averageSearchDepth() { return averageSearchDepth; }
+
+  /**
+   * @return the smallest height a binary tree with as many nodes can have
+   */
+  public int optimalHeight() {
+    long nodes = sampled ? size : nodeCount;
+    return 64 - Long.numberOfLeadingZeros(nodes);
+  }
+
+  /**
+   * @return height divided by the optimal height, at most 2 for a valid red black tree
+   */
+  public double heightRatio() {
+    int optimal = optimalHeight();
+    return optimal == 0 ? 1.0 : (double)height / optimal;
+  }
+
+  /**
+   * @return true if no invariant violation was found
+   */
+  public boolean isValid() { return violationCount == 0; }
+
+  /**
+   * @return number of invariant violations found
+   */
+  public long violationCount() { return violationCount; }
+
+  /**
+   * @return descriptions of the first violations found
+   */
+  public List<String> violations() { return Collections.unmodifiableList(violations); }
+
+  @Override
+  public String toString() {
+    return (sampled ? "sampled" : "full") + " TreeStats[size=" + size + ", nodes=" + nodeCount
+        + ", height=" + height + " (optimal " + optimalHeight() + "), blackHeight=" + blackHeight
+        + ", redRatio=" + String.format("%.3f", redRatio) + ", averageSearchDepth="
+        + String.format("%.2f", averageSearchDepth) + ", violations=" + violationCount + "]";
+  }
+
+  /**
+   * tests that full and sampled statistics of a valid tree agree with its shape
+   */
+  @Test
+  public void testValidTree() {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    for(int i = 0; i < 100000; i++) {
+      tree.insert((i * 7919) % 100000);
+    }
+    for(int i = 0; i < 10; i++) {
+      tree.insert(5);
+    }
+    TreeStats full = TreeStats.full(tree);
+    if(!full.isValid() || full.size() != 100010 || full.nodeCount() != 100010 || full.blackHeight() != tree.blackHeight((RBTNode<Integer>)tree.root)) {
+      Assertions.fail("full statistics do not match the tree: " + full + " " + full.violations());
+    }
+    if(full.optimalHeight() != 17 || full.height() < 17 || full.heightRatio() > 2.0) {
+      Assertions.fail("height is outside the red black bounds: " + full);
+    }
+    if(full.averageSearchDepth() < 15 || full.averageSearchDepth() > full.height() || full.redCount() == 0) {
+      Assertions.fail("average search depth or red count is wrong: " + full);
+    }
+    TreeStats sample = TreeStats.sample(tree, 1000, new Random(23));
+    if(!sample.isValid() || sample.blackHeight() != full.blackHeight() || sample.height() > full.height()
+       || Math.abs(sample.averageSearchDepth() - full.averageSearchDepth()) > 1.0) {
+      Assertions.fail("sampled statistics do not match the full ones: " + sample);
+    }
+    TreeStats empty = TreeStats.full(new RedBlackTree<Integer>());
+    if(!empty.isValid() || empty.height() != 0 || empty.nodeCount() != 0) {
+      Assertions.fail("empty tree statistics are wrong");
+    }
+  }
+
+  /**
+   * tests that broken colors, up references, sizes and order are reported
+   */
+  @Test
+  public void testViolations() {
+    RedBlackTree<Integer> tree = new RedBlackTree<Integer>();
+    for(int i = 0; i < 100; i++) {
+      tree.insert(i);
+    }
+    RBTNode<Integer> node = (RBTNode<Integer>)tree.root.left;
+    node.childLeft().up = tree.root;
+    if(TreeStats.full(tree).isValid() || !TreeStats.full(tree).violations().get(0).contains("point up")) {
+      Assertions.fail("broken up reference was not found");
+    }
+    node.childLeft().up = node;
+    node.isRed = !node.isRed;
+    if(TreeStats.full(tree).isValid() || TreeStats.sample(tree, 200, new Random(1)).isValid()) {
+      Assertions.fail("broken black height was not found");
+    }
+    node.isRed = !node.isRed;
+    Integer data = node.data;
+    node.data = 1000;
+    TreeStats stats = TreeStats.full(tree);
+    node.data = data;
+    if(stats.isValid()) {
+      Assertions.fail("value out of order was not found");
+    }
+    node.size++;
+    if(TreeStats.full(tree).isValid()) {
+      Assertions.fail("wrong size was not found");
+    }
+    node.size--;
+    if(!TreeStats.full(tree).isValid()) {
+      Assertions.fail("repaired tree is reported as broken");
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+package bench;
+
+import static bench.Library.CONTAINS;
+import static bench.Library.INSERT;
+import static bench.Library.REMOVE;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the concurrent sorted collections under many threads sharing one collection:
+ * a RedBlackTree behind a single lock, ConcurrentRedBlackTree with its StampedLock,
+ * LockFreeSortedCollection, and the JDK's ConcurrentSkipListSet as the baseline.
+ *
+ * The collection starts with every even key. writeHeavy inserts and removes random odd keys, so
+ * the size stays the same and set and multiset collections do the same work; readMostly does one
+ * such write for every eight lookups. Run main to measure every implementation at 1 to 64
+ * threads, or pass -t to the benchmark jar for a single thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentWriteBenchmark {
+
+  // thread counts measured by main
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+  @Param({"RedBlackTree", "ConcurrentRedBlackTree", "LockFreeSortedCollection", "ConcurrentSkipListSet"})
+  public String implementation;
+
+  @Param({"1000000"})
+  public int keys;
+
+  // collection of the library under test, null when measuring the baseline
+  private Object collection;
+  // whether every call on collection has to hold its monitor
+  private boolean locked;
+  // baseline, null when measuring a collection of the library
+  private ConcurrentSkipListSet<Integer> skipList;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable {
+    if(implementation.equals("ConcurrentSkipListSet")) {
+      skipList = new ConcurrentSkipListSet<Integer>();
+    }else {
+      collection = Library.create(implementation);
+      locked = implementation.equals("RedBlackTree");
+    }
+    int[] even = new int[keys / 2];
+    for(int i = 0; i < even.length; i++) {
+      even[i] = i * 2;
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for(int i = even.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = even[i];
+      even[i] = even[j];
+      even[j] = swap;
+    }
+    for(int key: even) {
+      insert(key);
+    }
+  }
+
+  @Benchmark
+  public boolean writeHeavy() throws Throwable {
+    int key = ThreadLocalRandom.current().nextInt(keys) | 1;
+    insert(key);
+    return remove(key);
+  }
+
+  @Benchmark
+  public int readMostly() throws Throwable {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int found = 0;
+    for(int i = 0; i < 8; i++) {
+      found += contains(random.nextInt(keys)) ? 1 : 0;
+    }
+    int key = random.nextInt(keys) | 1;
+    insert(key);
+    return remove(key) ? found + 1 : found;
+  }
+
+  private void insert(Integer key) throws Throwable {
+    if(skipList != null) {
+      skipList.add(key);
+    }else if(locked) {
+      synchronized(collection) {
+        INSERT.invokeExact(collection, (Comparable)key);
+      }
+    }else {
+      INSERT.invokeExact(collection, (Comparable)key);
+    }
+  }
+
+  private boolean remove(Integer key) throws Throwable {
+    if(skipList != null) {
+      return skipList.remove(key);
+    }
+    if(locked) {
+      synchronized(collection) {
+        return (boolean)REMOVE.invokeExact(collection, (Comparable)key);
+      }
+    }
+    return (boolean)REMOVE.invokeExact(collection, (Comparable)key);
+  }
+
+  private boolean contains(Integer key) throws Throwable {
+    if(skipList != null) {
+      return skipList.contains(key);
+    }
+    if(locked) {
+      synchronized(collection) {
+        return (boolean)CONTAINS.invokeExact(collection, (Comparable)key);
+      }
+    }
+    return (boolean)CONTAINS.invokeExact(collection, (Comparable)key);
+  }
+
+  /**
+   * Runs both benchmarks for every implementation at each thread count in THREADS.
+   */
+  public static void main(String[] args) throws RunnerException {
+    for(int threads: THREADS) {
+      Options options = new OptionsBuilder()
+          .include(ConcurrentWriteBenchmark.class.getSimpleName())
+          .threads(threads)
+          .build();
+      new Runner(options).run();
+    }
+  }
+
+}
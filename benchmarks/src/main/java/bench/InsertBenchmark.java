@@ -0,0 +1,70 @@
+package bench;
+
+import static bench.Library.INSERT;
+import static bench.Library.SIZE;
+
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building a tree of size keys with one insert per key, for sequential keys, random
+ * keys and duplicate heavy keys where every value appears about 100 times. The baseline is a
+ * TreeMap from each key to its number of copies, since a TreeSet would drop the duplicates
+ * that RedBlackTree keeps. Divide the time per operation by size for the time per insert.
+ *
+ * The default sizes go up to 1e7. For 1e8 the keys and trees need around 16GB of heap:
+ * -p size=100000000 -jvmArgsAppend -Xmx24g
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class InsertBenchmark {
+
+  @Param({"RedBlackTree", "TreeMap"})
+  public String implementation;
+
+  @Param({"sequential", "random", "duplicates"})
+  public String keys;
+
+  @Param({"1000", "10000", "100000", "1000000", "10000000"})
+  public int size;
+
+  // keys to insert, in insertion order
+  private Integer[] values;
+
+  @Setup
+  public void setup() {
+    values = Keys.generate(keys, size);
+  }
+
+  @Benchmark
+  public int insert() throws Throwable {
+    if(implementation.equals("TreeMap")) {
+      TreeMap<Integer, Integer> map = new TreeMap<Integer, Integer>();
+      for(Integer value: values) {
+        map.merge(value, 1, Integer::sum);
+      }
+      return map.size();
+    }
+    Object tree = Library.create(implementation);
+    for(Integer value: values) {
+      INSERT.invokeExact(tree, (Comparable)value);
+    }
+    return (int)SIZE.invokeExact(tree);
+  }
+
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * Key sequences shared by the benchmarks. Keys are boxed ahead of time so boxing is not part of
+ * the measured time, and come from a fixed seed so every run uses the same keys.
+ */
+public final class Keys {
+
+  private static final long SEED = 0x5eed;
+
+  private Keys() {}
+
+  /**
+   * Generates size keys in insertion order.
+   * @param pattern - "sequential" for 0 to size - 1 in order, "random" for the same keys in
+   * random order, or "duplicates" for random keys that each appear about 100 times
+   * @param size - number of keys
+   */
+  public static Integer[] generate(String pattern, int size) {
+    Integer[] keys = new Integer[size];
+    SplittableRandom random = new SplittableRandom(SEED);
+    switch(pattern) {
+      case "sequential":
+        for(int i = 0; i < size; i++) {
+          keys[i] = i;
+        }
+        break;
+      case "random":
+        for(int i = 0; i < size; i++) {
+          keys[i] = i;
+        }
+        shuffle(keys, random);
+        break;
+      case "duplicates":
+        int distinct = Math.max(1, size / 100);
+        for(int i = 0; i < size; i++) {
+          keys[i] = random.nextInt(distinct);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("unknown key pattern " + pattern);
+    }
+    return keys;
+  }
+
+  /**
+   * Shuffles keys in place with a Fisher Yates shuffle.
+   */
+  public static void shuffle(Object[] keys, SplittableRandom random) {
+    for(int i = keys.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      Object swap = keys[i];
+      keys[i] = keys[j];
+      keys[j] = swap;
+    }
+  }
+
+}
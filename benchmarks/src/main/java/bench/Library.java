@@ -0,0 +1,60 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+
+/**
+ * Method handles for the collections of this library. The library lives in the default package,
+ * which code in a named package cannot import, and JMH refuses benchmarks in the default package,
+ * so benchmarks reach the library through these handles instead. The handles are static finals
+ * called with invokeExact, which the JIT compiles to the same direct call a plain method call
+ * would be, so they add nothing to the measured time.
+ */
+public final class Library {
+
+  // (Object collection, Comparable value) -> void
+  public static final MethodHandle INSERT = method("SortedCollection", "insert",
+      MethodType.methodType(void.class, Comparable.class));
+  // (Object collection, Comparable value) -> boolean
+  public static final MethodHandle CONTAINS = method("SortedCollection", "contains",
+      MethodType.methodType(boolean.class, Comparable.class));
+  // (Object collection, Comparable value) -> boolean
+  public static final MethodHandle REMOVE = method("SortedCollection", "remove",
+      MethodType.methodType(boolean.class, Comparable.class));
+  // (Object collection) -> int
+  public static final MethodHandle SIZE = method("SortedCollection", "size",
+      MethodType.methodType(int.class));
+  // (Object collection, Comparable min, Comparable max) -> Iterator
+  public static final MethodHandle ITERATOR = method("IterableSortedCollection", "iterator",
+      MethodType.methodType(Iterator.class, Comparable.class, Comparable.class));
+
+  private Library() {}
+
+  /**
+   * Creates an empty collection of the library with its no argument constructor.
+   * @param className - name of the class in the default package, like "RedBlackTree"
+   */
+  public static Object create(String className) {
+    try {
+      return Class.forName(className).getConstructor().newInstance();
+    }catch(ReflectiveOperationException e) {
+      throw new IllegalArgumentException("cannot create " + className, e);
+    }
+  }
+
+  /**
+   * Finds a public method of a library class and adapts it to take the receiver as an Object.
+   */
+  public static MethodHandle method(String className, String name, MethodType type) {
+    try {
+      Class<?> owner = Class.forName(className);
+      MethodHandle handle = MethodHandles.publicLookup().findVirtual(owner, name, type);
+      return handle.asType(handle.type().changeParameterType(0, Object.class));
+    }catch(ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+}
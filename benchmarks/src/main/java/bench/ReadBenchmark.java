@@ -0,0 +1,141 @@
+package bench;
+
+import static bench.Library.CONTAINS;
+import static bench.Library.INSERT;
+import static bench.Library.ITERATOR;
+import static bench.Library.SIZE;
+
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures lookups, iteration and size() on a tree of size distinct keys, with TreeSet as the
+ * baseline. The tree holds the even numbers from 0 to 2 * (size - 1), inserted in random order,
+ * so a hit probes an even number and a miss probes an odd number.
+ *
+ * iterateAll walks every value, iterateRange walks RANGE values starting at a random key.
+ * The default sizes go up to 1e7. For 1e8 the tree needs around 12GB of heap:
+ * -p size=100000000 -jvmArgsAppend -Xmx24g
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ReadBenchmark {
+
+  // number of values walked by iterateRange
+  private static final int RANGE = 1000;
+  // number of precomputed probes, a power of two
+  private static final int PROBES = 1 << 16;
+
+  @Param({"IterableRedBlackTree", "TreeSet"})
+  public String implementation;
+
+  @Param({"1000", "10000", "100000", "1000000", "10000000"})
+  public int size;
+
+  // collection of the library under test, null when measuring the baseline
+  private Object tree;
+  // baseline, null when measuring a collection of the library
+  private TreeSet<Integer> treeSet;
+  // keys in the tree, keys not in the tree, and the first key of each range
+  private final Integer[] hits = new Integer[PROBES];
+  private final Integer[] misses = new Integer[PROBES];
+  private final Integer[][] ranges = new Integer[PROBES][];
+  private int next = 0;
+
+  @Setup
+  public void setup() throws Throwable {
+    Integer[] values = Keys.generate("random", size);
+    for(int i = 0; i < values.length; i++) {
+      values[i] = values[i] * 2;
+    }
+    if(implementation.equals("TreeSet")) {
+      treeSet = new TreeSet<Integer>();
+      for(Integer value: values) {
+        treeSet.add(value);
+      }
+    }else {
+      tree = Library.create(implementation);
+      for(Integer value: values) {
+        INSERT.invokeExact(tree, (Comparable)value);
+      }
+    }
+    SplittableRandom random = new SplittableRandom(size);
+    for(int i = 0; i < PROBES; i++) {
+      int index = random.nextInt(size);
+      hits[i] = index * 2;
+      misses[i] = index * 2 + 1;
+      int start = random.nextInt(Math.max(1, size - RANGE)) * 2;
+      ranges[i] = new Integer[] {start, start + (RANGE - 1) * 2};
+    }
+  }
+
+  private int nextProbe() {
+    return next++ & (PROBES - 1);
+  }
+
+  @Benchmark
+  public boolean containsHit() throws Throwable {
+    return contains(hits[nextProbe()]);
+  }
+
+  @Benchmark
+  public boolean containsMiss() throws Throwable {
+    return contains(misses[nextProbe()]);
+  }
+
+  private boolean contains(Integer key) throws Throwable {
+    if(treeSet != null) {
+      return treeSet.contains(key);
+    }
+    return (boolean)CONTAINS.invokeExact(tree, (Comparable)key);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @SuppressWarnings("unchecked")
+  public void iterateAll(Blackhole blackhole) {
+    Iterable<Integer> values = treeSet != null ? treeSet : (Iterable<Integer>)tree;
+    for(Integer value: values) {
+      blackhole.consume(value);
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @SuppressWarnings("unchecked")
+  public void iterateRange(Blackhole blackhole) throws Throwable {
+    Integer[] range = ranges[nextProbe()];
+    Iterator<Integer> it = treeSet != null ? treeSet.subSet(range[0], true, range[1], true).iterator()
+                                           : (Iterator<Integer>)ITERATOR.invokeExact(tree, (Comparable)range[0], (Comparable)range[1]);
+    while(it.hasNext()) {
+      blackhole.consume(it.next());
+    }
+  }
+
+  @Benchmark
+  public int size() throws Throwable {
+    if(treeSet != null) {
+      return treeSet.size();
+    }
+    return (int)SIZE.invokeExact(tree);
+  }
+
+}